@@ -2,6 +2,7 @@ module org.tutske.libs.api {
 
 	exports org.tutske.lib.api.data;
 	exports org.tutske.lib.api.exceptions;
+	exports org.tutske.lib.api.filters;
 	exports org.tutske.lib.api.jwt;
 	exports org.tutske.lib.api;
 
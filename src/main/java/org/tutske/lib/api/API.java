@@ -95,20 +95,24 @@ public class API<REQ, RES> {
 		return group (nextId (groupId), url, consumer);
 	}
 
-	public API<REQ, RES> route (String id, String uri, EnumSet<Method> methods, RiskyFn<REQ, RES> fn) {
+	public API<REQ, RES> route (String id, String uri, EnumSet<Method> methods, Priority priority, RiskyFn<REQ, RES> fn) {
 		if ( router.ids.containsKey (id) ) {
 			throw new RuntimeException ("A route with that id already exists: " + id);
 		}
 
 		boolean isRelevant = ! (uri == null || uri.isEmpty () || uri.equals ("/"));
 		String actual = isRelevant ? group + uri : group.isEmpty () ? uri : group;
-		RouteDescription<REQ, RES> description = new RouteDescription<> (id, version, methods, actual, fn);
+		RouteDescription<REQ, RES> description = new RouteDescription<> (id, version, methods, actual, priority, fn);
 		add (router.routes, description);
 		router.ids.put (id, description);
 
 		return this;
 	}
 
+	public API<REQ, RES> route (String id, String uri, EnumSet<Method> methods, RiskyFn<REQ, RES> fn) {
+		return route (id, uri, methods, Priority.NORMAL, fn);
+	}
+
 	public API<REQ, RES> route (String descriptor, EnumSet<Method> methods, RiskyFn<REQ, RES> fn) {
 		return route (nextId (groupId), descriptor, methods, fn);
 	}
@@ -122,7 +126,8 @@ public class API<REQ, RES> {
 	}
 
 	public API<REQ, RES> filter (String descriptor, EnumSet<Method> methods, Filter<REQ, RES> filter) {
-		router.filters.add (new FilterDescription<REQ, RES> (version, methods, group + descriptor, filter));
+		String name = "filter:" + group + descriptor + "#" + router.filters.size ();
+		router.filters.add (new FilterDescription<REQ, RES> (name, version, methods, group + descriptor, filter));
 		return this;
 	}
 
@@ -130,6 +135,11 @@ public class API<REQ, RES> {
 		return filter (descriptor, EnumSet.allOf (Method.class), filter);
 	}
 
+	public API<REQ, RES> instrument (Instrumentation instrumentation) {
+		router.instrumentation = instrumentation;
+		return this;
+	}
+
 	/* -- utility -- */
 
 	private static final AtomicLong id = new AtomicLong ();
@@ -140,6 +150,7 @@ public class API<REQ, RES> {
 		private Map<String, Object> routes = new HashMap<> ();
 		private Map<String, RouteDescription<REQ, RES>> ids = new HashMap<> ();
 		private List<FilterDescription<REQ, RES>> filters = new LinkedList<> ();
+		private Instrumentation instrumentation = null;
 
 		@Override public List<String> getIdentifiers () {
 			return new LinkedList<> (ids.keySet ());
@@ -165,21 +176,37 @@ public class API<REQ, RES> {
 			return description == null ? null : description.handler;
 		}
 
+		@Override public Priority getPriority (String identifier) {
+			RouteDescription<REQ, RES> description = ids.get (identifier);
+			return description == null ? Priority.NORMAL : description.priority;
+		}
+
 		@Override public Function<REQ, RES> createChain (Method method, String version, String url, String [] parts) {
 			String id = toId (method, version, url, parts);
-			return id == null ? null : createChain (method, version, url, parts, ids.get (id).handler);
+			return id == null ? null : createChain (id, method, version, url, parts, ids.get (id).handler);
 		}
 
 		@Override public Function<REQ, RES> createChain (Method method, String version, String url, String [] parts, Function<REQ, RES> fn) {
-			List<Filter<REQ, RES>> selected = filters.stream ()
+			return createChain (toId (method, version, url, parts), method, version, url, parts, fn);
+		}
+
+		private Function<REQ, RES> createChain (String id, Method method, String version, String url, String [] parts, Function<REQ, RES> fn) {
+			List<FilterDescription<REQ, RES>> matching = filters.stream ()
 				.filter (f -> f.matches (version, method, url, parts))
+				.collect (Collectors.toList ());
+			List<Filter<REQ, RES>> selected = matching.stream ()
 				.map (f -> f.filter)
 				.collect (Collectors.toList ());
-			return new Chain<> (fn, selected);
+
+			if ( instrumentation == null ) { return new Chain<> (id, getPriority (id), fn, selected); }
+
+			List<String> names = matching.stream ().map (f -> f.name).collect (Collectors.toList ());
+			return instrumentation.chain (id, getPriority (id), fn, names, selected);
 		}
 	}
 
 	private static class FilterDescription<REQ, RES> {
+		private final String name;
 		private final String version;
 		private final EnumSet<Method> methods;
 		private final String descriptor;
@@ -189,7 +216,8 @@ public class API<REQ, RES> {
 		private final boolean [] shouldMatch;
 		private final boolean hasTail;
 
-		public FilterDescription (String version, EnumSet<Method> methods, String descriptor, Filter<REQ, RES> filter) {
+		public FilterDescription (String name, String version, EnumSet<Method> methods, String descriptor, Filter<REQ, RES> filter) {
+			this.name = name;
 			this.version = version;
 			this.methods = methods;
 			this.descriptor = descriptor;
@@ -229,6 +257,7 @@ public class API<REQ, RES> {
 		private final String version;
 		private final EnumSet<Method> methods;
 		private final String descriptor;
+		private final Priority priority;
 		private final RiskyFn<REQ, RES> handler;
 
 		private final String [] parts;
@@ -236,11 +265,12 @@ public class API<REQ, RES> {
 		private final boolean [] shouldMatch;
 		private final boolean hasTail;
 
-		public RouteDescription (String id, String version, EnumSet<Method> methods, String descriptor, RiskyFn<REQ, RES> handler) {
+		public RouteDescription (String id, String version, EnumSet<Method> methods, String descriptor, Priority priority, RiskyFn<REQ, RES> handler) {
 			this.id = id;
 			this.version = version;
 			this.methods = methods;
 			this.descriptor = descriptor;
+			this.priority = priority;
 			this.handler = handler;
 
 			this.parts = API.splitParts (descriptor);
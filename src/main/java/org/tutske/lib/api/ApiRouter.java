@@ -14,6 +14,7 @@ public interface ApiRouter<REQ, RES> {
 	Bag<String, String> extractMatches (String identifier, String url, String [] parts);
 	String linkTo (String identifier, Map<String, Object> params);
 	Function<REQ, RES> getHandler (String identifier);
+	default Priority getPriority (String identifier) { return Priority.NORMAL; }
 	Function<REQ, RES> createChain (Method method, String version, String url, String [] parts);
 	Function<REQ, RES> createChain (Method method, String version, String url, String [] parts, Function<REQ, RES> fn);
 
@@ -0,0 +1,131 @@
+package org.tutske.lib.api;
+
+import org.tutske.lib.api.exceptions.NotFoundException;
+import org.tutske.lib.utils.Functions.RiskyFn;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+
+/**
+ * Collects the keys of concurrent loads and resolves them with a single call
+ * to the batch function, either when the window closes or as soon as the batch
+ * is full. Loads for the same key within one batch share their result.
+ */
+public class Batcher<K, V> {
+
+	public static class Config {
+		protected Duration window = Duration.ofMillis (2);
+		protected int maxBatch = 100;
+
+		public Config () {}
+
+		public Config (Duration window, int maxBatch) {
+			this.window = window;
+			this.maxBatch = maxBatch;
+		}
+	}
+
+	public static <REQ extends Request, K, V> RiskyFn<REQ, CompletableFuture<Void>> route (
+		Function<? super REQ, K> key, RiskyFn<List<K>, CompletableFuture<Map<K, V>>> batch
+	) {
+		return route (key, batch, new Config ());
+	}
+
+	public static <REQ extends Request, K, V> RiskyFn<REQ, CompletableFuture<Void>> route (
+		Function<? super REQ, K> key, RiskyFn<List<K>, CompletableFuture<Map<K, V>>> batch, Config config
+	) {
+		return route (key, batch, (req, value) -> {
+			if ( value == null ) { throw new NotFoundException (); }
+			return req.reply (value);
+		}, config);
+	}
+
+	public static <REQ extends Request, K, V> RiskyFn<REQ, CompletableFuture<Void>> route (
+		Function<? super REQ, K> key, RiskyFn<List<K>, CompletableFuture<Map<K, V>>> batch,
+		BiFunction<? super REQ, V, CompletableFuture<Void>> reply, Config config
+	) {
+		Batcher<K, V> batcher = new Batcher<> (batch, config);
+		return req -> batcher.load (key.apply (req)).thenCompose (value -> reply.apply (req, value));
+	}
+
+	private final RiskyFn<List<K>, CompletableFuture<Map<K, V>>> batch;
+	private final Executor delayed;
+	private final int maxBatch;
+	private final LongAdder batches = new LongAdder ();
+
+	private Batch current = null;
+
+	public Batcher (RiskyFn<List<K>, CompletableFuture<Map<K, V>>> batch, Config config) {
+		if ( config.maxBatch < 1 ) { throw new IllegalArgumentException ("maxBatch should be positive"); }
+
+		this.batch = batch;
+		this.maxBatch = config.maxBatch;
+		this.delayed = CompletableFuture.delayedExecutor (config.window.toNanos (), TimeUnit.NANOSECONDS);
+	}
+
+	public CompletableFuture<V> load (K key) {
+		Batch full = null;
+		Batch created = null;
+		CompletableFuture<V> result;
+
+		synchronized ( this ) {
+			if ( current == null ) { current = created = new Batch (); }
+			result = current.futures.computeIfAbsent (key, k -> new CompletableFuture<> ());
+			if ( current.futures.size () >= maxBatch ) {
+				full = current;
+				current = null;
+			}
+		}
+
+		if ( full != null ) { dispatch (full); }
+		else if ( created != null ) { schedule (created); }
+
+		return result;
+	}
+
+	public long batches () {
+		return batches.sum ();
+	}
+
+	private void schedule (Batch batch) {
+		delayed.execute (() -> {
+			synchronized ( this ) {
+				if ( current != batch ) { return; }
+				current = null;
+			}
+			dispatch (batch);
+		});
+	}
+
+	private void dispatch (Batch batch) {
+		batches.increment ();
+		List<K> keys = new ArrayList<> (batch.futures.keySet ());
+
+		CompletableFuture<Map<K, V>> future;
+		try { future = this.batch.apply (keys); }
+		catch ( RuntimeException e ) { future = CompletableFuture.failedFuture (e); }
+		if ( future == null ) { future = CompletableFuture.failedFuture (new NullPointerException ("Batch did not produce a result")); }
+
+		future.whenComplete ((values, exception) -> {
+			batch.futures.forEach ((key, result) -> {
+				if ( exception != null ) { result.completeExceptionally (exception); }
+				else { result.complete (values == null ? null : values.get (key)); }
+			});
+		});
+	}
+
+	private class Batch {
+		private final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<> ();
+	}
+
+}
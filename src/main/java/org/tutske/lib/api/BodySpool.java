@@ -0,0 +1,195 @@
+package org.tutske.lib.api;
+
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Reads request bodies into pooled direct buffers. Bodies that grow past the
+ * memory threshold are written to a temporary file that is read back through
+ * its channel and deleted once the body is released. All bodies that are being
+ * read or held share a single byte budget, charged for whole buffers while in
+ * memory and for the file length once spilled; a body that does not fit in it
+ * is rejected.
+ */
+public class BodySpool {
+
+	public static class Config {
+		protected int chunkSize = 64 * 1024;
+		protected int pooled = 256;
+		protected long memoryThreshold = 1024 * 1024;
+		protected long maxBody = 64 * 1024 * 1024;
+		protected long budget = 256 * 1024 * 1024;
+		protected Path directory = null;
+
+		public Config () {}
+
+		public Config (long maxBody, long budget) {
+			this.maxBody = maxBody;
+			this.budget = budget;
+		}
+	}
+
+	private static final PayloadTooLargeException TOO_LARGE = new PayloadTooLargeException ("Request body is too large.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	private static final PayloadTooLargeException OVER_BUDGET = new PayloadTooLargeException ("Too many request bodies in flight.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	private final int chunkSize;
+	private final long memoryThreshold;
+	private final long maxBody;
+	private final long budget;
+	private final Path directory;
+	private final ArrayBlockingQueue<ByteBuffer> pool;
+	private final AtomicLong inflight = new AtomicLong ();
+
+	public BodySpool () {
+		this (new Config ());
+	}
+
+	public BodySpool (Config config) {
+		if ( config.maxBody > Integer.MAX_VALUE ) { throw new IllegalArgumentException ("maxBody should fit in a byte array"); }
+
+		this.chunkSize = config.chunkSize;
+		this.memoryThreshold = config.memoryThreshold;
+		this.maxBody = config.maxBody;
+		this.budget = config.budget;
+		this.directory = config.directory != null ? config.directory : Paths.get (System.getProperty ("java.io.tmpdir"));
+		this.pool = new ArrayBlockingQueue<> (Math.max (1, config.pooled));
+	}
+
+	public long inflight () {
+		return inflight.get ();
+	}
+
+	public int pooled () {
+		return pool.size ();
+	}
+
+	public SpooledBody read (InputStream in, long expected) throws IOException {
+		if ( in == null ) { return new SpooledBody (this, new ByteBuffer [] {}, 0, 0); }
+		if ( expected > maxBody ) { throw TOO_LARGE; }
+
+		ReadableByteChannel source = Channels.newChannel (in);
+		List<ByteBuffer> chunks = new ArrayList<> ();
+		FileChannel file = null;
+		long total = 0;
+		long reserved = 0;
+
+		try {
+			while ( true ) {
+				reserve (chunkSize);
+				reserved += chunkSize;
+				ByteBuffer chunk = acquire ();
+				chunks.add (chunk);
+
+				int read = fill (source, chunk);
+				boolean done = chunk.hasRemaining ();
+				if ( total + read > maxBody ) { throw TOO_LARGE; }
+				total += read;
+
+				if ( read == 0 ) {
+					chunks.remove (chunks.size () - 1);
+					recycle (chunk);
+					release (chunkSize);
+					reserved -= chunkSize;
+				}
+
+				if ( total > memoryThreshold && file == null ) { file = spill (chunks); }
+				else if ( file != null ) { write (file, chunks); }
+
+				/* once spilled only the bytes on disk stay charged, the chunks went back to the pool */
+				if ( file != null ) {
+					release (reserved - total);
+					reserved = total;
+				}
+
+				if ( done ) { break; }
+			}
+
+			if ( file == null ) {
+				ByteBuffer [] buffers = chunks.stream ().peek (ByteBuffer::flip).toArray (ByteBuffer []::new);
+				return new SpooledBody (this, buffers, total, reserved);
+			}
+
+			return new SpooledBody (this, file, total, reserved);
+		} catch ( IOException | RuntimeException e ) {
+			release (reserved);
+			chunks.forEach (this::recycle);
+			if ( file != null ) { file.close (); }
+			throw e;
+		} finally {
+			in.close ();
+		}
+	}
+
+	void release (long bytes) {
+		inflight.addAndGet (-bytes);
+	}
+
+	void recycle (ByteBuffer buffer) {
+		if ( buffer.isDirect () && buffer.capacity () == chunkSize ) {
+			buffer.clear ();
+			pool.offer (buffer);
+		}
+	}
+
+	private ByteBuffer acquire () {
+		ByteBuffer buffer = pool.poll ();
+		return buffer != null ? buffer : ByteBuffer.allocateDirect (chunkSize);
+	}
+
+	private void reserve (long bytes) {
+		long current;
+		do {
+			current = inflight.get ();
+			if ( current + bytes > budget ) { throw OVER_BUDGET; }
+		} while ( ! inflight.compareAndSet (current, current + bytes) );
+	}
+
+	private int fill (ReadableByteChannel source, ByteBuffer chunk) throws IOException {
+		int total = 0;
+		while ( chunk.hasRemaining () ) {
+			int read = source.read (chunk);
+			if ( read < 0 ) { break; }
+			total += read;
+		}
+		return total;
+	}
+
+	private FileChannel spill (List<ByteBuffer> chunks) throws IOException {
+		Path path = Files.createTempFile (directory, "body-", ".spool");
+		FileChannel file = FileChannel.open (path,
+			StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE
+		);
+		write (file, chunks);
+		return file;
+	}
+
+	private void write (FileChannel file, List<ByteBuffer> chunks) throws IOException {
+		for ( ByteBuffer chunk : chunks ) {
+			chunk.flip ();
+			while ( chunk.hasRemaining () ) { file.write (chunk); }
+			recycle (chunk);
+		}
+		chunks.clear ();
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.tutske.lib.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.tutske.lib.utils.Bag;
+import org.tutske.lib.utils.Exceptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+
+public class BufferedRequest extends RequestWrapper {
+
+	private final ObjectMapper mapper;
+	private final int limit;
+	private RequestBody body;
+
+	public BufferedRequest (Request request) {
+		this (request, JsonStreams.defaultMapper (), RequestBody.DEFAULT_LIMIT);
+	}
+
+	public BufferedRequest (Request request, int limit) {
+		this (request, JsonStreams.defaultMapper (), limit);
+	}
+
+	public BufferedRequest (Request request, ObjectMapper mapper, int limit) {
+		super (request);
+		this.mapper = mapper;
+		this.limit = limit;
+	}
+
+	public synchronized RequestBody buffered () throws IOException {
+		if ( body == null ) { body = RequestBody.read (request.inputstream (), RequestBody.contentLength (request), limit); }
+		return body;
+	}
+
+	@Override public String body () { return body (StandardCharsets.UTF_8); }
+
+	@Override public String body (Charset charset) {
+		try { return buffered ().string (charset); }
+		catch ( IOException e ) { throw Exceptions.wrap (e); }
+	}
+
+	@Override public byte [] bytes () {
+		try { return buffered ().bytes (); }
+		catch ( IOException e ) { throw Exceptions.wrap (e); }
+	}
+
+	@Override public <T> T json (Class<T> clazz) {
+		try { return buffered ().json (mapper, clazz); }
+		catch ( IOException e ) { throw Exceptions.wrap (e); }
+	}
+
+	@Override public JsonNode json () {
+		try { return buffered ().json (mapper); }
+		catch ( IOException e ) { throw Exceptions.wrap (e); }
+	}
+
+	@Override public JsonParser jsonParser () throws IOException {
+		return buffered ().parser (mapper);
+	}
+
+	@Override public <T> Stream<T> jsonStream (Class<T> clazz) throws IOException {
+		return JsonStreams.elements (jsonParser (), clazz);
+	}
+
+	@Override public Bag<String, String> form () throws IOException {
+		return FormDecoder.decode (inputstream ());
+	}
+
+	@Override public Bag<String, String> form (FormDecoder.Config config) throws IOException {
+		return FormDecoder.decode (inputstream (), config);
+	}
+
+	@Override public Multipart multipart () throws IOException {
+		return Multipart.parse (this);
+	}
+
+	@Override public Multipart multipart (Multipart.Config config) throws IOException {
+		return Multipart.parse (this, config);
+	}
+
+	@Override public CompletableFuture<ByteBuffer> bodyAsync () {
+		return CompletableFuture.supplyAsync (() -> ByteBuffer.wrap (bytes ()), Publishers.BLOCKING);
+	}
+
+	@Override public Flow.Publisher<ByteBuffer> bodyPublisher () {
+		return Publishers.fromStream (this::inputstream);
+	}
+
+	@Override public InputStream inputstream () throws IOException {
+		return buffered ().inputstream ();
+	}
+
+	@Override public InputStream rawInputstream () throws IOException {
+		return inputstream ();
+	}
+
+}
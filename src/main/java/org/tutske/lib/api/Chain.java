@@ -11,6 +11,8 @@ public class Chain<S, T> implements Function<S, T> {
 
 	private int current = 0;
 	private int depth = 0;
+	private String identifier;
+	private Priority priority;
 	private List<Filter<S, T>> routes;
 	private Function<S, T> destination;
 
@@ -19,10 +21,28 @@ public class Chain<S, T> implements Function<S, T> {
 	}
 
 	public Chain (Function<S, T> destination, List<Filter<S, T>> routes) {
+		this (null, destination, routes);
+	}
+
+	public Chain (String identifier, Function<S, T> destination, List<Filter<S, T>> routes) {
+		this (identifier, Priority.NORMAL, destination, routes);
+	}
+
+	public Chain (String identifier, Priority priority, Function<S, T> destination, List<Filter<S, T>> routes) {
+		this.identifier = identifier;
+		this.priority = priority;
 		this.destination = destination;
 		this.routes = routes;
 	}
 
+	public String identifier () {
+		return identifier;
+	}
+
+	public Priority priority () {
+		return priority;
+	}
+
 	@Override
 	public T apply (S source) {
 		try { return riskyApply (source); }
@@ -9,6 +9,7 @@ import org.tutske.lib.utils.Exceptions;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -17,6 +18,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
 import java.util.function.Function;
 
 
@@ -79,6 +81,14 @@ public interface Client extends AutoCloseable {
 			return this;
 		}
 
+		default public Request withDeadline (Deadline deadline) {
+			return deadline == null ? this : withHeader (Deadline.HEADER, deadline.remainingMillis ());
+		}
+
+		default public Request withDeadline (org.tutske.lib.api.Request source) {
+			return withDeadline (Deadline.of (source));
+		}
+
 		public CompletableFuture<Client.Response> send ();
 
 		public CompletableFuture<Client.Response> send (InputStream stream);
@@ -159,6 +169,10 @@ public interface Client extends AutoCloseable {
 			return new ByteArrayInputStream (bytes ());
 		}
 
+		default public Flow.Publisher<ByteBuffer> publisher () {
+			return Publishers.fromStream (this::inputstream);
+		}
+
 		default public <T> T extractWrapped (Class<T> clazz) {
 			throw new JsonException ("Class not supported for extraction",
 				Json.objectNode ("class", clazz.getCanonicalName ())
@@ -0,0 +1,43 @@
+package org.tutske.lib.api;
+
+import java.time.Duration;
+
+
+/**
+ * The point in time by which a request should be handled. It travels with the
+ * request in its context, so it can be forwarded downstream from any thread
+ * through {@code Client.Request.withDeadline (request)}.
+ */
+public class Deadline {
+
+	public static final String HEADER = "X-Request-Budget";
+	public static final String CONTEXT_KEY = "deadline";
+
+	public static Deadline after (Duration budget) {
+		return new Deadline (System.nanoTime () + budget.toNanos ());
+	}
+
+	public static Deadline of (Request request) {
+		Object deadline = request.context ().get (CONTEXT_KEY);
+		return deadline instanceof Deadline ? (Deadline) deadline : null;
+	}
+
+	private final long nanos;
+
+	private Deadline (long nanos) {
+		this.nanos = nanos;
+	}
+
+	public Duration remaining () {
+		return Duration.ofNanos (Math.max (0, nanos - System.nanoTime ()));
+	}
+
+	public long remainingMillis () {
+		return remaining ().toMillis ();
+	}
+
+	public boolean expired () {
+		return nanos - System.nanoTime () <= 0;
+	}
+
+}
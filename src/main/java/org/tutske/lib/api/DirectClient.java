@@ -1,5 +1,6 @@
 package org.tutske.lib.api;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
@@ -8,6 +9,7 @@ import org.tutske.lib.api.data.EmptyResponse;
 import org.tutske.lib.api.data.RawResponse;
 import org.tutske.lib.api.data.StringResponse;
 import org.tutske.lib.api.exceptions.ResponseException;
+import org.tutske.lib.api.filters.Headers;
 import org.tutske.lib.json.Mappers;
 import org.tutske.lib.utils.Bag;
 import org.tutske.lib.utils.Exceptions;
@@ -18,13 +20,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -52,6 +58,7 @@ public class DirectClient implements Client, Consumer<ApiRouter<org.tutske.lib.a
 	private final ObjectMapper mapper;
 	private final String root;
 	private final List<Parameter> parameters = new ArrayList<> ();
+	private int maxBodySize = RequestBody.DEFAULT_LIMIT;
 	private ApiRouter<org.tutske.lib.api.Request, CompletableFuture<Void>> router;
 
 	private DirectClient (ObjectMapper mapper, String root) {
@@ -64,9 +71,14 @@ public class DirectClient implements Client, Consumer<ApiRouter<org.tutske.lib.a
 		);
 	}
 
+	public DirectClient maxBodySize (int bytes) {
+		this.maxBodySize = bytes;
+		return this;
+	}
+
 	@Override
 	public Client.Request request (Method method, String path) {
-		return new Request (mapper, router, parameters, method, root, path);
+		return new Request (mapper, router, parameters, method, root, path).maxBodySize (maxBodySize);
 	}
 
 	@Override
@@ -87,6 +99,7 @@ public class DirectClient implements Client, Consumer<ApiRouter<org.tutske.lib.a
 		private final String root;
 		private final String path;
 		private final List<Parameter> params = new ArrayList<> ();
+		private int maxBodySize = RequestBody.DEFAULT_LIMIT;
 
 		public Request (
 			ObjectMapper mapper, ApiRouter<org.tutske.lib.api.Request, CompletableFuture<Void>> router, List<Parameter> defaults,
@@ -100,6 +113,11 @@ public class DirectClient implements Client, Consumer<ApiRouter<org.tutske.lib.a
 			this.path = path;
 		}
 
+		public Request maxBodySize (int bytes) {
+			this.maxBodySize = bytes;
+			return this;
+		}
+
 		@Override public Client.Request with (List<Parameter> params) {
 			this.params.addAll (params);
 			return this;
@@ -154,19 +172,31 @@ public class DirectClient implements Client, Consumer<ApiRouter<org.tutske.lib.a
 			String id = router.toId (method, version, path, parts);
 			if ( id == null ) { return CompletableFuture.completedFuture (new Response (mapper, 404)); }
 
-			Bag<String, String> p = router.extractMatches (id, uri.getRawPath (), parts);
-			Bag<String, String> q = org.tutske.lib.api.Request.decode (uri.getRawQuery ());
-			ApiRequest request = new ApiRequest (method, uri.getRawPath (), p, q, stream, mapper);
+			String raw = uri.getRawPath ();
+			QueryString query = new QueryString (uri.getRawQuery ());
+			ApiRequest request = new ApiRequest (
+				method, raw, () -> router.extractMatches (id, raw, parts), query, stream, mapper, maxBodySize
+			);
+			Stream.concat (defaults.stream (), params.stream ())
+				.filter (HeaderParameter.class::isInstance)
+				.map (HeaderParameter.class::cast)
+				.forEach (param -> request.headers.add (param.key, String.valueOf (param.value)));
+
 			CompletableFuture<Void> future = CompletableFuture
 				.supplyAsync (() -> router.createChain (method, version, path, parts))
 				.thenComposeAsync (chain -> chain.apply (request));
 
 			CompletableFuture<Client.Response> response = new CompletableFuture<> ();
+			request.committed.thenRun (() -> response.complete (new Response (mapper, request, null)));
 			future.whenComplete ((value, throwable) -> {
 				if ( throwable != null ) {
 					logger.info ("", throwable);
 					throwable.printStackTrace ();
 				}
+				if ( request.committed.isDone () ) {
+					if ( throwable != null ) { request.pipe.fail (throwable); }
+					return;
+				}
 				response.complete (new Response (mapper, request, (
 					throwable instanceof CompletionException ? throwable.getCause () :
 					throwable
@@ -237,11 +267,25 @@ public class DirectClient implements Client, Consumer<ApiRouter<org.tutske.lib.a
 				throwable != null ? new ByteArrayInputStream (mapper.writeValueAsBytes (throwable)) :
 				request == null ? new ByteArrayInputStream (new byte [] {}) :
 				request.responseStream != null ? request.responseStream :
+				request.responsePublisher != null ? Publishers.toStream (request.responsePublisher) :
 				request.responsePayload == null ? new ByteArrayInputStream (new byte [] {}) :
 				new ByteArrayInputStream (mapper.writeValueAsBytes (request.responsePayload))
 			);
 		}
 
+		public List<ByteBuffer> regions () throws IOException {
+			if ( bytes != null || request == null || ! (request.responseStream instanceof FileResponse) ) { return null; }
+			return ((FileResponse) request.responseStream).buffers ();
+		}
+
+		@Override
+		public Flow.Publisher<ByteBuffer> publisher () {
+			if ( bytes == null && throwable == null && request != null && request.responsePublisher != null ) {
+				return request.responsePublisher;
+			}
+			return Client.Response.super.publisher ();
+		}
+
 		@Override
 		public JsonNode json () {
 			if ( json == null ) {
@@ -274,9 +318,15 @@ public class DirectClient implements Client, Consumer<ApiRouter<org.tutske.lib.a
 		private final Method method;
 		private final String uri;
 		private final InputStream stream;
-
-		private final Bag<String, String> path = new Bag<> ();
-		private final Bag<String, String> query = new Bag<> ();
+		private final int maxBodySize;
+		private final long arrival = System.nanoTime ();
+		private RequestBody body;
+		private boolean streamed = false;
+
+		private final Supplier<Bag<String, String>> matches;
+		private final QueryString querystring;
+		private Bag<String, String> path;
+		private Bag<String, String> query;
 		private final Bag<String, String> headers = new Bag<> ();
 		private final Bag<String, Object> context = new Bag<> ();
 
@@ -284,47 +334,146 @@ public class DirectClient implements Client, Consumer<ApiRouter<org.tutske.lib.a
 		private final Bag<String, String> responseHeaders = new Bag<> ();
 		private Object responsePayload;
 		private InputStream responseStream;
+		private Flow.Publisher<ByteBuffer> responsePublisher;
+		private Pipe pipe;
+		private final CompletableFuture<Void> committed = new CompletableFuture<> ();
 
 		public ApiRequest (Method method, String uri, Bag<String, String> data, Bag<String, String> query, InputStream stream, ObjectMapper mapper) {
+			this (method, uri, () -> data, QueryString.encode (query), stream, mapper, RequestBody.DEFAULT_LIMIT);
+			this.path = new Bag<> ();
+			this.path.putAll (data);
+			this.query = new Bag<> ();
+			this.query.putAll (query);
+		}
+
+		public ApiRequest (
+			Method method, String uri, Supplier<Bag<String, String>> matches, QueryString query,
+			InputStream stream, ObjectMapper mapper, int maxBodySize
+		) {
 			this.mapper = mapper;
+			this.maxBodySize = maxBodySize;
 			this.method = method;
 			this.stream = stream;
 			this.uri = uri;
-			this.path.putAll (data);
-			this.query.putAll (query);
+			this.matches = matches;
+			this.querystring = query;
 		}
 
 		@Override public Method method () { return this.method; }
 		@Override public String uri () { return this.uri; }
-		@Override public Bag<String, String> pathParams () { return path; }
-		@Override public Bag<String, String> queryParams () { return query; }
+		@Override public Bag<String, String> pathParams () {
+			if ( path == null ) { path = matches.get (); }
+			return path;
+		}
+
+		@Override public Bag<String, String> queryParams () {
+			if ( query == null ) { query = querystring.decode (); }
+			return query;
+		}
+
+		@Override public QueryString queryString () {
+			return querystring;
+		}
+
+		@Override public int queryInt (String key, int fallback) {
+			if ( query == null ) { return querystring.getInt (key, fallback); }
+			return org.tutske.lib.api.Request.super.queryInt (key, fallback);
+		}
+
+		@Override public long queryLong (String key, long fallback) {
+			if ( query == null ) { return querystring.getLong (key, fallback); }
+			return org.tutske.lib.api.Request.super.queryLong (key, fallback);
+		}
+
+		@Override public boolean queryBoolean (String key, boolean fallback) {
+			if ( query == null ) { return querystring.getBoolean (key, fallback); }
+			return org.tutske.lib.api.Request.super.queryBoolean (key, fallback);
+		}
+
 		@Override public Bag<String, String> headers () { return headers; }
 		@Override public Bag<String, Object> context () { return context; }
+		@Override public long arrival () { return arrival; }
 
 		@Override public void setHeader (String header, String value) {
-			this.responseHeaders.put (header, value);
+			responseHeader (header, value);
 		}
 
 		@Override public void setStatus (int status) {
 			this.status = status;
 		}
 
+		public synchronized RequestBody buffered () throws IOException {
+			if ( body == null ) {
+				if ( streamed ) { throw new IllegalStateException ("The body was already read through rawInputstream."); }
+				body = RequestBody.read (stream, -1, maxBodySize);
+			}
+			return body;
+		}
+
+		@Override public String body (Charset charset) {
+			try { return buffered ().string (charset); }
+			catch ( IOException e ) { throw Exceptions.wrap (e); }
+		}
+
+		@Override public byte [] bytes () {
+			try { return buffered ().bytes (); }
+			catch ( IOException e ) { throw Exceptions.wrap (e); }
+		}
+
 		@Override public JsonNode json () {
-			try { return mapper.readTree (bytes ()); }
+			try { return buffered ().json (mapper); }
 			catch ( IOException e ) { throw Exceptions.wrap (e); }
 		}
 
+		@Override public ObjectMapper mapper () {
+			return mapper;
+		}
+
 		@Override public <T> T json (Class<T> clazz) {
-			try { return mapper.readValue (bytes (), clazz); }
+			try { return buffered ().json (mapper, clazz); }
 			catch ( IOException e ) { throw Exceptions.wrap (e); }
 		}
 
+		@Override public JsonParser jsonParser () throws IOException {
+			return buffered ().parser (mapper);
+		}
+
+		@Override public <T> Stream<T> jsonStream (Class<T> clazz) throws IOException {
+			return JsonStreams.elements (JsonStreams.parser (mapper, rawInputstream ()), clazz);
+		}
+
+		@Override public CompletableFuture<ByteBuffer> bodyAsync () {
+			synchronized ( this ) {
+				if ( body != null ) { return CompletableFuture.completedFuture (ByteBuffer.wrap (body.bytes ())); }
+			}
+			return CompletableFuture.supplyAsync (() -> ByteBuffer.wrap (bytes ()), Publishers.BLOCKING);
+		}
+
+		@Override public Flow.Publisher<ByteBuffer> bodyPublisher () {
+			return Publishers.fromStream (this::inputstream);
+		}
+
 		@Override public InputStream inputstream () throws IOException {
-			return stream;
+			return buffered ().inputstream ();
 		}
 
-		@Override public OutputStream outputstream () throws IOException {
-			throw new ResponseException ("Writing to output stream on direct api is not supported");
+		/* Streams the body without buffering, unless an earlier accessor already read it into memory. */
+		@Override public synchronized InputStream rawInputstream () throws IOException {
+			if ( body != null ) { return body.inputstream (); }
+			if ( streamed ) { throw new IllegalStateException ("The body was already read through rawInputstream."); }
+
+			streamed = true;
+			return stream == null ? InputStream.nullInputStream () : stream;
+		}
+
+		@Override public synchronized OutputStream outputstream () throws IOException {
+			if ( pipe == null ) {
+				pipe = new Pipe ();
+				if ( status == 0 ) { setStatus (200); }
+				if ( responseStream == null ) { responseStream = pipe.in; }
+				committed.complete (null);
+			}
+			return pipe.out;
 		}
 
 		@Override
@@ -339,16 +488,38 @@ public class DirectClient implements Client, Consumer<ApiRouter<org.tutske.lib.a
 			return completeReply (status, headers);
 		}
 
+		@Override
+		public CompletableFuture<Void> reply (int status, Map<String, ?> headers, Flow.Publisher<ByteBuffer> publisher) {
+			if ( responseStream == null && responsePublisher == null ) { this.responsePublisher = publisher; }
+			return completeReply (status, headers);
+		}
+
 		private CompletableFuture<Void> completeReply (int status, Map<String, ?> headers) {
 			if ( this.status == 0 ) { setStatus (status); }
 
 			for ( Map.Entry<String, ?> header : headers.entrySet () ) {
 				if ( header.getKey () == null ) { continue; }
-				this.responseHeaders.put (header.getKey (), String.valueOf (header.getValue ()));
+				responseHeader (header.getKey (), String.valueOf (header.getValue ()));
 			}
 
 			return CompletableFuture.completedFuture (null);
 		}
+
+		/* Vary lists what the reply depends on, so values set by different filters add up. */
+		private void responseHeader (String header, String value) {
+			if ( ! "Vary".equalsIgnoreCase (header) ) {
+				responseHeaders.put (header, value);
+				return;
+			}
+
+			for ( String key : responseHeaders.keySet () ) {
+				if ( key.equalsIgnoreCase (header) ) {
+					responseHeaders.put (key, Headers.vary (responseHeaders.get (key), value));
+					return;
+				}
+			}
+			responseHeaders.put (header, value);
+		}
 	}
 
 }
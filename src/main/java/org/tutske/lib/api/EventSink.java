@@ -0,0 +1,178 @@
+package org.tutske.lib.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Writes server-sent events to a response stream. Every event is framed into
+ * one reused buffer from pre-encoded field names and written with a single
+ * write and flush. A comment line is sent as heartbeat whenever nothing else
+ * was written for a while, which also detects clients that went away. Beats
+ * are timed by a shared scheduler thread and written on the blocking pool of
+ * {@link Publishers}, a beat that comes due during a write is skipped.
+ */
+public class EventSink implements Closeable {
+
+	public static class Config {
+		protected Duration heartbeat = Duration.ofSeconds (15);
+		protected Duration retry = null;
+
+		public Config () {}
+	}
+
+	private static final byte [] ID = "id: ".getBytes (StandardCharsets.US_ASCII);
+	private static final byte [] EVENT = "event: ".getBytes (StandardCharsets.US_ASCII);
+	private static final byte [] DATA = "data: ".getBytes (StandardCharsets.US_ASCII);
+	private static final byte [] RETRY = "retry: ".getBytes (StandardCharsets.US_ASCII);
+	private static final byte [] COMMENT = ": ".getBytes (StandardCharsets.US_ASCII);
+	private static final byte [] HEARTBEAT = ":\n\n".getBytes (StandardCharsets.US_ASCII);
+	private static final byte NEWLINE = '\n';
+
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor (task -> {
+		Thread thread = new Thread (task, "event-sink-heartbeat");
+		thread.setDaemon (true);
+		return thread;
+	});
+
+	private final OutputStream out;
+	private final long heartbeat;
+	private final ByteArrayOutputStream frame = new ByteArrayOutputStream (256);
+	private final CompletableFuture<Void> closed = new CompletableFuture<> ();
+	private volatile long written = System.nanoTime ();
+	private volatile boolean writing = false;
+	private volatile ScheduledFuture<?> next;
+
+	public EventSink (OutputStream out) {
+		this (out, new Config ());
+	}
+
+	public EventSink (OutputStream out, Config config) {
+		this.out = out;
+		this.heartbeat = config.heartbeat == null ? 0 : config.heartbeat.toNanos ();
+
+		if ( config.retry != null ) {
+			field (RETRY, String.valueOf (config.retry.toMillis ()));
+			frame.write (NEWLINE);
+		}
+		flush ();
+
+		if ( heartbeat > 0 ) { schedule (heartbeat); }
+	}
+
+	public boolean send (String data) {
+		return send (null, null, data);
+	}
+
+	public boolean send (String event, String data) {
+		return send (null, event, data);
+	}
+
+	public synchronized boolean send (String id, String event, String data) {
+		if ( id != null ) { single (id); }
+		if ( event != null ) { single (event); }
+		if ( ! isOpen () ) { return false; }
+
+		if ( id != null ) { field (ID, id); }
+		if ( event != null ) { field (EVENT, event); }
+
+		/* every CR, LF or CRLF ends a data line */
+		int start = 0;
+		for ( int i = 0; i < data.length (); i++ ) {
+			char c = data.charAt (i);
+			if ( c != '\n' && c != '\r' ) { continue; }
+
+			field (DATA, data.substring (start, i));
+			if ( c == '\r' && i + 1 < data.length () && data.charAt (i + 1) == '\n' ) { i++; }
+			start = i + 1;
+		}
+		field (DATA, data.substring (start));
+		frame.write (NEWLINE);
+
+		return flush ();
+	}
+
+	public synchronized boolean comment (String text) {
+		single (text);
+		if ( ! isOpen () ) { return false; }
+
+		field (COMMENT, text);
+		frame.write (NEWLINE);
+		return flush ();
+	}
+
+	public synchronized boolean heartbeat () {
+		if ( ! isOpen () ) { return false; }
+
+		frame.writeBytes (HEARTBEAT);
+		return flush ();
+	}
+
+	public boolean isOpen () {
+		return ! closed.isDone ();
+	}
+
+	public CompletableFuture<Void> closed () {
+		return closed;
+	}
+
+	@Override public synchronized void close () {
+		if ( closed.isDone () ) { return; }
+		if ( next != null ) { next.cancel (false); }
+		try { out.close (); }
+		catch ( IOException ignore ) {}
+		closed.complete (null);
+	}
+
+	private void field (byte [] name, String value) {
+		frame.writeBytes (name);
+		frame.writeBytes (value.getBytes (StandardCharsets.UTF_8));
+		frame.write (NEWLINE);
+	}
+
+	private boolean flush () {
+		writing = true;
+		try {
+			frame.writeTo (out);
+			out.flush ();
+			written = System.nanoTime ();
+			return true;
+		} catch ( IOException e ) {
+			close ();
+			return false;
+		} finally {
+			frame.reset ();
+			writing = false;
+		}
+	}
+
+	private void schedule (long delay) {
+		if ( ! isOpen () ) { return; }
+		next = SCHEDULER.schedule (() -> Publishers.BLOCKING.execute (this::beat), delay, TimeUnit.NANOSECONDS);
+	}
+
+	private void beat () {
+		if ( ! isOpen () ) { return; }
+
+		/* a write in progress already shows the client is alive */
+		long idle = writing ? 0 : System.nanoTime () - written;
+		if ( idle >= heartbeat && ! heartbeat () ) { return; }
+		schedule (idle >= heartbeat ? heartbeat : heartbeat - idle);
+	}
+
+	private static void single (String value) {
+		if ( value.indexOf ('\n') >= 0 || value.indexOf ('\r') >= 0 ) {
+			throw new IllegalArgumentException ("Event fields can not contain line breaks");
+		}
+	}
+
+}
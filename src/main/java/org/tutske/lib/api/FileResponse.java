@@ -0,0 +1,324 @@
+package org.tutske.lib.api;
+
+import org.tutske.lib.api.exceptions.NotFoundException;
+import org.tutske.lib.api.exceptions.RangeNotSatisfiableException;
+import org.tutske.lib.api.exceptions.ResponseException;
+import org.tutske.lib.api.filters.Conditional;
+import org.tutske.lib.api.filters.Headers;
+import org.tutske.lib.utils.Exceptions;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A file, or ranges of it, as the body of a reply. It reads like any other
+ * stream so every transport and filter can handle it, but transports that
+ * write to a channel can let the kernel copy the file with transferTo, and
+ * the direct client hands out the regions mapped into memory.
+ */
+public class FileResponse extends InputStream {
+
+	public static final int MAX_RANGES = 16;
+
+	private static final byte [] NO_BYTES = {};
+	private static final AtomicLong BOUNDARIES = new AtomicLong ();
+
+	private static final ResponseException NOT_SATISFIABLE = new RangeNotSatisfiableException () {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	public static CompletableFuture<Void> reply (Request request, Path path) {
+		return reply (request, path, null);
+	}
+
+	public static CompletableFuture<Void> reply (Request request, Path path, String contentType) {
+		try { return send (request, path, contentType); }
+		catch ( NoSuchFileException e ) { throw new NotFoundException (); }
+		catch ( IOException e ) { throw Exceptions.wrap (e); }
+	}
+
+	private static CompletableFuture<Void> send (Request request, Path path, String contentType) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes (path, BasicFileAttributes.class);
+		if ( ! attributes.isRegularFile () ) { throw new NotFoundException (); }
+
+		long length = attributes.size ();
+		Instant modified = attributes.lastModifiedTime ().toInstant ().truncatedTo (ChronoUnit.SECONDS);
+		String etag = "\"" + Long.toHexString (length) + "-" + Long.toHexString (modified.getEpochSecond ()) + "\"";
+
+		if ( Conditional.validator (request, etag, modified) ) { return Conditional.notModified (request); }
+
+		String type = contentType != null ? contentType : Files.probeContentType (path);
+		if ( type == null ) { type = "application/octet-stream"; }
+
+		List<long []> ranges = request.method () == Method.GET && current (request, etag, modified) ?
+			ranges (Headers.get (request.headers (), "Range"), length) :
+			null;
+
+		if ( ranges != null && ranges.isEmpty () ) {
+			request.setHeader ("Content-Range", "bytes */" + length);
+			throw NOT_SATISFIABLE;
+		}
+
+		Map<String, Object> headers = new LinkedHashMap<> ();
+		headers.put ("Accept-Ranges", "bytes");
+
+		List<Segment> segments = new ArrayList<> ();
+		if ( ranges == null ) {
+			headers.put ("Content-Type", type);
+			segments.add (new Segment (0, length));
+		} else if ( ranges.size () == 1 ) {
+			long [] range = ranges.get (0);
+			headers.put ("Content-Type", type);
+			headers.put ("Content-Range", contentRange (range, length));
+			segments.add (new Segment (range[0], range[1] - range[0] + 1));
+		} else {
+			String boundary = Long.toHexString (System.nanoTime ()) + Long.toHexString (BOUNDARIES.incrementAndGet ());
+			headers.put ("Content-Type", "multipart/byteranges; boundary=" + boundary);
+			for ( long [] range : ranges ) {
+				segments.add (new Segment (ascii (
+					"\r\n--" + boundary + "\r\nContent-Type: " + type + "\r\nContent-Range: " + contentRange (range, length) + "\r\n\r\n"
+				)));
+				segments.add (new Segment (range[0], range[1] - range[0] + 1));
+			}
+			segments.add (new Segment (ascii ("\r\n--" + boundary + "--\r\n")));
+		}
+
+		long total = 0;
+		for ( Segment segment : segments ) { total += segment.count; }
+		headers.put ("Content-Length", total);
+
+		int status = ranges == null ? 200 : 206;
+		if ( request.method () == Method.HEAD ) { return request.reply (status, headers, NO_BYTES); }
+		return request.reply (status, headers, new FileResponse (FileChannel.open (path, StandardOpenOption.READ), segments, total));
+	}
+
+	static List<long []> ranges (String header, long length) {
+		if ( header == null ) { return null; }
+
+		String spec = header.trim ();
+		if ( ! spec.regionMatches (true, 0, "bytes=", 0, 6) ) { return null; }
+
+		List<long []> ranges = new ArrayList<> ();
+		for ( String part : spec.substring (6).split (",") ) {
+			String range = part.trim ();
+			if ( range.isEmpty () ) { continue; }
+
+			int dash = range.indexOf ('-');
+			if ( dash < 0 ) { return null; }
+
+			long first;
+			long last;
+			if ( dash == 0 ) {
+				long suffix = digits (range, 1, range.length ());
+				if ( suffix < 0 ) { return null; }
+				first = Math.max (0, length - suffix);
+				last = suffix == 0 ? -1 : length - 1;
+			} else {
+				first = digits (range, 0, dash);
+				last = dash == range.length () - 1 ? Long.MAX_VALUE : digits (range, dash + 1, range.length ());
+				if ( first < 0 || last < 0 || last < first ) { return null; }
+				last = Math.min (last, length - 1);
+			}
+
+			if ( first < length && first <= last ) { ranges.add (new long [] { first, last }); }
+		}
+
+		if ( ranges.size () > MAX_RANGES ) { return null; }
+		return merge (ranges);
+	}
+
+	private static List<long []> merge (List<long []> ranges) {
+		if ( ranges.size () < 2 ) { return ranges; }
+
+		ranges.sort (Comparator.comparingLong (range -> range[0]));
+		List<long []> merged = new ArrayList<> ();
+		long [] current = ranges.get (0);
+
+		for ( int i = 1; i < ranges.size (); i++ ) {
+			long [] next = ranges.get (i);
+			if ( next[0] <= current[1] + 1 ) { current = new long [] { current[0], Math.max (current[1], next[1]) }; }
+			else {
+				merged.add (current);
+				current = next;
+			}
+		}
+
+		merged.add (current);
+		return merged;
+	}
+
+	private static boolean current (Request request, String etag, Instant modified) {
+		String condition = Headers.get (request.headers (), "If-Range");
+		if ( condition == null ) { return true; }
+
+		String trimmed = condition.trim ();
+		return trimmed.equals (etag) || trimmed.equals (DateTimeFormatter.RFC_1123_DATE_TIME.format (modified.atZone (ZoneOffset.UTC)));
+	}
+
+	private static long digits (String value, int start, int end) {
+		if ( start == end || end - start > 18 ) { return -1; }
+
+		long result = 0;
+		for ( int i = start; i < end; i++ ) {
+			int digit = value.charAt (i) - '0';
+			if ( digit < 0 || digit > 9 ) { return -1; }
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	private static String contentRange (long [] range, long length) {
+		return "bytes " + range[0] + "-" + range[1] + "/" + length;
+	}
+
+	private static byte [] ascii (String value) {
+		return value.getBytes (StandardCharsets.US_ASCII);
+	}
+
+	private final FileChannel channel;
+	private final List<Segment> segments;
+	private final long length;
+	private int index = 0;
+	private long offset = 0;
+
+	private FileResponse (FileChannel channel, List<Segment> segments, long length) {
+		this.channel = channel;
+		this.segments = segments;
+		this.length = length;
+	}
+
+	public long length () {
+		return length;
+	}
+
+	public List<ByteBuffer> buffers () throws IOException {
+		List<ByteBuffer> buffers = new ArrayList<> ();
+		for ( int i = index; i < segments.size (); i++ ) {
+			Segment segment = segments.get (i);
+			long skip = i == index ? offset : 0;
+
+			if ( segment.bytes != null ) {
+				buffers.add (ByteBuffer.wrap (segment.bytes, (int) skip, (int) (segment.count - skip)).asReadOnlyBuffer ());
+			} else {
+				buffers.add (channel.map (FileChannel.MapMode.READ_ONLY, segment.position + skip, segment.count - skip));
+			}
+		}
+		return buffers;
+	}
+
+	public long transferTo (WritableByteChannel target) throws IOException {
+		long transferred = 0;
+
+		for ( ; index < segments.size (); index++, offset = 0 ) {
+			Segment segment = segments.get (index);
+			while ( offset < segment.count ) {
+				long n = segment.bytes != null ?
+					target.write (ByteBuffer.wrap (segment.bytes, (int) offset, (int) (segment.count - offset))) :
+					channel.transferTo (segment.position + offset, segment.count - offset, target);
+				if ( n <= 0 ) { throw new EOFException ("File is shorter than expected"); }
+
+				offset += n;
+				transferred += n;
+			}
+		}
+
+		return transferred;
+	}
+
+	@Override public long transferTo (OutputStream out) throws IOException {
+		return transferTo (Channels.newChannel (out));
+	}
+
+	@Override public int read () throws IOException {
+		byte [] single = new byte [1];
+		return read (single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override public int read (byte [] b, int off, int len) throws IOException {
+		if ( len == 0 ) { return 0; }
+
+		while ( index < segments.size () && offset == segments.get (index).count ) {
+			index++;
+			offset = 0;
+		}
+		if ( index == segments.size () ) { return -1; }
+
+		Segment segment = segments.get (index);
+		int n = (int) Math.min (len, segment.count - offset);
+
+		if ( segment.bytes != null ) {
+			System.arraycopy (segment.bytes, (int) offset, b, off, n);
+		} else {
+			n = channel.read (ByteBuffer.wrap (b, off, n), segment.position + offset);
+			if ( n < 0 ) { throw new EOFException ("File is shorter than expected"); }
+		}
+
+		offset += n;
+		return n;
+	}
+
+	@Override public long skip (long n) {
+		long skipped = 0;
+		while ( skipped < n && index < segments.size () ) {
+			long step = Math.min (n - skipped, segments.get (index).count - offset);
+			skipped += step;
+			offset += step;
+			if ( offset == segments.get (index).count ) {
+				index++;
+				offset = 0;
+			}
+		}
+		return skipped;
+	}
+
+	@Override public int available () {
+		return index < segments.size () ? (int) Math.min (Integer.MAX_VALUE, segments.get (index).count - offset) : 0;
+	}
+
+	@Override public void close () throws IOException {
+		channel.close ();
+	}
+
+	private static class Segment {
+		private final byte [] bytes;
+		private final long position;
+		private final long count;
+
+		private Segment (byte [] bytes) {
+			this.bytes = bytes;
+			this.position = 0;
+			this.count = bytes.length;
+		}
+
+		private Segment (long position, long count) {
+			this.bytes = null;
+			this.position = position;
+			this.count = count;
+		}
+	}
+
+}
@@ -1,7 +1,21 @@
 package org.tutske.lib.api;
 
+import org.tutske.lib.api.filters.CircuitBreaker;
+import org.tutske.lib.api.filters.Compression;
+import org.tutske.lib.api.filters.ConcurrencyLimiter;
+import org.tutske.lib.api.filters.Conditional;
+import org.tutske.lib.api.filters.Cors;
+import org.tutske.lib.api.filters.Deadlines;
+import org.tutske.lib.api.filters.Idempotency;
+import org.tutske.lib.api.filters.LoadShedder;
+import org.tutske.lib.api.filters.RateLimiter;
+import org.tutske.lib.api.filters.SingleFlight;
 import org.tutske.lib.utils.Bag;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
 
 public class Filters {
 
@@ -18,4 +32,103 @@ public class Filters {
 		};
 	}
 
+	public static <REQ extends Request, RES> Filter<REQ, RES> rateLimit (
+		Function<? super REQ, String> key, int requests, Duration period
+	) {
+		return new RateLimiter<> (key, new RateLimiter.Config (requests, period));
+	}
+
+	public static <REQ extends Request, RES> Filter<REQ, RES> rateLimit (
+		Function<? super REQ, String> key, RateLimiter.Config config
+	) {
+		return new RateLimiter<> (key, config);
+	}
+
+	public static <REQ extends Request> ConcurrencyLimiter<REQ> concurrencyLimit (int initial, Duration latency) {
+		return new ConcurrencyLimiter<> (new ConcurrencyLimiter.Config (initial, latency));
+	}
+
+	public static <REQ extends Request> ConcurrencyLimiter<REQ> concurrencyLimit (ConcurrencyLimiter.Config config) {
+		return new ConcurrencyLimiter<> (config);
+	}
+
+	public static SingleFlight singleFlight (String ... params) {
+		return new SingleFlight (params);
+	}
+
+	public static Compression compression () {
+		return new Compression ();
+	}
+
+	public static Compression compression (Compression.Config config) {
+		return new Compression (config);
+	}
+
+	public static <REQ extends Request> Cors<REQ> cors (String ... origins) {
+		return new Cors<> (new Cors.Config (origins));
+	}
+
+	public static <REQ extends Request> Cors<REQ> cors (Cors.Config config) {
+		return new Cors<> (config);
+	}
+
+	public static Deadlines deadline (Duration budget) {
+		return new Deadlines (new Deadlines.Config (budget));
+	}
+
+	public static Deadlines deadline (Deadlines.Config config) {
+		return new Deadlines (config);
+	}
+
+	public static <REQ extends Request, RES> LoadShedder<REQ, RES> loadShedding (Duration target, Duration interval) {
+		return new LoadShedder<> (new LoadShedder.Config (target, interval));
+	}
+
+	public static <REQ extends Request, RES> LoadShedder<REQ, RES> loadShedding (LoadShedder.Config config) {
+		return new LoadShedder<> (config);
+	}
+
+	public static CircuitBreaker circuitBreaker (double failureRate, Duration openDuration) {
+		return new CircuitBreaker (new CircuitBreaker.Config (failureRate, openDuration));
+	}
+
+	public static CircuitBreaker circuitBreaker (CircuitBreaker.Config config) {
+		return new CircuitBreaker (config);
+	}
+
+	public static Idempotency idempotency () {
+		return new Idempotency ();
+	}
+
+	public static Idempotency idempotency (Idempotency.Config config) {
+		return new Idempotency (config);
+	}
+
+	public static Conditional conditional () {
+		return new Conditional ();
+	}
+
+	public static Filter<Request, CompletableFuture<Void>> bufferBody (int limit) {
+		return (req, chain) -> chain.apply (new BufferedRequest (req, limit));
+	}
+
+	public static Filter<Request, CompletableFuture<Void>> spoolBody (BodySpool spool) {
+		return (req, chain) -> {
+			SpooledRequest spooled = new SpooledRequest (req, spool);
+			CompletableFuture<Void> future;
+
+			try { future = chain.apply (spooled); }
+			catch ( RuntimeException e ) {
+				spooled.close ();
+				throw e;
+			}
+
+			if ( future == null ) {
+				spooled.close ();
+				return null;
+			}
+			return future.whenComplete ((ignore, throwable) -> spooled.close ());
+		};
+	}
+
 }
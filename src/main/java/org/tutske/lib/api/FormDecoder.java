@@ -0,0 +1,173 @@
+package org.tutske.lib.api;
+
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+import org.tutske.lib.utils.Bag;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Decodes an application/x-www-form-urlencoded body while it is being read.
+ * Fields are collected in a small buffer and unescaped in place, so memory
+ * stays bounded by the field limits rather than by the size of the form.
+ */
+public class FormDecoder implements Closeable {
+
+	public static class Config {
+		protected int bufferSize = 8 * 1024;
+		protected int maxFields = 1000;
+		protected int maxKeyLength = 1024;
+		protected int maxValueLength = 64 * 1024;
+		protected Charset charset = StandardCharsets.UTF_8;
+
+		public Config () {}
+	}
+
+	static final InputException MALFORMED = new InputException ("Malformed percent encoding.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	private static final PayloadTooLargeException TOO_MANY_FIELDS = new PayloadTooLargeException ("Too many form fields.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	private static final PayloadTooLargeException FIELD_TOO_LARGE = new PayloadTooLargeException ("Form field is too large.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	public static Bag<String, String> decode (InputStream in) throws IOException {
+		return decode (in, new Config ());
+	}
+
+	public static Bag<String, String> decode (InputStream in, Config config) throws IOException {
+		try ( FormDecoder decoder = new FormDecoder (in, config) ) {
+			return decoder.decodeInto (new Bag<> ());
+		}
+	}
+
+	static String unescape (String encoded) {
+		if ( encoded.indexOf ('%') < 0 && encoded.indexOf ('+') < 0 ) { return encoded; }
+
+		byte [] bytes = encoded.getBytes (StandardCharsets.UTF_8);
+		return new String (bytes, 0, unescape (bytes, 0, bytes.length), StandardCharsets.UTF_8);
+	}
+
+	static int unescape (byte [] bytes, int start, int end) {
+		int out = start;
+		for ( int i = start; i < end; i++ ) {
+			byte b = bytes[i];
+			if ( b == '+' ) { bytes[out++] = ' '; }
+			else if ( b != '%' ) { bytes[out++] = b; }
+			else {
+				if ( i + 2 >= end ) { throw MALFORMED; }
+				int high = Character.digit (bytes[i + 1], 16);
+				int low = Character.digit (bytes[i + 2], 16);
+				if ( high < 0 || low < 0 ) { throw MALFORMED; }
+				bytes[out++] = (byte) (high << 4 | low);
+				i += 2;
+			}
+		}
+		return out;
+	}
+
+	private final InputStream in;
+	private final Config config;
+	private final byte [] buffer;
+	private byte [] field = new byte [128];
+
+	private int position = 0;
+	private int limit = 0;
+	private int length = 0;
+	private boolean eof = false;
+	private int fields = 0;
+
+	private String key;
+	private String value;
+
+	public FormDecoder (InputStream in, Config config) {
+		this.in = in;
+		this.config = config;
+		this.buffer = new byte [config.bufferSize];
+	}
+
+	public boolean next () throws IOException {
+		while ( true ) {
+			int end = scan (config.maxKeyLength, true);
+			if ( end < 0 && length == 0 ) { return false; }
+			if ( end == '&' && length == 0 ) { continue; }
+
+			if ( ++fields > config.maxFields ) { throw TOO_MANY_FIELDS; }
+			key = string ();
+
+			if ( end == '=' ) {
+				scan (config.maxValueLength, false);
+				value = length == 0 ? null : string ();
+			} else {
+				value = null;
+			}
+
+			return true;
+		}
+	}
+
+	public String key () {
+		return key;
+	}
+
+	public String value () {
+		return value;
+	}
+
+	public int fields () {
+		return fields;
+	}
+
+	public Bag<String, String> decodeInto (Bag<String, String> bag) throws IOException {
+		while ( next () ) {
+			if ( value != null ) { bag.add (key, value); }
+			else { bag.add (key); }
+		}
+		return bag;
+	}
+
+	@Override public void close () throws IOException {
+		in.close ();
+	}
+
+	/* Collects raw bytes up to the next separator, returns the separator or -1 at the end of the body. */
+	private int scan (int max, boolean key) throws IOException {
+		length = 0;
+		while ( true ) {
+			if ( position == limit && ! fill () ) { return -1; }
+
+			byte b = buffer[position++];
+			if ( b == '&' || (key && b == '=') ) { return b; }
+
+			if ( length == max ) { throw FIELD_TOO_LARGE; }
+			if ( length == field.length ) { field = Arrays.copyOf (field, Math.min (max, field.length * 2)); }
+			field[length++] = b;
+		}
+	}
+
+	private boolean fill () throws IOException {
+		if ( eof ) { return false; }
+
+		int read = in.read (buffer, 0, buffer.length);
+		if ( read < 0 ) { eof = true; return false; }
+
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	private String string () {
+		return new String (field, 0, unescape (field, 0, length), config.charset);
+	}
+
+}
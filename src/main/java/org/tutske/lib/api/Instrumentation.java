@@ -0,0 +1,122 @@
+package org.tutske.lib.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+
+/**
+ * Collects the time spent in every filter and handler of a router, up to the
+ * moment their futures complete. Timing is added by decorating the filters
+ * when a chain is created, so routers without instrumentation run the plain
+ * chain.
+ */
+public class Instrumentation {
+
+	public static class Timing {
+		public final LatencyHistogram total = new LatencyHistogram ();
+		public final LatencyHistogram self = new LatencyHistogram ();
+	}
+
+	private final ConcurrentHashMap<String, Timing> timings = new ConcurrentHashMap<> ();
+
+	public Timing timing (String name) {
+		return timings.computeIfAbsent (name, n -> new Timing ());
+	}
+
+	public Map<String, Timing> timings () {
+		return Collections.unmodifiableMap (new TreeMap<> (timings));
+	}
+
+	public <S, T> Chain<S, T> chain (
+		String identifier, Priority priority, Function<S, T> destination,
+		List<String> names, List<Filter<S, T>> filters
+	) {
+		Nesting nesting = new Nesting (filters.size () + 1);
+
+		List<Filter<S, T>> timed = new ArrayList<> (filters.size ());
+		for ( int i = 0; i < filters.size (); i++ ) {
+			timed.add (new TimedFilter<> (timing (names.get (i)), nesting, i, filters.get (i)));
+		}
+
+		Timing handler = timing ("route:" + identifier);
+		return new Chain<> (identifier, priority, new TimedFunction<> (handler, nesting, filters.size (), destination), timed);
+	}
+
+	/* Time is recorded once the returned future completes, so the whole async run of a step is counted. */
+	private static class Nesting {
+		private final AtomicLongArray totals;
+
+		private Nesting (int levels) {
+			this.totals = new AtomicLongArray (levels);
+		}
+
+		@SuppressWarnings ("unchecked")
+		private <T> T complete (Timing timing, int level, long start, T result) {
+			if ( ! (result instanceof CompletableFuture) ) {
+				record (timing, level, start);
+				return result;
+			}
+			return (T) ((CompletableFuture<?>) result).whenComplete ((value, throwable) -> record (timing, level, start));
+		}
+
+		private void record (Timing timing, int level, long start) {
+			long total = System.nanoTime () - start;
+			long inner = level + 1 < totals.length () ? totals.get (level + 1) : 0;
+			timing.total.record (total);
+			timing.self.record (total - inner);
+			totals.addAndGet (level, total);
+		}
+	}
+
+	private static class TimedFilter<S, T> implements Filter<S, T> {
+		private final Timing timing;
+		private final Nesting nesting;
+		private final int level;
+		private final Filter<S, T> filter;
+
+		private TimedFilter (Timing timing, Nesting nesting, int level, Filter<S, T> filter) {
+			this.timing = timing;
+			this.nesting = nesting;
+			this.level = level;
+			this.filter = filter;
+		}
+
+		@Override public T call (S source, Chain<S, T> chain) throws Exception {
+			long start = System.nanoTime ();
+			T result;
+			try { result = filter.call (source, chain); }
+			catch ( Exception e ) { nesting.record (timing, level, start); throw e; }
+			return nesting.complete (timing, level, start, result);
+		}
+	}
+
+	private static class TimedFunction<S, T> implements Function<S, T> {
+		private final Timing timing;
+		private final Nesting nesting;
+		private final int level;
+		private final Function<S, T> fn;
+
+		private TimedFunction (Timing timing, Nesting nesting, int level, Function<S, T> fn) {
+			this.timing = timing;
+			this.nesting = nesting;
+			this.level = level;
+			this.fn = fn;
+		}
+
+		@Override public T apply (S source) {
+			long start = System.nanoTime ();
+			T result;
+			try { result = fn.apply (source); }
+			catch ( RuntimeException e ) { nesting.record (timing, level, start); throw e; }
+			return nesting.complete (timing, level, start, result);
+		}
+	}
+
+}
@@ -0,0 +1,279 @@
+package org.tutske.lib.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.json.Mappers;
+import org.tutske.lib.utils.Exceptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+public class JsonStreams {
+
+	private static final int PREFETCH = 32;
+	private static final int TARGET_SIZE = 8 * 1024;
+	private static final Object DONE = new Object ();
+
+	private static volatile ObjectMapper mapper;
+
+	public static JsonParser parser (InputStream in) throws IOException {
+		return parser (defaultMapper (), in);
+	}
+
+	public static JsonParser parser (ObjectMapper mapper, InputStream in) throws IOException {
+		return mapper.getFactory ().createParser (in);
+	}
+
+	public static <T> Stream<T> elements (JsonParser parser, Class<T> clazz) throws IOException {
+		JsonToken first = parser.nextToken ();
+		if ( first == null ) {
+			parser.close ();
+			return Stream.empty ();
+		}
+		if ( first != JsonToken.START_ARRAY ) {
+			parser.close ();
+			throw new InputException ("Expected a json array in the request body.");
+		}
+
+		Iterator<T> iterator = new Elements<> (parser, clazz);
+		return StreamSupport
+			.stream (Spliterators.spliteratorUnknownSize (iterator, Spliterator.ORDERED), false)
+			.onClose (() -> {
+				try { parser.close (); }
+				catch ( IOException e ) { throw Exceptions.wrap (e); }
+			});
+	}
+
+	public static InputStream lines (Iterator<?> items) {
+		return lines (defaultMapper (), items);
+	}
+
+	public static InputStream lines (ObjectMapper mapper, Iterator<?> items) {
+		return new Serializing (mapper, items, false);
+	}
+
+	public static InputStream array (Iterator<?> items) {
+		return array (defaultMapper (), items);
+	}
+
+	public static InputStream array (ObjectMapper mapper, Iterator<?> items) {
+		return new Serializing (mapper, items, true);
+	}
+
+	public static <T> Iterator<T> iterator (Stream<T> stream) {
+		return new Closing<> (stream);
+	}
+
+	public static <T> Iterator<T> iterator (Flow.Publisher<T> publisher) {
+		return iterator (publisher, PREFETCH);
+	}
+
+	public static <T> Iterator<T> iterator (Flow.Publisher<T> publisher, int prefetch) {
+		Subscribed<T> subscribed = new Subscribed<> (prefetch);
+		publisher.subscribe (subscribed);
+		return subscribed;
+	}
+
+	static ObjectMapper defaultMapper () {
+		if ( mapper == null ) { mapper = Mappers.mapper (); }
+		return mapper;
+	}
+
+	private static class Elements<T> implements Iterator<T> {
+		private final JsonParser parser;
+		private final Class<T> clazz;
+		private JsonToken next;
+
+		private Elements (JsonParser parser, Class<T> clazz) {
+			this.parser = parser;
+			this.clazz = clazz;
+		}
+
+		@Override public boolean hasNext () {
+			if ( next == null ) {
+				try { next = parser.nextToken (); }
+				catch ( IOException e ) { throw Exceptions.wrap (e); }
+			}
+			return next != null && next != JsonToken.END_ARRAY;
+		}
+
+		@Override public T next () {
+			if ( ! hasNext () ) { throw new NoSuchElementException (); }
+			next = null;
+			try { return parser.readValueAs (clazz); }
+			catch ( IOException e ) { throw Exceptions.wrap (e); }
+		}
+	}
+
+	/**
+	 * Serializes elements only when the transport asks for more bytes, one
+	 * generator writing into a single reused buffer. A read returns as soon as
+	 * there is something to send rather than waiting for a publisher.
+	 */
+	private static class Serializing extends InputStream {
+		private final ObjectMapper mapper;
+		private final Iterator<?> items;
+		private final boolean array;
+		private final Buffer buffer = new Buffer ();
+		private JsonGenerator generator;
+		private int position = 0;
+		private boolean done = false;
+
+		private Serializing (ObjectMapper mapper, Iterator<?> items, boolean array) {
+			this.mapper = mapper;
+			this.items = items;
+			this.array = array;
+		}
+
+		@Override public int read () throws IOException {
+			byte [] single = new byte [1];
+			return read (single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override public int read (byte [] b, int off, int len) throws IOException {
+			if ( len == 0 ) { return 0; }
+			if ( position == buffer.size () && ! produce (Math.max (len, TARGET_SIZE)) ) { return -1; }
+
+			int n = Math.min (len, buffer.size () - position);
+			System.arraycopy (buffer.bytes (), position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override public int available () {
+			return buffer.size () - position;
+		}
+
+		@Override public void close () throws IOException {
+			done = true;
+			if ( generator != null ) { generator.close (); }
+			if ( items instanceof Closing ) { ((Closing<?>) items).close (); }
+			if ( items instanceof Subscribed ) { ((Subscribed<?>) items).close (); }
+		}
+
+		private boolean produce (int target) throws IOException {
+			if ( done ) { return false; }
+
+			buffer.reset ();
+			position = 0;
+
+			if ( generator == null ) {
+				generator = mapper.getFactory ().createGenerator (buffer);
+				if ( array ) { generator.writeStartArray (); }
+				else { generator.setRootValueSeparator (null); }
+			}
+
+			while ( buffer.size () < target && ready () && items.hasNext () ) {
+				mapper.writeValue (generator, items.next ());
+				if ( ! array ) { generator.writeRaw ('\n'); }
+			}
+
+			if ( buffer.size () < target && ready () && ! items.hasNext () ) {
+				if ( array ) { generator.writeEndArray (); }
+				done = true;
+			}
+
+			generator.flush ();
+			return buffer.size () > 0;
+		}
+
+		private boolean ready () {
+			return ! (items instanceof Subscribed) || buffer.size () == 0 || ((Subscribed<?>) items).ready ();
+		}
+	}
+
+	private static class Buffer extends ByteArrayOutputStream {
+		private Buffer () { super (TARGET_SIZE); }
+		private byte [] bytes () { return buf; }
+	}
+
+	private static class Closing<T> implements Iterator<T> {
+		private final Stream<T> stream;
+		private final Iterator<T> iterator;
+
+		private Closing (Stream<T> stream) {
+			this.stream = stream;
+			this.iterator = stream.iterator ();
+		}
+
+		@Override public boolean hasNext () { return iterator.hasNext (); }
+		@Override public T next () { return iterator.next (); }
+
+		private void close () { stream.close (); }
+	}
+
+	private static class Subscribed<T> implements Iterator<T>, Flow.Subscriber<T> {
+		private final BlockingQueue<Object> queue = new LinkedBlockingQueue<> ();
+		private final int prefetch;
+		private volatile Flow.Subscription subscription;
+		private Object next;
+		private int consumed = 0;
+
+		private Subscribed (int prefetch) {
+			this.prefetch = prefetch;
+		}
+
+		@Override public void onSubscribe (Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request (prefetch);
+		}
+
+		@Override public void onNext (T item) { queue.add (item); }
+		@Override public void onError (Throwable throwable) { queue.add (new Failure (throwable)); }
+		@Override public void onComplete () { queue.add (DONE); }
+
+		private boolean ready () {
+			return next != null || ! queue.isEmpty ();
+		}
+
+		@Override public boolean hasNext () {
+			if ( next == null ) {
+				try { next = queue.take (); }
+				catch ( InterruptedException e ) {
+					Thread.currentThread ().interrupt ();
+					throw Exceptions.wrap (e);
+				}
+			}
+			if ( next instanceof Failure ) { throw new CompletionException (((Failure) next).throwable); }
+			return next != DONE;
+		}
+
+		@Override @SuppressWarnings ("unchecked")
+		public T next () {
+			if ( ! hasNext () ) { throw new NoSuchElementException (); }
+
+			T item = (T) next;
+			next = null;
+			if ( ++consumed == Math.max (1, prefetch / 2) ) {
+				subscription.request (consumed);
+				consumed = 0;
+			}
+			return item;
+		}
+
+		private void close () {
+			if ( subscription != null ) { subscription.cancel (); }
+		}
+	}
+
+	private static class Failure {
+		private final Throwable throwable;
+		private Failure (Throwable throwable) { this.throwable = throwable; }
+	}
+
+}
@@ -0,0 +1,54 @@
+package org.tutske.lib.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 65;
+
+	private final AtomicLongArray buckets = new AtomicLongArray (BUCKETS);
+	private final LongAdder count = new LongAdder ();
+	private final LongAdder sum = new LongAdder ();
+	private final AtomicLong max = new AtomicLong ();
+
+	public void record (long nanos) {
+		long value = Math.max (0, nanos);
+		buckets.incrementAndGet (BUCKETS - 1 - Long.numberOfLeadingZeros (value));
+		count.increment ();
+		sum.add (value);
+
+		long current = max.get ();
+		while ( value > current && ! max.compareAndSet (current, value) ) { current = max.get (); }
+	}
+
+	public long count () { return count.sum (); }
+	public long sum () { return sum.sum (); }
+	public long max () { return max.get (); }
+
+	public long mean () {
+		long count = count ();
+		return count == 0 ? 0 : sum () / count;
+	}
+
+	public long percentile (double percentile) {
+		long count = count ();
+		if ( count == 0 ) { return 0; }
+
+		long threshold = (long) Math.ceil (count * Math.min (1, Math.max (0, percentile)));
+		long seen = 0;
+		for ( int i = 0; i < BUCKETS; i++ ) {
+			seen += buckets.get (i);
+			if ( seen >= threshold ) { return Math.min (max (), upperBound (i)); }
+		}
+
+		return max ();
+	}
+
+	private static long upperBound (int bucket) {
+		return bucket == 0 ? 0 : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+
+}
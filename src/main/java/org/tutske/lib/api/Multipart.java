@@ -0,0 +1,366 @@
+package org.tutske.lib.api;
+
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+import org.tutske.lib.api.filters.Headers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Parses a multipart/form-data body while it is being read. Parts are handed
+ * out one at a time as streams over a single scan buffer; asking for the next
+ * part skips whatever is left of the current one, so only the buffer is ever
+ * held in memory no matter how large the uploads are.
+ */
+public class Multipart implements Closeable {
+
+	public static class Config {
+		protected int bufferSize = 64 * 1024;
+		protected long maxPartSize = 16 * 1024 * 1024;
+		protected long maxTotalSize = 64 * 1024 * 1024;
+		protected int maxParts = 128;
+		protected int maxHeaderSize = 8 * 1024;
+		protected Charset charset = StandardCharsets.UTF_8;
+
+		public Config () {}
+	}
+
+	private static final byte [] CRLF = { '\r', '\n' };
+
+	public static Multipart parse (Request request) throws IOException {
+		return parse (request, new Config ());
+	}
+
+	public static Multipart parse (Request request, Config config) throws IOException {
+		String boundary = boundary (Headers.get (request.headers (), "Content-Type"));
+		if ( boundary == null ) { throw new InputException ("Expected a multipart body with a boundary."); }
+		return new Multipart (request.inputstream (), boundary, config);
+	}
+
+	static String boundary (String contentType) {
+		if ( contentType == null ) { return null; }
+		if ( ! contentType.trim ().toLowerCase (Locale.ROOT).startsWith ("multipart/") ) { return null; }
+
+		String boundary = param (contentType, "boundary");
+		if ( boundary == null || boundary.isEmpty () || boundary.length () > 70 ) { return null; }
+		return boundary;
+	}
+
+	static String param (String header, String name) {
+		boolean quoted = false;
+		int start = 0;
+
+		for ( int i = 0; i < header.length (); i++ ) {
+			char c = header.charAt (i);
+			if ( quoted && c == '\\' ) { i++; }
+			else if ( c == '"' ) { quoted = ! quoted; }
+			else if ( c == ';' && ! quoted ) {
+				String value = value (header.substring (start, i), name);
+				if ( value != null ) { return value; }
+				start = i + 1;
+			}
+		}
+
+		return value (header.substring (start), name);
+	}
+
+	private static String value (String param, String name) {
+		int eq = param.indexOf ('=');
+		if ( eq < 0 || ! param.substring (0, eq).trim ().equalsIgnoreCase (name) ) { return null; }
+
+		String value = param.substring (eq + 1).trim ();
+		if ( value.length () >= 2 && value.charAt (0) == '"' && value.charAt (value.length () - 1) == '"' ) {
+			value = value.substring (1, value.length () - 1).replace ("\\\"", "\"");
+		}
+		return value;
+	}
+
+	private final InputStream in;
+	private final byte [] delimiter;
+	private final byte [] buffer;
+	private final Config config;
+
+	private int position = 0;
+	private int limit = 0;
+	private boolean eof = false;
+	private boolean finished = false;
+	private long total = 0;
+	private long fills = 0;
+	private int parts = 0;
+	private Part current;
+
+	public Multipart (InputStream in, String boundary, Config config) {
+		this.in = in;
+		this.config = config;
+		this.delimiter = ("\r\n--" + boundary).getBytes (StandardCharsets.US_ASCII);
+		this.buffer = new byte [Math.max (config.bufferSize, 2 * delimiter.length + config.maxHeaderSize)];
+
+		/* The first delimiter has no preceding line break, pretend it has one. */
+		System.arraycopy (CRLF, 0, buffer, 0, CRLF.length);
+		this.limit = CRLF.length;
+	}
+
+	public Part next () throws IOException {
+		if ( finished ) { return null; }
+
+		if ( current == null ) { skipPreamble (); }
+		else { current.skip (); }
+
+		if ( ! afterDelimiter () ) {
+			finished = true;
+			return null;
+		}
+
+		if ( ++parts > config.maxParts ) { throw new PayloadTooLargeException ("Too many parts in multipart body."); }
+		current = new Part (readHeaders ());
+		return current;
+	}
+
+	@Override public void close () throws IOException {
+		finished = true;
+		in.close ();
+	}
+
+	private void skipPreamble () throws IOException {
+		while ( true ) {
+			int found = find ();
+			if ( found >= 0 ) {
+				position = found + delimiter.length;
+				return;
+			}
+			if ( eof ) { throw new InputException ("Multipart body contains no parts."); }
+			position = Math.max (position, limit - delimiter.length + 1);
+			fill ();
+		}
+	}
+
+	private boolean afterDelimiter () throws IOException {
+		ensure (2);
+		if ( limit - position >= 2 && buffer[position] == '-' && buffer[position + 1] == '-' ) { return false; }
+
+		/* Skip transport padding up to and including the line break. */
+		while ( true ) {
+			if ( position >= limit && ! ensure (1) ) { throw new InputException ("Unexpected end of multipart body."); }
+			byte b = buffer[position++];
+			if ( b == '\n' ) { return true; }
+		}
+	}
+
+	private Map<String, String> readHeaders () throws IOException {
+		Map<String, String> headers = new LinkedHashMap<> ();
+		int size = 0;
+
+		while ( true ) {
+			int end = lineEnd ();
+			if ( end < 0 ) { throw new InputException ("Unexpected end of multipart part headers."); }
+
+			int length = end - position;
+			size += length + 2;
+			if ( size > config.maxHeaderSize ) { throw new PayloadTooLargeException ("Multipart part headers are too large."); }
+
+			String line = new String (buffer, position, length, config.charset);
+			position = end + 2;
+			if ( line.isEmpty () ) { return headers; }
+
+			int colon = line.indexOf (':');
+			if ( colon <= 0 ) { throw new InputException ("Malformed multipart part header."); }
+			headers.put (line.substring (0, colon).trim (), line.substring (colon + 1).trim ());
+		}
+	}
+
+	private int lineEnd () throws IOException {
+		int scanned = 0;
+		while ( true ) {
+			for ( int i = position + scanned; i + 1 < limit; i++ ) {
+				if ( buffer[i] == '\r' && buffer[i + 1] == '\n' ) { return i; }
+			}
+			scanned = Math.max (0, limit - position - 1);
+			if ( scanned > config.maxHeaderSize ) { throw new PayloadTooLargeException ("Multipart part headers are too large."); }
+			if ( ! ensure (limit - position + 1) ) { return -1; }
+		}
+	}
+
+	private int find () {
+		byte first = delimiter[0];
+		int last = limit - delimiter.length;
+
+		outer:
+		for ( int i = position; i <= last; i++ ) {
+			if ( buffer[i] != first ) { continue; }
+			for ( int j = 1; j < delimiter.length; j++ ) {
+				if ( buffer[i + j] != delimiter[j] ) { continue outer; }
+			}
+			return i;
+		}
+
+		return -1;
+	}
+
+	/* Makes sure at least `needed` unread bytes are buffered, returns false when the body ends before that. */
+	private boolean ensure (int needed) throws IOException {
+		while ( limit - position < needed ) {
+			if ( eof ) { return false; }
+			fill ();
+		}
+		return true;
+	}
+
+	private void fill () throws IOException {
+		/* compacting moves the unread bytes, so any scanned offsets are stale from here on */
+		fills++;
+		if ( position > 0 ) {
+			System.arraycopy (buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+
+		int read = in.read (buffer, limit, buffer.length - limit);
+		if ( read < 0 ) { eof = true; return; }
+
+		total += read;
+		if ( total > config.maxTotalSize ) { throw new PayloadTooLargeException ("Multipart body is too large."); }
+		limit += read;
+	}
+
+	public class Part extends InputStream {
+		private final Map<String, String> headers;
+		private final String name;
+		private final String filename;
+		private long size = 0;
+		private boolean done = false;
+		private long scanned = -1;
+		private int end;
+		private boolean delimited;
+
+		private Part (Map<String, String> headers) {
+			this.headers = Collections.unmodifiableMap (headers);
+
+			String disposition = Headers.get (headers, "Content-Disposition");
+			this.name = disposition == null ? null : param (disposition, "name");
+			this.filename = disposition == null ? null : param (disposition, "filename");
+		}
+
+		public Map<String, String> headers () { return headers; }
+		public String name () { return name; }
+		public String filename () { return filename; }
+		public String contentType () { return Headers.get (headers, "Content-Type"); }
+		public long size () { return size; }
+
+		public byte [] bytes () throws IOException {
+			return readAllBytes ();
+		}
+
+		public String string () throws IOException {
+			return new String (readAllBytes (), config.charset);
+		}
+
+		public long transferTo (Path path) throws IOException {
+			try ( FileChannel channel = FileChannel.open (path,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+			) ) {
+				return transferTo (channel);
+			}
+		}
+
+		public long transferTo (FileChannel channel) throws IOException {
+			long written = 0;
+			while ( true ) {
+				int available = available (Integer.MAX_VALUE);
+				if ( available < 0 ) { return written; }
+
+				ByteBuffer chunk = ByteBuffer.wrap (buffer, position, available);
+				while ( chunk.hasRemaining () ) { channel.write (chunk); }
+				consume (available);
+				written += available;
+			}
+		}
+
+		@Override public int read () throws IOException {
+			int available = available (1);
+			if ( available < 0 ) { return -1; }
+
+			int b = buffer[position] & 0xFF;
+			consume (1);
+			return b;
+		}
+
+		@Override public int read (byte [] b, int off, int len) throws IOException {
+			if ( len == 0 ) { return 0; }
+
+			int available = available (len);
+			if ( available < 0 ) { return -1; }
+
+			System.arraycopy (buffer, position, b, off, available);
+			consume (available);
+			return available;
+		}
+
+		@Override public long skip (long n) throws IOException {
+			int available = available ((int) Math.min (n, Integer.MAX_VALUE));
+			if ( available < 0 ) { return 0; }
+			consume (available);
+			return available;
+		}
+
+		@Override public int available () {
+			if ( done ) { return 0; }
+			return end () - position;
+		}
+
+		@Override public void close () throws IOException {
+			skip ();
+		}
+
+		private void skip () throws IOException {
+			for ( int n = available (Integer.MAX_VALUE); n >= 0; n = available (Integer.MAX_VALUE) ) { consume (n); }
+		}
+
+		/* Number of part bytes readable at position, at most max, or -1 once the delimiter is reached. */
+		private int available (int max) throws IOException {
+			if ( done ) { return -1; }
+
+			while ( true ) {
+				int end = end ();
+				if ( delimited && end == position ) {
+					position += delimiter.length;
+					done = true;
+					return -1;
+				}
+				if ( end > position ) { return Math.min (max, end - position); }
+				if ( eof ) { throw new InputException ("Unexpected end of multipart body."); }
+				fill ();
+			}
+		}
+
+		/* Where the part data stops in the buffer; only scanned again after the buffer was filled. */
+		private int end () {
+			if ( scanned != fills ) {
+				int found = find ();
+				delimited = found >= 0;
+				end = delimited ? found : Math.max (position, limit - delimiter.length + 1);
+				scanned = fills;
+			}
+			return end;
+		}
+
+		private void consume (int count) {
+			position += count;
+			size += count;
+			if ( size > config.maxPartSize ) { throw new PayloadTooLargeException ("Multipart part is too large."); }
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package org.tutske.lib.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Hands written chunks to a reader on another thread through a bounded queue,
+ * so a fast writer blocks until the reader catches up. Unlike the piped
+ * streams of the jdk it does not care which threads read or write, which
+ * matters for handlers that write from pooled threads.
+ */
+class Pipe {
+
+	private static final byte [] END = {};
+
+	private final BlockingQueue<byte []> chunks;
+	private final AtomicBoolean closed = new AtomicBoolean (false);
+	private volatile Throwable failure;
+
+	final OutputStream out = new OutputStream () {
+		@Override public void write (int b) throws IOException {
+			write (new byte [] { (byte) b }, 0, 1);
+		}
+
+		@Override public void write (byte [] b, int off, int len) throws IOException {
+			if ( closed.get () ) { throw new IOException ("The pipe is closed"); }
+			if ( len > 0 ) { put (Arrays.copyOfRange (b, off, off + len)); }
+		}
+
+		@Override public void close () throws IOException {
+			if ( closed.compareAndSet (false, true) ) { put (END); }
+		}
+	};
+
+	final InputStream in = new InputStream () {
+		private byte [] current;
+		private int position = 0;
+
+		@Override public int read () throws IOException {
+			byte [] single = new byte [1];
+			return read (single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override public int read (byte [] b, int off, int len) throws IOException {
+			if ( len == 0 ) { return 0; }
+
+			if ( current == null || position == current.length ) {
+				if ( current == END ) { return -1; }
+				current = take ();
+				position = 0;
+			}
+			if ( current == END ) {
+				if ( failure != null ) { throw new IOException (failure); }
+				return -1;
+			}
+
+			int n = Math.min (len, current.length - position);
+			System.arraycopy (current, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override public int available () {
+			return current == null || current == END ? 0 : current.length - position;
+		}
+
+		@Override public void close () {
+			closed.set (true);
+			current = END;
+			chunks.clear ();
+		}
+	};
+
+	Pipe () {
+		this (64);
+	}
+
+	Pipe (int capacity) {
+		this.chunks = new ArrayBlockingQueue<> (capacity);
+	}
+
+	void fail (Throwable throwable) {
+		if ( ! closed.compareAndSet (false, true) ) { return; }
+		failure = throwable;
+		while ( ! chunks.offer (END) ) { chunks.poll (); }
+	}
+
+	private void put (byte [] chunk) throws IOException {
+		try { chunks.put (chunk); }
+		catch ( InterruptedException e ) {
+			Thread.currentThread ().interrupt ();
+			throw new IOException (e);
+		}
+	}
+
+	private byte [] take () throws IOException {
+		try { return chunks.take (); }
+		catch ( InterruptedException e ) {
+			Thread.currentThread ().interrupt ();
+			throw new IOException (e);
+		}
+	}
+
+}
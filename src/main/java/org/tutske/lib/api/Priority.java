@@ -0,0 +1,8 @@
+package org.tutske.lib.api;
+
+
+public enum Priority {
+
+	LOW, NORMAL, HIGH;
+
+}
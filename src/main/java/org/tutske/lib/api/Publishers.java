@@ -0,0 +1,310 @@
+package org.tutske.lib.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class Publishers {
+
+	public static final int CHUNK_SIZE = 16 * 1024;
+
+	private static final int PREFETCH = 4;
+	private static final ByteBuffer END = ByteBuffer.allocate (0);
+	private static final AtomicInteger THREADS = new AtomicInteger ();
+
+	/* Blocking reads get their own threads so they never starve the common pool. */
+	static final Executor BLOCKING = Executors.newCachedThreadPool (task -> {
+		Thread thread = new Thread (task, "publishers-io-" + THREADS.incrementAndGet ());
+		thread.setDaemon (true);
+		return thread;
+	});
+
+	public static Flow.Publisher<ByteBuffer> fromStream (Callable<InputStream> stream) {
+		return fromStream (stream, BLOCKING, CHUNK_SIZE);
+	}
+
+	public static Flow.Publisher<ByteBuffer> fromStream (Callable<InputStream> stream, Executor executor, int chunkSize) {
+		return new StreamPublisher (stream, executor, chunkSize);
+	}
+
+	public static Flow.Publisher<ByteBuffer> of (ByteBuffer ... buffers) {
+		return subscriber -> subscriber.onSubscribe (new Flow.Subscription () {
+			private int index = 0;
+			private boolean done = false;
+
+			@Override public synchronized void request (long n) {
+				if ( done ) { return; }
+				if ( n <= 0 ) {
+					done = true;
+					subscriber.onError (new IllegalArgumentException ("Requested " + n + " items, should be positive"));
+					return;
+				}
+
+				for ( ; n > 0 && index < buffers.length && ! done; n-- ) { subscriber.onNext (buffers[index++].duplicate ()); }
+				if ( index == buffers.length && ! done ) {
+					done = true;
+					subscriber.onComplete ();
+				}
+			}
+
+			@Override public synchronized void cancel () {
+				done = true;
+			}
+		});
+	}
+
+	public static InputStream toStream (Flow.Publisher<ByteBuffer> publisher) {
+		return toStream (publisher, PREFETCH);
+	}
+
+	public static InputStream toStream (Flow.Publisher<ByteBuffer> publisher, int prefetch) {
+		ChunkStream stream = new ChunkStream (prefetch);
+		publisher.subscribe (stream);
+		return stream;
+	}
+
+	public static CompletableFuture<ByteBuffer> collect (Flow.Publisher<ByteBuffer> publisher) {
+		CompletableFuture<ByteBuffer> result = new CompletableFuture<> ();
+
+		publisher.subscribe (new Flow.Subscriber<ByteBuffer> () {
+			private final List<ByteBuffer> buffers = new ArrayList<> ();
+			private int total = 0;
+
+			@Override public void onSubscribe (Flow.Subscription subscription) {
+				subscription.request (Long.MAX_VALUE);
+			}
+
+			@Override public void onNext (ByteBuffer buffer) {
+				buffers.add (buffer);
+				total += buffer.remaining ();
+			}
+
+			@Override public void onError (Throwable throwable) {
+				result.completeExceptionally (throwable);
+			}
+
+			@Override public void onComplete () {
+				if ( buffers.size () == 1 ) {
+					result.complete (buffers.get (0));
+				} else {
+					ByteBuffer all = ByteBuffer.allocate (total);
+					for ( ByteBuffer buffer : buffers ) { all.put (buffer); }
+					result.complete (all.flip ());
+				}
+			}
+		});
+
+		return result;
+	}
+
+	private static class StreamPublisher implements Flow.Publisher<ByteBuffer> {
+		private final Callable<InputStream> stream;
+		private final Executor executor;
+		private final int chunkSize;
+		private final AtomicBoolean subscribed = new AtomicBoolean (false);
+
+		private StreamPublisher (Callable<InputStream> stream, Executor executor, int chunkSize) {
+			this.stream = stream;
+			this.executor = executor;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override public void subscribe (Flow.Subscriber<? super ByteBuffer> subscriber) {
+			if ( ! subscribed.compareAndSet (false, true) ) {
+				subscriber.onSubscribe (new Flow.Subscription () {
+					@Override public void request (long n) {}
+					@Override public void cancel () {}
+				});
+				subscriber.onError (new IllegalStateException ("The body can only be subscribed to once"));
+				return;
+			}
+			subscriber.onSubscribe (new StreamSubscription (subscriber));
+		}
+
+		private class StreamSubscription implements Flow.Subscription, Recycling {
+			private final Flow.Subscriber<? super ByteBuffer> subscriber;
+			private final BlockingQueue<byte []> free = new ArrayBlockingQueue<> (PREFETCH * 2);
+			private final AtomicLong demand = new AtomicLong ();
+			private final AtomicInteger pending = new AtomicInteger ();
+			private volatile boolean cancelled = false;
+			private volatile Throwable invalid;
+			private InputStream in;
+			private boolean done = false;
+
+			private StreamSubscription (Flow.Subscriber<? super ByteBuffer> subscriber) {
+				this.subscriber = subscriber;
+			}
+
+			@Override public void request (long n) {
+				if ( n <= 0 ) { invalid = new IllegalArgumentException ("Requested " + n + " items, should be positive"); }
+				else { demand.getAndAccumulate (n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add); }
+				schedule ();
+			}
+
+			@Override public void cancel () {
+				cancelled = true;
+				schedule ();
+			}
+
+			@Override public void recycle (ByteBuffer buffer) {
+				if ( buffer.hasArray () && buffer.array ().length == chunkSize ) { free.offer (buffer.array ()); }
+			}
+
+			private void schedule () {
+				if ( pending.getAndIncrement () == 0 ) { executor.execute (this::drain); }
+			}
+
+			private void drain () {
+				int missed = 1;
+				do {
+					if ( ! done ) { emit (); }
+					missed = pending.addAndGet (-missed);
+				} while ( missed != 0 );
+			}
+
+			private void emit () {
+				try {
+					if ( invalid != null ) { throw invalid; }
+					if ( cancelled ) { finish (); return; }
+					if ( in == null ) { in = stream.call (); }
+
+					while ( demand.get () > 0 && ! cancelled ) {
+						byte [] chunk = free.poll ();
+						if ( chunk == null ) { chunk = new byte [chunkSize]; }
+						int read = in.readNBytes (chunk, 0, chunkSize);
+
+						if ( read > 0 ) {
+							demand.decrementAndGet ();
+							subscriber.onNext (ByteBuffer.wrap (chunk, 0, read));
+						}
+						if ( read < chunkSize ) {
+							finish ();
+							subscriber.onComplete ();
+							return;
+						}
+					}
+
+					if ( cancelled ) { finish (); }
+				} catch ( Throwable throwable ) {
+					finish ();
+					subscriber.onError (throwable);
+				}
+			}
+
+			private void finish () {
+				done = true;
+				if ( in == null ) { return; }
+				try { in.close (); }
+				catch ( IOException ignore ) {}
+			}
+		}
+	}
+
+	/**
+	 * Subscriptions that take back buffers once a subscriber is done with them.
+	 */
+	private interface Recycling {
+		void recycle (ByteBuffer buffer);
+	}
+
+	/**
+	 * Blocking view on a publisher for transports that write from a stream.
+	 * Only a few chunks are requested ahead, more are requested as the reader
+	 * consumes them, so a slow reader slows down the publisher.
+	 */
+	private static class ChunkStream extends InputStream implements Flow.Subscriber<ByteBuffer> {
+		private final BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<> ();
+		private final int prefetch;
+		private volatile Flow.Subscription subscription;
+		private volatile Throwable failure;
+		private volatile boolean closed = false;
+		private ByteBuffer current;
+		private int consumed = 0;
+
+		private ChunkStream (int prefetch) {
+			this.prefetch = Math.max (1, prefetch);
+		}
+
+		@Override public void onSubscribe (Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if ( closed ) { subscription.cancel (); }
+			else { subscription.request (prefetch); }
+		}
+
+		@Override public void onNext (ByteBuffer buffer) { queue.add (buffer); }
+		@Override public void onComplete () { queue.add (END); }
+		@Override public void onError (Throwable throwable) {
+			failure = throwable;
+			queue.add (END);
+		}
+
+		@Override public int read () throws IOException {
+			byte [] single = new byte [1];
+			return read (single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override public int read (byte [] b, int off, int len) throws IOException {
+			if ( len == 0 ) { return 0; }
+
+			while ( current == null || ! current.hasRemaining () ) {
+				if ( current == END ) {
+					if ( failure != null ) { throw new IOException (failure); }
+					return -1;
+				}
+				if ( current != null ) {
+					recycle (current);
+					replenish ();
+				}
+				current = take ();
+			}
+
+			int n = Math.min (len, current.remaining ());
+			current.get (b, off, n);
+			return n;
+		}
+
+		@Override public int available () {
+			return current == null ? 0 : current.remaining ();
+		}
+
+		@Override public void close () {
+			closed = true;
+			current = END;
+			queue.clear ();
+			if ( subscription != null ) { subscription.cancel (); }
+		}
+
+		private void recycle (ByteBuffer buffer) {
+			if ( subscription instanceof Recycling ) { ((Recycling) subscription).recycle (buffer); }
+		}
+
+		private void replenish () {
+			if ( ++consumed < Math.max (1, prefetch / 2) ) { return; }
+			subscription.request (consumed);
+			consumed = 0;
+		}
+
+		private ByteBuffer take () throws IOException {
+			try { return queue.take (); }
+			catch ( InterruptedException e ) {
+				Thread.currentThread ().interrupt ();
+				throw new IOException (e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+package org.tutske.lib.api;
+
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.utils.Bag;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * View on a raw, still encoded query string. The offsets of the parameters are
+ * found on the first lookup, and only the values that are asked for are
+ * decoded. Keys without escapes are compared against the raw text directly.
+ */
+public class QueryString {
+
+	public static final QueryString EMPTY = new QueryString ("");
+
+	private static final int FIELDS = 4;
+	private static final int [] NONE = {};
+
+	static final InputException MALFORMED_NUMBER = new InputException ("Parameter is not a valid number.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	static final InputException MALFORMED_BOOLEAN = new InputException ("Parameter is not a valid boolean.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	public static QueryString encode (Bag<String, String> params) {
+		StringBuilder builder = new StringBuilder ();
+		for ( String key : params.keySet () ) {
+			for ( String value : params.getAll (key) ) {
+				if ( builder.length () > 0 ) { builder.append ('&'); }
+				builder.append (URLEncoder.encode (key, StandardCharsets.UTF_8));
+				if ( value != null ) { builder.append ('=').append (URLEncoder.encode (value, StandardCharsets.UTF_8)); }
+			}
+		}
+		return new QueryString (builder.toString ());
+	}
+
+	static long parseLong (CharSequence chars, int start, int end) {
+		boolean negative = start < end && chars.charAt (start) == '-';
+		int i = negative ? start + 1 : start;
+		if ( i == end || end - i > 19 ) { throw MALFORMED_NUMBER; }
+
+		long result = 0;
+		for ( ; i < end; i++ ) {
+			int digit = chars.charAt (i) - '0';
+			if ( digit < 0 || digit > 9 ) { throw MALFORMED_NUMBER; }
+			if ( result < (Long.MIN_VALUE + digit) / 10 ) { throw MALFORMED_NUMBER; }
+			result = result * 10 - digit;
+		}
+
+		if ( ! negative && result == Long.MIN_VALUE ) { throw MALFORMED_NUMBER; }
+		return negative ? result : -result;
+	}
+
+	static int toInt (long value) {
+		if ( value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ) { throw MALFORMED_NUMBER; }
+		return (int) value;
+	}
+
+	static boolean parseBoolean (CharSequence chars, int start, int end) {
+		int length = end - start;
+		if ( length == 1 ) {
+			char c = chars.charAt (start);
+			if ( c == '1' ) { return true; }
+			if ( c == '0' ) { return false; }
+		}
+		if ( length == 4 && regionMatches (chars, start, "true") ) { return true; }
+		if ( length == 5 && regionMatches (chars, start, "false") ) { return false; }
+		throw MALFORMED_BOOLEAN;
+	}
+
+	private static boolean regionMatches (CharSequence chars, int start, String expected) {
+		for ( int i = 0; i < expected.length (); i++ ) {
+			if ( Character.toLowerCase (chars.charAt (start + i)) != expected.charAt (i) ) { return false; }
+		}
+		return true;
+	}
+
+	private final String raw;
+	private volatile int [] offsets;
+
+	public QueryString (String raw) {
+		this.raw = raw == null ? "" : raw;
+		this.offsets = this.raw.isEmpty () ? NONE : null;
+	}
+
+	public String raw () {
+		return raw;
+	}
+
+	public boolean isEmpty () {
+		return index ().length == 0;
+	}
+
+	public boolean containsKey (String key) {
+		return find (key, 0) >= 0;
+	}
+
+	public String get (String key) {
+		int segment = find (key, 0);
+		return segment < 0 ? null : value (segment);
+	}
+
+	public List<String> getAll (String key) {
+		int segment = find (key, 0);
+		if ( segment < 0 ) { return Collections.emptyList (); }
+
+		List<String> values = new ArrayList<> ();
+		for ( ; segment >= 0; segment = find (key, segment + FIELDS) ) { values.add (value (segment)); }
+		return values;
+	}
+
+	public long getLong (String key, long fallback) {
+		int segment = find (key, 0);
+		return segment < 0 || ! hasValue (segment) ? fallback : parseLong (segment);
+	}
+
+	public int getInt (String key, int fallback) {
+		int segment = find (key, 0);
+		return segment < 0 || ! hasValue (segment) ? fallback : toInt (parseLong (segment));
+	}
+
+	public boolean getBoolean (String key, boolean fallback) {
+		int segment = find (key, 0);
+		if ( segment < 0 ) { return fallback; }
+		if ( ! hasValue (segment) ) { return true; }
+
+		int [] offsets = index ();
+		if ( (offsets[segment + 3] & 2) == 0 ) { return parseBoolean (raw, offsets[segment + 1] + 1, offsets[segment + 2]); }
+
+		String value = value (segment);
+		return parseBoolean (value, 0, value.length ());
+	}
+
+	public Bag<String, String> decode () {
+		return decodeInto (new Bag<> ());
+	}
+
+	public Bag<String, String> decodeInto (Bag<String, String> bag) {
+		int [] offsets = index ();
+		for ( int i = 0; i < offsets.length; i += FIELDS ) {
+			String key = Request.decodeQueryString (raw.substring (offsets[i], offsets[i + 1]));
+			String value = value (i);
+			if ( value != null ) { bag.add (key, value); }
+			else { bag.add (key); }
+		}
+		return bag;
+	}
+
+	@Override public String toString () {
+		return raw;
+	}
+
+	int find (String key, int from) {
+		int [] offsets = index ();
+		for ( int i = from; i < offsets.length; i += FIELDS ) {
+			if ( matches (offsets, i, key) ) { return i; }
+		}
+		return -1;
+	}
+
+	private boolean hasValue (int segment) {
+		int [] offsets = index ();
+		return offsets[segment + 1] + 1 < offsets[segment + 2];
+	}
+
+	private long parseLong (int segment) {
+		int [] offsets = index ();
+		if ( (offsets[segment + 3] & 2) == 0 ) { return parseLong (raw, offsets[segment + 1] + 1, offsets[segment + 2]); }
+
+		String value = value (segment);
+		return parseLong (value, 0, value.length ());
+	}
+
+	String value (int segment) {
+		int [] offsets = index ();
+		int start = offsets[segment + 1] + 1;
+		int end = offsets[segment + 2];
+		if ( start >= end ) { return null; }
+
+		String value = raw.substring (start, end);
+		return (offsets[segment + 3] & 2) == 0 ? value : Request.decodeQueryString (value);
+	}
+
+	private boolean matches (int [] offsets, int segment, String key) {
+		int start = offsets[segment];
+		int length = offsets[segment + 1] - start;
+
+		if ( (offsets[segment + 3] & 1) != 0 ) {
+			return key.equals (Request.decodeQueryString (raw.substring (start, start + length)));
+		}
+		return length == key.length () && raw.regionMatches (start, key, 0, length);
+	}
+
+	private int [] index () {
+		int [] offsets = this.offsets;
+		if ( offsets != null ) { return offsets; }
+
+		offsets = new int [FIELDS * 4];
+		int size = 0;
+		int length = raw.length ();
+
+		for ( int start = 0; start <= length; ) {
+			int end = raw.indexOf ('&', start);
+			if ( end < 0 ) { end = length; }
+
+			if ( end > start ) {
+				int eq = raw.indexOf ('=', start);
+				if ( eq < 0 || eq > end ) { eq = end; }
+
+				if ( size == offsets.length ) { offsets = Arrays.copyOf (offsets, size * 2); }
+				offsets[size] = start;
+				offsets[size + 1] = eq;
+				offsets[size + 2] = end;
+				offsets[size + 3] = (escaped (start, eq) ? 1 : 0) | (escaped (eq + 1, end) ? 2 : 0);
+				size += FIELDS;
+			}
+
+			start = end + 1;
+		}
+
+		this.offsets = offsets = Arrays.copyOf (offsets, size);
+		return offsets;
+	}
+
+	private boolean escaped (int start, int end) {
+		for ( int i = start; i < end; i++ ) {
+			char c = raw.charAt (i);
+			if ( c == '%' || c == '+' ) { return true; }
+		}
+		return false;
+	}
+
+}
@@ -1,40 +1,33 @@
 package org.tutske.lib.api;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.tutske.lib.json.Json;
 import org.tutske.lib.json.JsonException;
 import org.tutske.lib.utils.Bag;
-import org.tutske.lib.utils.Exceptions;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
 
 
 public interface Request {
 
 	public static Bag<String, String> decodeInto (Bag<String, String> bag, String querystring) {
 		if ( querystring == null || querystring.isEmpty () ) { return bag; }
-
-		for ( String part : querystring.split ("&") ) {
-			String [] split = part.split ("=", 2);
-			String key = decodeQueryString (split[0]);
-
-			if ( split.length == 2 && ! split[1].isEmpty () ) {
-				String value = decodeQueryString (split[1]);
-				bag.add (key, value);
-			} else {
-				bag.add (key);
-			}
-		}
-		return bag;
+		return new QueryString (querystring).decodeInto (bag);
 	}
 
 	public static Bag<String, String> decode (String querystring) {
@@ -42,8 +35,7 @@ public interface Request {
 	}
 
 	public static String decodeQueryString (String encoded) {
-		try { return URLDecoder.decode (encoded, StandardCharsets.UTF_8); }
-		catch ( Exception e ) { throw Exceptions.wrap (e); }
+		return FormDecoder.unescape (encoded);
 	}
 
 
@@ -55,6 +47,41 @@ public interface Request {
 	public Bag<String, String> headers ();
 	public Bag<String, Object> context ();
 
+	/* The query string as received; changes made through queryParams () do not show up here. */
+	default public QueryString queryString () {
+		return QueryString.encode (queryParams ());
+	}
+
+	default public int queryInt (String key, int fallback) {
+		String value = queryParams ().get (key);
+		return value == null ? fallback : QueryString.toInt (QueryString.parseLong (value, 0, value.length ()));
+	}
+
+	default public long queryLong (String key, long fallback) {
+		String value = queryParams ().get (key);
+		return value == null ? fallback : QueryString.parseLong (value, 0, value.length ());
+	}
+
+	default public boolean queryBoolean (String key, boolean fallback) {
+		if ( ! queryParams ().containsKey (key) ) { return fallback; }
+		String value = queryParams ().get (key);
+		return value == null || QueryString.parseBoolean (value, 0, value.length ());
+	}
+
+	default public int pathInt (String key, int fallback) {
+		String value = pathParams ().get (key);
+		return value == null ? fallback : QueryString.toInt (QueryString.parseLong (value, 0, value.length ()));
+	}
+
+	default public long pathLong (String key, long fallback) {
+		String value = pathParams ().get (key);
+		return value == null ? fallback : QueryString.parseLong (value, 0, value.length ());
+	}
+
+	default public long arrival () {
+		return System.nanoTime ();
+	}
+
 	public void setHeader (String header, String value);
 	public void setStatus (int status);
 
@@ -74,17 +101,69 @@ public interface Request {
 		}
 	}
 
+	default public ObjectMapper mapper () {
+		return JsonStreams.defaultMapper ();
+	}
+
 	public <T> T json (Class<T> clazz);
 	default public JsonNode json () {
 		return json (JsonNode.class);
 	}
 
+	default public JsonParser jsonParser () throws IOException {
+		return JsonStreams.parser (inputstream ());
+	}
+
+	default public <T> Stream<T> jsonStream (Class<T> clazz) throws IOException {
+		return JsonStreams.elements (JsonStreams.parser (rawInputstream ()), clazz);
+	}
+
+	default public CompletableFuture<ByteBuffer> bodyAsync () {
+		return Publishers.collect (bodyPublisher ());
+	}
+
+	default public Flow.Publisher<ByteBuffer> bodyPublisher () {
+		return Publishers.fromStream (this::inputstream);
+	}
+
+	default public Bag<String, String> form () throws IOException {
+		return FormDecoder.decode (inputstream ());
+	}
+
+	default public Bag<String, String> form (FormDecoder.Config config) throws IOException {
+		return FormDecoder.decode (inputstream (), config);
+	}
+
+	default public Multipart multipart () throws IOException {
+		return Multipart.parse (this);
+	}
+
+	default public Multipart multipart (Multipart.Config config) throws IOException {
+		return Multipart.parse (this, config);
+	}
+
 	default public InputStream inputstream () throws IOException {
 		return new ByteArrayInputStream (bytes ());
 	}
 
+	/* The body as it arrives, without keeping a copy; unless it was buffered before, it can only be read once. */
+	default public InputStream rawInputstream () throws IOException {
+		return inputstream ();
+	}
+
 	public OutputStream outputstream () throws IOException;
 
+	default public EventSink replyEvents () throws IOException {
+		return replyEvents (new EventSink.Config ());
+	}
+
+	default public EventSink replyEvents (EventSink.Config config) throws IOException {
+		setStatus (200);
+		setHeader ("Content-Type", "text/event-stream");
+		setHeader ("Cache-Control", "no-cache");
+		return new EventSink (outputstream (), config);
+	}
+
 	default public <T> T extractWrapped (Class<T> clazz) {
 		throw new JsonException ("Class not supported for extraction",
 			Json.objectNode ("class", clazz.getCanonicalName ())
@@ -112,17 +191,53 @@ public interface Request {
 	default CompletableFuture<Void> reply (InputStream in) {
 		return reply (200, Collections.emptyMap (), in);
 	}
+	default CompletableFuture<Void> reply (int status, Map<String, ?> headers, Flow.Publisher<ByteBuffer> publisher) {
+		return reply (status, headers, Publishers.toStream (publisher));
+	}
+	default CompletableFuture<Void> reply (int status, Flow.Publisher<ByteBuffer> publisher) {
+		return reply (status, Collections.emptyMap (), publisher);
+	}
+	default CompletableFuture<Void> reply (Map<String, ?> headers, Flow.Publisher<ByteBuffer> publisher) {
+		return reply (200, headers, publisher);
+	}
+	default CompletableFuture<Void> reply (Flow.Publisher<ByteBuffer> publisher) {
+		return reply (200, Collections.emptyMap (), publisher);
+	}
 	default CompletableFuture<Void> reply (int status, Map<String, ?> headers, byte [] payload) {
 		return reply (status, headers, new ByteArrayInputStream (payload));
 	}
 	default CompletableFuture<Void> reply (int status, byte [] payload) {
-		return reply (status, Collections.emptyMap (), new ByteArrayInputStream (payload));
+		return reply (status, Collections.emptyMap (), payload);
 	}
 	default CompletableFuture<Void> reply (Map<String, ?> headers, byte [] payload) {
-		return reply (200, headers, new ByteArrayInputStream (payload));
+		return reply (200, headers, payload);
 	}
 	default CompletableFuture<Void> reply (byte [] payload) {
-		return reply (200, Collections.emptyMap (), new ByteArrayInputStream (payload));
+		return reply (200, Collections.emptyMap (), payload);
+	}
+	default CompletableFuture<Void> replyLines (Iterator<?> items) {
+		return reply (200, Collections.singletonMap ("Content-Type", "application/x-ndjson"), JsonStreams.lines (mapper (), items));
+	}
+	default CompletableFuture<Void> replyLines (Stream<?> items) {
+		return replyLines (JsonStreams.iterator (items));
+	}
+	default CompletableFuture<Void> replyLines (Flow.Publisher<?> items) {
+		return replyLines (JsonStreams.iterator (items));
+	}
+	default CompletableFuture<Void> replyArray (Iterator<?> items) {
+		return reply (200, Collections.singletonMap ("Content-Type", "application/json"), JsonStreams.array (mapper (), items));
+	}
+	default CompletableFuture<Void> replyArray (Stream<?> items) {
+		return replyArray (JsonStreams.iterator (items));
+	}
+	default CompletableFuture<Void> replyArray (Flow.Publisher<?> items) {
+		return replyArray (JsonStreams.iterator (items));
+	}
+	default CompletableFuture<Void> reply (Path path) {
+		return FileResponse.reply (this, path);
+	}
+	default CompletableFuture<Void> reply (Path path, String contentType) {
+		return FileResponse.reply (this, path, contentType);
 	}
 	default CompletableFuture<Void> reply (int status) {
 		return reply (status, Collections.emptyMap (), new byte [] {});
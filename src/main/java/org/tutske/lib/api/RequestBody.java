@@ -0,0 +1,111 @@
+package org.tutske.lib.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+import org.tutske.lib.api.filters.Headers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+
+/**
+ * A request body read once into memory. Bodies of known length are read
+ * straight into an array of that size, others into an array that grows until
+ * the stream is done; either way the array is used as it is afterwards.
+ */
+public class RequestBody {
+
+	public static final int DEFAULT_LIMIT = 16 * 1024 * 1024;
+	public static final RequestBody EMPTY = new RequestBody (new byte [] {}, 0);
+
+	private static final int INITIAL_SIZE = 8 * 1024;
+
+	static long contentLength (Request request) {
+		String length = Headers.get (request.headers (), "Content-Length");
+		if ( length == null ) { return -1; }
+
+		try { return Long.parseLong (length.trim ()); }
+		catch ( NumberFormatException e ) { throw new InputException ("Invalid Content-Length header."); }
+	}
+
+	public static RequestBody read (InputStream in, long expected, int limit) throws IOException {
+		if ( in == null ) { return EMPTY; }
+		if ( expected > limit ) { throw new PayloadTooLargeException (); }
+
+		try ( InputStream stream = in ) {
+			if ( expected >= 0 ) { return readKnown (stream, (int) expected); }
+			return readChunked (stream, limit);
+		}
+	}
+
+	private static RequestBody readKnown (InputStream in, int expected) throws IOException {
+		byte [] buffer = new byte [expected];
+		return new RequestBody (buffer, in.readNBytes (buffer, 0, expected));
+	}
+
+	private static RequestBody readChunked (InputStream in, int limit) throws IOException {
+		int max = limit == Integer.MAX_VALUE ? limit : limit + 1;
+		byte [] buffer = new byte [Math.min (INITIAL_SIZE, max)];
+		int total = 0;
+
+		while ( true ) {
+			if ( total == buffer.length ) {
+				if ( total == max ) { break; }
+				buffer = Arrays.copyOf (buffer, (int) Math.min (max, buffer.length * 2L));
+			}
+
+			int read = in.read (buffer, total, buffer.length - total);
+			if ( read < 0 ) { break; }
+			total += read;
+		}
+
+		if ( total > limit ) { throw new PayloadTooLargeException (); }
+		return new RequestBody (buffer, total);
+	}
+
+	private final byte [] buffer;
+	private final int length;
+	private volatile byte [] exact;
+
+	private RequestBody (byte [] buffer, int length) {
+		this.buffer = buffer;
+		this.length = length;
+		this.exact = buffer.length == length ? buffer : null;
+	}
+
+	public int length () {
+		return length;
+	}
+
+	public byte [] bytes () {
+		if ( exact == null ) { exact = Arrays.copyOf (buffer, length); }
+		return exact;
+	}
+
+	public String string (Charset charset) {
+		return new String (buffer, 0, length, charset);
+	}
+
+	public InputStream inputstream () {
+		return new ByteArrayInputStream (buffer, 0, length);
+	}
+
+	public JsonNode json (ObjectMapper mapper) throws IOException {
+		return mapper.readTree (inputstream ());
+	}
+
+	public <T> T json (ObjectMapper mapper, Class<T> clazz) throws IOException {
+		return mapper.readValue (buffer, 0, length, clazz);
+	}
+
+	public JsonParser parser (ObjectMapper mapper) throws IOException {
+		return mapper.getFactory ().createParser (buffer, 0, length);
+	}
+
+}
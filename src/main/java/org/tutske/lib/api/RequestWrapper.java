@@ -0,0 +1,82 @@
+package org.tutske.lib.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.tutske.lib.utils.Bag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+
+public class RequestWrapper implements Request {
+
+	protected final Request request;
+
+	public RequestWrapper (Request request) {
+		this.request = request;
+	}
+
+	public Request unwrap () {
+		return request;
+	}
+
+	@Override public Method method () { return request.method (); }
+	@Override public String uri () { return request.uri (); }
+
+	@Override public Bag<String, String> pathParams () { return request.pathParams (); }
+	@Override public Bag<String, String> queryParams () { return request.queryParams (); }
+	@Override public Bag<String, String> headers () { return request.headers (); }
+	@Override public Bag<String, Object> context () { return request.context (); }
+	@Override public long arrival () { return request.arrival (); }
+
+	@Override public QueryString queryString () { return request.queryString (); }
+	@Override public int queryInt (String key, int fallback) { return request.queryInt (key, fallback); }
+	@Override public long queryLong (String key, long fallback) { return request.queryLong (key, fallback); }
+	@Override public boolean queryBoolean (String key, boolean fallback) { return request.queryBoolean (key, fallback); }
+	@Override public int pathInt (String key, int fallback) { return request.pathInt (key, fallback); }
+	@Override public long pathLong (String key, long fallback) { return request.pathLong (key, fallback); }
+
+	@Override public void setHeader (String header, String value) { request.setHeader (header, value); }
+	@Override public void setStatus (int status) { request.setStatus (status); }
+
+	@Override public String body () { return request.body (); }
+	@Override public String body (Charset charset) { return request.body (charset); }
+	@Override public byte [] bytes () { return request.bytes (); }
+	@Override public ObjectMapper mapper () { return request.mapper (); }
+	@Override public <T> T json (Class<T> clazz) { return request.json (clazz); }
+	@Override public JsonNode json () { return request.json (); }
+	@Override public JsonParser jsonParser () throws IOException { return request.jsonParser (); }
+	@Override public <T> Stream<T> jsonStream (Class<T> clazz) throws IOException { return request.jsonStream (clazz); }
+	@Override public Bag<String, String> form () throws IOException { return request.form (); }
+	@Override public Bag<String, String> form (FormDecoder.Config config) throws IOException { return request.form (config); }
+	@Override public Multipart multipart () throws IOException { return request.multipart (); }
+	@Override public Multipart multipart (Multipart.Config config) throws IOException { return request.multipart (config); }
+	@Override public CompletableFuture<ByteBuffer> bodyAsync () { return request.bodyAsync (); }
+	@Override public Flow.Publisher<ByteBuffer> bodyPublisher () { return request.bodyPublisher (); }
+	@Override public InputStream inputstream () throws IOException { return request.inputstream (); }
+	@Override public InputStream rawInputstream () throws IOException { return request.rawInputstream (); }
+	@Override public OutputStream outputstream () throws IOException { return request.outputstream (); }
+
+	@Override public <T> T extractWrapped (Class<T> clazz) { return request.extractWrapped (clazz); }
+
+	@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, Object payload) {
+		return request.reply (status, headers, payload);
+	}
+
+	@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, InputStream in) {
+		return request.reply (status, headers, in);
+	}
+
+	@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, byte [] payload) {
+		return request.reply (status, headers, payload);
+	}
+
+}
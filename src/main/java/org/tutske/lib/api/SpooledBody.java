@@ -0,0 +1,248 @@
+package org.tutske.lib.api;
+
+import org.tutske.lib.utils.Exceptions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+
+/**
+ * A body held by a {@link BodySpool}, either in pooled buffers or in a spill
+ * file. Streams and channels over the body keep its buffers or file alive;
+ * they go back to the spool once the body is closed and every stream is
+ * either closed or read to the end.
+ */
+public class SpooledBody implements Closeable {
+
+	private final BodySpool spool;
+	private final ByteBuffer [] buffers;
+	private final FileChannel file;
+	private final long length;
+	private final long reserved;
+	private boolean closed = false;
+	private int refs = 1;
+
+	SpooledBody (BodySpool spool, ByteBuffer [] buffers, long length, long reserved) {
+		this (spool, buffers, null, length, reserved);
+	}
+
+	SpooledBody (BodySpool spool, FileChannel file, long length, long reserved) {
+		this (spool, null, file, length, reserved);
+	}
+
+	private SpooledBody (BodySpool spool, ByteBuffer [] buffers, FileChannel file, long length, long reserved) {
+		this.spool = spool;
+		this.buffers = buffers;
+		this.file = file;
+		this.length = length;
+		this.reserved = reserved;
+	}
+
+	public boolean spilled () {
+		return file != null;
+	}
+
+	public long length () {
+		return length;
+	}
+
+	public synchronized byte [] bytes () {
+		if ( closed ) { throw new IllegalStateException ("Request body was already released"); }
+
+		byte [] bytes = new byte [(int) length];
+		if ( file != null ) {
+			try { readFully (ByteBuffer.wrap (bytes)); }
+			catch ( IOException e ) { throw Exceptions.wrap (e); }
+			return bytes;
+		}
+
+		int offset = 0;
+		for ( ByteBuffer buffer : buffers ) {
+			ByteBuffer view = buffer.duplicate ();
+			int size = view.remaining ();
+			view.get (bytes, offset, size);
+			offset += size;
+		}
+		return bytes;
+	}
+
+	public ReadableByteChannel channel () {
+		return view ();
+	}
+
+	public InputStream inputstream () {
+		return view ();
+	}
+
+	@Override
+	public synchronized void close () {
+		if ( closed ) { return; }
+		closed = true;
+		unref ();
+	}
+
+	private synchronized View view () {
+		if ( closed ) { throw new IllegalStateException ("Request body was already released"); }
+		refs++;
+		return file != null ? new FileView (this, file, length) : new BufferView (this, buffers);
+	}
+
+	private synchronized void unref () {
+		if ( --refs > 0 ) { return; }
+
+		/* the spill file stays charged until it is closed and deleted */
+		try {
+			if ( file != null ) { file.close (); }
+			else { for ( ByteBuffer buffer : buffers ) { spool.recycle (buffer); } }
+		} catch ( IOException e ) {
+			throw Exceptions.wrap (e);
+		} finally {
+			spool.release (reserved);
+		}
+	}
+
+	private void readFully (ByteBuffer target) throws IOException {
+		long position = 0;
+		while ( target.hasRemaining () ) {
+			int read = file.read (target, position);
+			if ( read < 0 ) { throw new IOException ("Spill file is shorter than the body"); }
+			position += read;
+		}
+	}
+
+	private static abstract class View extends InputStream implements ReadableByteChannel {
+		private final SpooledBody body;
+		protected boolean open = true;
+		protected boolean released = false;
+
+		private View (SpooledBody body) {
+			this.body = body;
+		}
+
+		@Override public boolean isOpen () {
+			return open;
+		}
+
+		@Override public void close () {
+			open = false;
+			release ();
+		}
+
+		protected synchronized void release () {
+			if ( released ) { return; }
+			released = true;
+			body.unref ();
+		}
+	}
+
+	private static class BufferView extends View {
+		private final ByteBuffer [] buffers;
+		private int current = 0;
+
+		private BufferView (SpooledBody body, ByteBuffer [] buffers) {
+			super (body);
+			this.buffers = new ByteBuffer [buffers.length];
+			for ( int i = 0; i < buffers.length; i++ ) { this.buffers[i] = buffers[i].duplicate (); }
+		}
+
+		@Override public int read () throws IOException {
+			ByteBuffer buffer = next ();
+			return buffer == null ? -1 : buffer.get () & 0xFF;
+		}
+
+		@Override public int read (byte [] bytes, int offset, int length) throws IOException {
+			if ( length == 0 ) { return 0; }
+			ByteBuffer buffer = next ();
+			if ( buffer == null ) { return -1; }
+
+			int size = Math.min (length, buffer.remaining ());
+			buffer.get (bytes, offset, size);
+			return size;
+		}
+
+		@Override public int read (ByteBuffer target) throws IOException {
+			ByteBuffer buffer = next ();
+			if ( buffer == null ) { return -1; }
+
+			int size = Math.min (target.remaining (), buffer.remaining ());
+			ByteBuffer slice = buffer.duplicate ();
+			slice.limit (slice.position () + size);
+			target.put (slice);
+			buffer.position (buffer.position () + size);
+			return size;
+		}
+
+		@Override public synchronized int available () {
+			if ( released ) { return 0; }
+			long available = 0;
+			for ( int i = current; i < buffers.length; i++ ) { available += buffers[i].remaining (); }
+			return (int) Math.min (Integer.MAX_VALUE, available);
+		}
+
+		private ByteBuffer next () throws IOException {
+			if ( ! open ) { throw new ClosedChannelException (); }
+			if ( released ) { return null; }
+
+			while ( current < buffers.length && ! buffers[current].hasRemaining () ) { current++; }
+			if ( current < buffers.length ) { return buffers[current]; }
+
+			/* nothing left to read, so the buffers are no longer needed */
+			release ();
+			return null;
+		}
+	}
+
+	private static class FileView extends View {
+		private final FileChannel file;
+		private final long length;
+		private long position = 0;
+
+		private FileView (SpooledBody body, FileChannel file, long length) {
+			super (body);
+			this.file = file;
+			this.length = length;
+		}
+
+		@Override public int read () throws IOException {
+			byte [] one = new byte [1];
+			return read (one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+		}
+
+		@Override public int read (byte [] bytes, int offset, int length) throws IOException {
+			if ( length == 0 ) { return 0; }
+			return read (ByteBuffer.wrap (bytes, offset, length));
+		}
+
+		@Override public int read (ByteBuffer target) throws IOException {
+			if ( ! open ) { throw new ClosedChannelException (); }
+			if ( released ) { return -1; }
+
+			/* nothing left to read, so the file is no longer needed */
+			if ( position >= length ) {
+				release ();
+				return -1;
+			}
+			if ( ! target.hasRemaining () ) { return 0; }
+
+			ByteBuffer window = target.slice ();
+			window.limit ((int) Math.min (window.limit (), length - position));
+			int read = file.read (window, position);
+			if ( read < 0 ) { throw new IOException ("Spill file is shorter than the body"); }
+
+			target.position (target.position () + read);
+			position += read;
+			return read;
+		}
+
+		@Override public synchronized int available () {
+			if ( released ) { return 0; }
+			return (int) Math.min (Integer.MAX_VALUE, length - position);
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package org.tutske.lib.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.tutske.lib.utils.Bag;
+import org.tutske.lib.utils.Exceptions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+
+public class SpooledRequest extends RequestWrapper implements Closeable {
+
+	private final BodySpool spool;
+	private final ObjectMapper mapper;
+	private SpooledBody body;
+	private boolean closed = false;
+
+	public SpooledRequest (Request request, BodySpool spool) {
+		this (request, spool, JsonStreams.defaultMapper ());
+	}
+
+	public SpooledRequest (Request request, BodySpool spool, ObjectMapper mapper) {
+		super (request);
+		this.spool = spool;
+		this.mapper = mapper;
+	}
+
+	public synchronized SpooledBody spooled () throws IOException {
+		if ( closed ) { throw new IllegalStateException ("Request body was already released"); }
+		if ( body == null ) { body = spool.read (request.inputstream (), RequestBody.contentLength (request)); }
+		return body;
+	}
+
+	public ReadableByteChannel channel () throws IOException {
+		return spooled ().channel ();
+	}
+
+	@Override public String body () { return body (StandardCharsets.UTF_8); }
+
+	@Override public String body (Charset charset) {
+		return new String (bytes (), charset);
+	}
+
+	@Override public byte [] bytes () {
+		try { return spooled ().bytes (); }
+		catch ( IOException e ) { throw Exceptions.wrap (e); }
+	}
+
+	@Override public <T> T json (Class<T> clazz) {
+		try { return mapper.readValue (inputstream (), clazz); }
+		catch ( IOException e ) { throw Exceptions.wrap (e); }
+	}
+
+	@Override public JsonNode json () {
+		try { return mapper.readTree (inputstream ()); }
+		catch ( IOException e ) { throw Exceptions.wrap (e); }
+	}
+
+	@Override public JsonParser jsonParser () throws IOException {
+		return JsonStreams.parser (mapper, inputstream ());
+	}
+
+	@Override public <T> Stream<T> jsonStream (Class<T> clazz) throws IOException {
+		return JsonStreams.elements (jsonParser (), clazz);
+	}
+
+	@Override public Bag<String, String> form () throws IOException {
+		return FormDecoder.decode (inputstream ());
+	}
+
+	@Override public Bag<String, String> form (FormDecoder.Config config) throws IOException {
+		return FormDecoder.decode (inputstream (), config);
+	}
+
+	@Override public Multipart multipart () throws IOException {
+		return Multipart.parse (this);
+	}
+
+	@Override public Multipart multipart (Multipart.Config config) throws IOException {
+		return Multipart.parse (this, config);
+	}
+
+	@Override public CompletableFuture<ByteBuffer> bodyAsync () {
+		return CompletableFuture.supplyAsync (() -> ByteBuffer.wrap (bytes ()), Publishers.BLOCKING);
+	}
+
+	@Override public Flow.Publisher<ByteBuffer> bodyPublisher () {
+		return Publishers.fromStream (this::inputstream);
+	}
+
+	@Override public InputStream inputstream () throws IOException {
+		return spooled ().inputstream ();
+	}
+
+	@Override public InputStream rawInputstream () throws IOException {
+		return inputstream ();
+	}
+
+	@Override public synchronized void close () {
+		closed = true;
+		if ( body != null ) { body.close (); }
+	}
+
+}
@@ -0,0 +1,381 @@
+package org.tutske.lib.api;
+
+import org.tutske.lib.api.exceptions.NotFoundException;
+import org.tutske.lib.api.filters.Compression;
+import org.tutske.lib.api.filters.Conditional;
+import org.tutske.lib.api.filters.Headers;
+import org.tutske.lib.utils.Functions.RiskyFn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+
+/**
+ * Serves the files below a directory. Small files are mapped into memory once
+ * and kept in a bounded cache together with their strong ETag and, when a
+ * {@code .gz} file sits next to them, their precompressed variant. A watch
+ * on the directory drops files from the cache as soon as they change; larger
+ * files are served straight from disk with range support.
+ */
+public class StaticAssets implements Closeable {
+
+	public static class Config {
+		protected String param = "path";
+		protected String index = "index.html";
+		protected int maxEntries = 1024;
+		protected long maxBytes = 64 * 1024 * 1024;
+		protected long maxFileSize = 4 * 1024 * 1024;
+		protected boolean watch = true;
+		protected Pattern fingerprinted = Pattern.compile (".*[.-][0-9a-fA-F]{8,}\\.[^/]+");
+		protected String immutable = "public, max-age=31536000, immutable";
+		protected String revalidate = "no-cache";
+		protected Map<String, String> types = new HashMap<> (DEFAULT_TYPES);
+
+		public Config () {}
+	}
+
+	private static final Logger logger = LoggerFactory.getLogger (StaticAssets.class);
+	private static final Map<String, String> DEFAULT_TYPES = new HashMap<> ();
+
+	static {
+		DEFAULT_TYPES.put ("html", "text/html; charset=utf-8");
+		DEFAULT_TYPES.put ("css", "text/css; charset=utf-8");
+		DEFAULT_TYPES.put ("js", "application/javascript; charset=utf-8");
+		DEFAULT_TYPES.put ("mjs", "application/javascript; charset=utf-8");
+		DEFAULT_TYPES.put ("json", "application/json");
+		DEFAULT_TYPES.put ("map", "application/json");
+		DEFAULT_TYPES.put ("txt", "text/plain; charset=utf-8");
+		DEFAULT_TYPES.put ("svg", "image/svg+xml");
+		DEFAULT_TYPES.put ("png", "image/png");
+		DEFAULT_TYPES.put ("jpg", "image/jpeg");
+		DEFAULT_TYPES.put ("jpeg", "image/jpeg");
+		DEFAULT_TYPES.put ("gif", "image/gif");
+		DEFAULT_TYPES.put ("webp", "image/webp");
+		DEFAULT_TYPES.put ("ico", "image/x-icon");
+		DEFAULT_TYPES.put ("woff", "font/woff");
+		DEFAULT_TYPES.put ("woff2", "font/woff2");
+		DEFAULT_TYPES.put ("wasm", "application/wasm");
+	}
+
+	/* Nothing could close a watcher started here, so these check the files on every request instead. */
+	public static <REQ extends Request> RiskyFn<REQ, CompletableFuture<Void>> route (Path root) throws IOException {
+		return new StaticAssets (root, new Config (), false).route ();
+	}
+
+	public static <REQ extends Request> RiskyFn<REQ, CompletableFuture<Void>> route (Path root, Config config) throws IOException {
+		return new StaticAssets (root, config, false).route ();
+	}
+
+	private final Path root;
+	private final Config config;
+	private final LinkedHashMap<String, Asset> cache = new LinkedHashMap<> (16, 0.75f, true);
+	private final WatchService watcher;
+	private long cached = 0;
+	private long generation = 0;
+
+	public StaticAssets (Path root, Config config) throws IOException {
+		this (root, config, config.watch);
+	}
+
+	private StaticAssets (Path root, Config config, boolean watch) throws IOException {
+		this.root = root.toAbsolutePath ().normalize ();
+		this.config = config;
+		this.watcher = watch ? watch () : null;
+	}
+
+	public <REQ extends Request> RiskyFn<REQ, CompletableFuture<Void>> route () {
+		return this::serve;
+	}
+
+	public CompletableFuture<Void> serve (Request request) throws IOException {
+		String name = name (request.pathParams ().get (config.param));
+		Path path = root.resolve (name).normalize ();
+		if ( ! path.startsWith (root) ) { throw new NotFoundException (); }
+
+		Asset asset = lookup (name, path);
+		request.setHeader ("Cache-Control", cacheControl (name));
+		if ( asset.body == null ) { return FileResponse.reply (request, asset.path, asset.type); }
+
+		if ( asset.gzip != null ) { request.setHeader ("Vary", "Accept-Encoding"); }
+
+		boolean gzip = asset.gzip != null
+			&& Compression.negotiate (Headers.get (request.headers (), "Accept-Encoding")) == Compression.Encoding.GZIP;
+		String etag = gzip ? asset.gzipEtag : asset.etag;
+
+		if ( Conditional.validator (request, etag, asset.modified) ) { return Conditional.notModified (request); }
+
+		ByteBuffer body = gzip ? asset.gzip : asset.body;
+		Map<String, Object> headers = new LinkedHashMap<> ();
+		headers.put ("Content-Type", asset.type);
+		headers.put ("Content-Length", body.remaining ());
+		if ( gzip ) { headers.put ("Content-Encoding", "gzip"); }
+
+		if ( request.method () == Method.HEAD ) { return request.reply (200, headers, new byte [] {}); }
+		return request.reply (200, headers, Publishers.of (body));
+	}
+
+	public synchronized int size () {
+		return cache.size ();
+	}
+
+	public synchronized long bytes () {
+		return cached;
+	}
+
+	@Override public void close () throws IOException {
+		if ( watcher != null ) { watcher.close (); }
+		synchronized ( this ) {
+			cache.clear ();
+			cached = 0;
+		}
+	}
+
+	private String name (String param) {
+		String name = param == null ? "" : param;
+		while ( name.startsWith ("/") ) { name = name.substring (1); }
+		if ( name.isEmpty () || name.endsWith ("/") ) { name = name + config.index; }
+
+		for ( String segment : name.split ("/") ) {
+			if ( segment.startsWith (".") ) { throw new NotFoundException (); }
+		}
+		return name;
+	}
+
+	private Asset lookup (String name, Path path) throws IOException {
+		Asset asset;
+		long generation;
+		synchronized ( this ) {
+			asset = cache.get (name);
+			generation = this.generation;
+		}
+		if ( asset != null && (watcher != null || asset.current (path)) ) { return asset; }
+
+		BasicFileAttributes attributes;
+		try { attributes = Files.readAttributes (path, BasicFileAttributes.class); }
+		catch ( NoSuchFileException e ) { throw new NotFoundException (); }
+
+		if ( attributes.isDirectory () ) { return lookup (name + "/" + config.index, path.resolve (config.index)); }
+		if ( ! attributes.isRegularFile () ) { throw new NotFoundException (); }
+		if ( attributes.size () > config.maxFileSize ) { return new Asset (path, type (name)); }
+
+		asset = load (name, path, attributes);
+		store (name, asset, generation);
+		return asset;
+	}
+
+	private Asset load (String name, Path path, BasicFileAttributes attributes) throws IOException {
+		MappedByteBuffer body = map (path);
+		BasicFileAttributes zipped = attributes (compressed (path));
+		MappedByteBuffer gzip = zipped == null ? null : map (compressed (path));
+
+		String etag = Conditional.etag (bytes (body));
+		return new Asset (
+			body, gzip, type (name), etag,
+			gzip == null ? null : etag.substring (0, etag.length () - 1) + "-gz\"",
+			attributes.lastModifiedTime ().toInstant ().truncatedTo (ChronoUnit.SECONDS),
+			attributes.size (),
+			zipped == null ? null : zipped.lastModifiedTime ()
+		);
+	}
+
+	private synchronized void store (String name, Asset asset, long generation) {
+		/* a change was seen while loading, the asset may already be stale */
+		if ( generation != this.generation ) { return; }
+
+		Asset previous = cache.put (name, asset);
+		if ( previous != null ) { cached -= previous.size (); }
+		cached += asset.size ();
+
+		Iterator<Asset> it = cache.values ().iterator ();
+		while ( it.hasNext () && (cache.size () > config.maxEntries || cached > config.maxBytes) ) {
+			Asset eldest = it.next ();
+			if ( eldest == asset ) { break; }
+			cached -= eldest.size ();
+			it.remove ();
+		}
+	}
+
+	private synchronized void invalidate (Path changed) {
+		String name = root.relativize (changed).toString ().replace ('\\', '/');
+		if ( name.endsWith (".gz") ) { name = name.substring (0, name.length () - 3); }
+		generation++;
+
+		Iterator<Map.Entry<String, Asset>> it = cache.entrySet ().iterator ();
+		while ( it.hasNext () ) {
+			Map.Entry<String, Asset> entry = it.next ();
+			String key = entry.getKey ();
+			if ( key.equals (name) || key.startsWith (name + "/") ) {
+				cached -= entry.getValue ().size ();
+				it.remove ();
+			}
+		}
+	}
+
+	private String type (String name) {
+		int dot = name.lastIndexOf ('.');
+		String type = dot < 0 ? null : config.types.get (name.substring (dot + 1).toLowerCase ());
+		return type != null ? type : "application/octet-stream";
+	}
+
+	private String cacheControl (String name) {
+		return config.fingerprinted.matcher (name).matches () ? config.immutable : config.revalidate;
+	}
+
+	private WatchService watch () throws IOException {
+		WatchService service = root.getFileSystem ().newWatchService ();
+		register (service, root);
+
+		Thread thread = new Thread (() -> loop (service), "static-assets-watcher");
+		thread.setDaemon (true);
+		thread.start ();
+		return service;
+	}
+
+	private void register (WatchService service, Path directory) throws IOException {
+		try ( Stream<Path> directories = Files.walk (directory) ) {
+			for ( Path path : (Iterable<Path>) directories.filter (Files::isDirectory)::iterator ) {
+				path.register (service,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY
+				);
+			}
+		}
+	}
+
+	private void loop (WatchService service) {
+		while ( true ) {
+			WatchKey key;
+			try { key = service.take (); }
+			catch ( InterruptedException | ClosedWatchServiceException e ) { return; }
+
+			Path directory = (Path) key.watchable ();
+			for ( WatchEvent<?> event : key.pollEvents () ) {
+				if ( event.kind () == StandardWatchEventKinds.OVERFLOW ) {
+					synchronized ( this ) {
+						cache.clear ();
+						cached = 0;
+						generation++;
+					}
+					continue;
+				}
+
+				Path changed = directory.resolve ((Path) event.context ());
+				invalidate (changed);
+
+				if ( event.kind () == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory (changed) ) {
+					try { register (service, changed); }
+					catch ( IOException | ClosedWatchServiceException e ) { logger.warn ("Could not watch {}", changed, e); }
+				}
+			}
+
+			key.reset ();
+		}
+	}
+
+	private static Path compressed (Path path) {
+		return path.resolveSibling (path.getFileName () + ".gz");
+	}
+
+	/* Attributes of a regular file, or null when there is none at the path. */
+	private static BasicFileAttributes attributes (Path path) throws IOException {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes (path, BasicFileAttributes.class);
+			return attributes.isRegularFile () ? attributes : null;
+		} catch ( NoSuchFileException e ) {
+			return null;
+		}
+	}
+
+	private static MappedByteBuffer map (Path path) throws IOException {
+		try ( FileChannel channel = FileChannel.open (path, StandardOpenOption.READ) ) {
+			return channel.map (FileChannel.MapMode.READ_ONLY, 0, channel.size ());
+		}
+	}
+
+	private static byte [] bytes (ByteBuffer buffer) {
+		byte [] bytes = new byte [buffer.remaining ()];
+		buffer.duplicate ().get (bytes);
+		return bytes;
+	}
+
+	private static class Asset {
+		private final Path path;
+		private final ByteBuffer body;
+		private final ByteBuffer gzip;
+		private final String type;
+		private final String etag;
+		private final String gzipEtag;
+		private final Instant modified;
+		private final long length;
+		private final FileTime gzipModified;
+
+		private Asset (
+			ByteBuffer body, ByteBuffer gzip, String type, String etag, String gzipEtag, Instant modified, long length,
+			FileTime gzipModified
+		) {
+			this.path = null;
+			this.body = body;
+			this.gzip = gzip;
+			this.type = type;
+			this.etag = etag;
+			this.gzipEtag = gzipEtag;
+			this.modified = modified;
+			this.length = length;
+			this.gzipModified = gzipModified;
+		}
+
+		private Asset (Path path, String type) {
+			this.path = path;
+			this.body = null;
+			this.gzip = null;
+			this.type = type;
+			this.etag = null;
+			this.gzipEtag = null;
+			this.modified = null;
+			this.length = 0;
+			this.gzipModified = null;
+		}
+
+		private long size () {
+			return body.capacity () + (gzip == null ? 0 : gzip.capacity ());
+		}
+
+		/* Both the file and its .gz sibling, which may have appeared or gone since, must be unchanged. */
+		private boolean current (Path path) throws IOException {
+			BasicFileAttributes attributes = attributes (path);
+			if ( attributes == null || attributes.size () != length ) { return false; }
+			if ( ! attributes.lastModifiedTime ().toInstant ().truncatedTo (ChronoUnit.SECONDS).equals (modified) ) { return false; }
+
+			BasicFileAttributes zipped = attributes (compressed (path));
+			if ( zipped == null || gzip == null ) { return zipped == null && gzip == null; }
+			return zipped.size () == gzip.capacity () && zipped.lastModifiedTime ().equals (gzipModified);
+		}
+	}
+
+}
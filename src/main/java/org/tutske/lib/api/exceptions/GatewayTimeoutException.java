@@ -0,0 +1,24 @@
+package org.tutske.lib.api.exceptions;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+
+public class GatewayTimeoutException extends ResponseException {
+
+	public static int STATUS_CODE = 504;
+
+	{
+		type = "/gateway-timeout";
+		title = "Gateway Timeout";
+		status = STATUS_CODE;
+	}
+
+	public GatewayTimeoutException () { this ("The request did not complete in time."); }
+	public GatewayTimeoutException (String message) { super (message); }
+	public GatewayTimeoutException (String message, Throwable cause) { super (message, cause); }
+	public GatewayTimeoutException (Throwable cause) { super (cause); }
+
+	public GatewayTimeoutException (ObjectNode data) { super (data); }
+	public GatewayTimeoutException (String message, ObjectNode data) { super (message, data); }
+
+}
@@ -0,0 +1,24 @@
+package org.tutske.lib.api.exceptions;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+
+public class PayloadTooLargeException extends ResponseException {
+
+	public static int STATUS_CODE = 413;
+
+	{
+		type = "/payload-too-large";
+		title = "Payload Too Large";
+		status = STATUS_CODE;
+	}
+
+	public PayloadTooLargeException () { this ("Request body is too large."); }
+	public PayloadTooLargeException (String message) { super (message); }
+	public PayloadTooLargeException (String message, Throwable cause) { super (message, cause); }
+	public PayloadTooLargeException (Throwable cause) { super (cause); }
+
+	public PayloadTooLargeException (ObjectNode data) { super (data); }
+	public PayloadTooLargeException (String message, ObjectNode data) { super (message, data); }
+
+}
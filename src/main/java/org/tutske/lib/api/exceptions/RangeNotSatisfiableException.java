@@ -0,0 +1,24 @@
+package org.tutske.lib.api.exceptions;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+
+public class RangeNotSatisfiableException extends ResponseException {
+
+	public static int STATUS_CODE = 416;
+
+	{
+		type = "/range-not-satisfiable";
+		title = "Range Not Satisfiable";
+		status = STATUS_CODE;
+	}
+
+	public RangeNotSatisfiableException () { this ("Requested range is not satisfiable."); }
+	public RangeNotSatisfiableException (String message) { super (message); }
+	public RangeNotSatisfiableException (String message, Throwable cause) { super (message, cause); }
+	public RangeNotSatisfiableException (Throwable cause) { super (cause); }
+
+	public RangeNotSatisfiableException (ObjectNode data) { super (data); }
+	public RangeNotSatisfiableException (String message, ObjectNode data) { super (message, data); }
+
+}
@@ -0,0 +1,24 @@
+package org.tutske.lib.api.exceptions;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+
+public class ServiceUnavailableException extends ResponseException {
+
+	public static int STATUS_CODE = 503;
+
+	{
+		type = "/service-unavailable";
+		title = "Service Unavailable";
+		status = STATUS_CODE;
+	}
+
+	public ServiceUnavailableException () { this ("The service is temporarily unavailable."); }
+	public ServiceUnavailableException (String message) { super (message); }
+	public ServiceUnavailableException (String message, Throwable cause) { super (message, cause); }
+	public ServiceUnavailableException (Throwable cause) { super (cause); }
+
+	public ServiceUnavailableException (ObjectNode data) { super (data); }
+	public ServiceUnavailableException (String message, ObjectNode data) { super (message, data); }
+
+}
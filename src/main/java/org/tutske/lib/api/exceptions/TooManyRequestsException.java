@@ -0,0 +1,24 @@
+package org.tutske.lib.api.exceptions;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+
+public class TooManyRequestsException extends ResponseException {
+
+	public static int STATUS_CODE = 429;
+
+	{
+		type = "/too-many-requests";
+		title = "Too Many Requests";
+		status = STATUS_CODE;
+	}
+
+	public TooManyRequestsException () { this ("Too many requests, try again later."); }
+	public TooManyRequestsException (String message) { super (message); }
+	public TooManyRequestsException (String message, Throwable cause) { super (message, cause); }
+	public TooManyRequestsException (Throwable cause) { super (cause); }
+
+	public TooManyRequestsException (ObjectNode data) { super (data); }
+	public TooManyRequestsException (String message, ObjectNode data) { super (message, data); }
+
+}
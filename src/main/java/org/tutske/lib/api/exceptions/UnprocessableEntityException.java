@@ -0,0 +1,24 @@
+package org.tutske.lib.api.exceptions;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+
+public class UnprocessableEntityException extends ResponseException {
+
+	public static int STATUS_CODE = 422;
+
+	{
+		type = "/unprocessable-entity";
+		title = "Unprocessable Entity";
+		status = STATUS_CODE;
+	}
+
+	public UnprocessableEntityException () { super (); }
+	public UnprocessableEntityException (String message) { super (message); }
+	public UnprocessableEntityException (String message, Throwable cause) { super (message, cause); }
+	public UnprocessableEntityException (Throwable cause) { super (cause); }
+
+	public UnprocessableEntityException (ObjectNode data) { super (data); }
+	public UnprocessableEntityException (String message, ObjectNode data) { super (message, data); }
+
+}
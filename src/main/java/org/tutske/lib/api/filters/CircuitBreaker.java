@@ -0,0 +1,280 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.RequestWrapper;
+import org.tutske.lib.api.exceptions.ResponseException;
+import org.tutske.lib.api.exceptions.ServiceUnavailableException;
+import org.tutske.lib.utils.Functions.RiskyFn;
+
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+
+
+/**
+ * Stops calling the chain once too many recent calls failed, and answers with
+ * the fallback instead until the open duration passed. After that a few probe
+ * calls decide whether to close the circuit again; probes that do not finish
+ * within another open duration are given up on and a new round of probes
+ * starts. Outcomes are counted in a
+ * ring of time buckets, each packed into a single long that is updated with a
+ * compare and set.
+ */
+public class CircuitBreaker implements Filter<Request, CompletableFuture<Void>> {
+
+	public static enum State { CLOSED, OPEN, HALF_OPEN }
+
+	public static class Config {
+		protected Duration window = Duration.ofSeconds (10);
+		protected int buckets = 10;
+		protected double failureRate = 0.5;
+		protected int minimumCalls = 20;
+		protected Duration openDuration = Duration.ofSeconds (30);
+		protected int probes = 3;
+		protected IntPredicate failure = status -> status >= 500;
+		protected RiskyFn<Request, CompletableFuture<Void>> fallback = null;
+
+		public Config () {}
+
+		public Config (double failureRate, Duration openDuration) {
+			this.failureRate = failureRate;
+			this.openDuration = openDuration;
+		}
+	}
+
+	private static final ResponseException OPEN = new ServiceUnavailableException ("Downstream service is unavailable.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	private static final int COUNT_BITS = 21;
+	private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+	private static final long EPOCH_MASK = (1L << (64 - 2 * COUNT_BITS)) - 1;
+
+	private final Clock clock;
+	private final long bucketMillis;
+	private final double failureRate;
+	private final int minimumCalls;
+	private final long openMillis;
+	private final int probes;
+	private final IntPredicate failure;
+	private final RiskyFn<Request, CompletableFuture<Void>> fallback;
+	private final String retryAfter;
+
+	private final AtomicLongArray ring;
+	private final AtomicInteger state = new AtomicInteger (State.CLOSED.ordinal ());
+	private final AtomicLong openedAt = new AtomicLong ();
+	private final AtomicInteger cycle = new AtomicInteger ();
+	private final AtomicInteger probing = new AtomicInteger ();
+	private final AtomicInteger probed = new AtomicInteger ();
+	private final LongAdder rejections = new LongAdder ();
+
+	public CircuitBreaker (Config config) {
+		this (Clock.systemUTC (), config);
+	}
+
+	public CircuitBreaker (Clock clock, Config config) {
+		if ( config.buckets < 1 ) { throw new IllegalArgumentException ("buckets should be positive"); }
+
+		this.clock = clock;
+		this.bucketMillis = Math.max (1, config.window.toMillis () / config.buckets);
+		this.failureRate = config.failureRate;
+		this.minimumCalls = Math.max (1, config.minimumCalls);
+		this.openMillis = config.openDuration.toMillis ();
+		this.probes = Math.max (1, config.probes);
+		this.failure = config.failure;
+		this.fallback = config.fallback;
+		this.ring = new AtomicLongArray (config.buckets);
+
+		this.retryAfter = String.valueOf (Math.max (1, (openMillis + 999) / 1000));
+	}
+
+	@Override
+	public CompletableFuture<Void> call (Request source, Chain<Request, CompletableFuture<Void>> chain) throws Exception {
+		State current = state ();
+
+		if ( current == State.OPEN ) { return reject (source); }
+		if ( current == State.HALF_OPEN ) {
+			int probe = cycle.get ();
+			if ( probing.incrementAndGet () > probes ) { return reject (source); }
+			return execute (source, chain, probe);
+		}
+
+		return execute (source, chain, -1);
+	}
+
+	public State state () {
+		State current = State.values ()[state.get ()];
+		if ( current == State.CLOSED || clock.millis () - openedAt.get () < openMillis ) { return current; }
+
+		/* Either the circuit was open long enough, or the probes of this round hang; start a new round. */
+		synchronized ( this ) {
+			if ( state.get () != State.CLOSED.ordinal () && clock.millis () - openedAt.get () >= openMillis ) {
+				cycle.incrementAndGet ();
+				probing.set (0);
+				probed.set (0);
+				openedAt.set (clock.millis ());
+				state.set (State.HALF_OPEN.ordinal ());
+			}
+		}
+		return State.values ()[state.get ()];
+	}
+
+	public long calls () {
+		long [] totals = totals ();
+		return totals[0] + totals[1];
+	}
+
+	public long failures () {
+		return totals ()[1];
+	}
+
+	public double failureRate () {
+		long [] totals = totals ();
+		long calls = totals[0] + totals[1];
+		return calls == 0 ? 0 : (double) totals[1] / calls;
+	}
+
+	public long rejections () {
+		return rejections.sum ();
+	}
+
+	private CompletableFuture<Void> reject (Request source) throws Exception {
+		rejections.increment ();
+		if ( fallback != null ) { return fallback.apply (source); }
+		source.setHeader ("Retry-After", retryAfter);
+		throw OPEN;
+	}
+
+	/* Runs the chain, probe is the round of probes the call belongs to or -1 for regular calls. */
+	private CompletableFuture<Void> execute (Request source, Chain<Request, CompletableFuture<Void>> chain, int probe) {
+		StatusRequest request = new StatusRequest (source);
+
+		CompletableFuture<Void> result;
+		try { result = chain.apply (request); }
+		catch ( RuntimeException e ) {
+			complete (probe, failed (request, e));
+			throw e;
+		}
+
+		if ( result == null ) {
+			if ( probe >= 0 && probe == cycle.get () ) { probing.decrementAndGet (); }
+			return null;
+		}
+
+		return result.whenComplete ((ignore, exception) -> complete (probe, failed (request, exception)));
+	}
+
+	private boolean failed (StatusRequest request, Throwable exception) {
+		Throwable cause = exception instanceof CompletionException && exception.getCause () != null
+			? exception.getCause ()
+			: exception;
+
+		if ( cause instanceof ResponseException ) { return failure.test (((ResponseException) cause).getStatusCode ()); }
+		if ( cause != null ) { return true; }
+		return failure.test (request.status);
+	}
+
+	private void complete (int probe, boolean failed) {
+		if ( probe >= 0 ) {
+			if ( probe != cycle.get () ) { return; }
+			if ( failed ) { trip (State.HALF_OPEN); }
+			else if ( probed.incrementAndGet () >= probes ) { close (); }
+			return;
+		}
+
+		record (failed);
+		if ( failed && state.get () == State.CLOSED.ordinal () ) {
+			long [] totals = totals ();
+			long calls = totals[0] + totals[1];
+			if ( calls >= minimumCalls && totals[1] >= failureRate * calls ) { trip (State.CLOSED); }
+		}
+	}
+
+	private synchronized void trip (State from) {
+		if ( state.compareAndSet (from.ordinal (), State.OPEN.ordinal ()) ) {
+			openedAt.set (clock.millis ());
+		}
+	}
+
+	private synchronized void close () {
+		if ( state.compareAndSet (State.HALF_OPEN.ordinal (), State.CLOSED.ordinal ()) ) {
+			for ( int i = 0; i < ring.length (); i++ ) { ring.set (i, 0); }
+		}
+	}
+
+	private void record (boolean failed) {
+		long epoch = clock.millis () / bucketMillis;
+		int index = (int) (epoch % ring.length ());
+		long tag = epoch & EPOCH_MASK;
+
+		while ( true ) {
+			long current = ring.get (index);
+			long successes = current & COUNT_MASK;
+			long failures = (current >>> COUNT_BITS) & COUNT_MASK;
+
+			if ( (current >>> (2 * COUNT_BITS)) != tag ) { successes = failures = 0; }
+			if ( failed ) { failures = Math.min (COUNT_MASK, failures + 1); }
+			else { successes = Math.min (COUNT_MASK, successes + 1); }
+
+			long next = (tag << (2 * COUNT_BITS)) | (failures << COUNT_BITS) | successes;
+			if ( ring.compareAndSet (index, current, next) ) { return; }
+		}
+	}
+
+	private long [] totals () {
+		long epoch = clock.millis () / bucketMillis;
+		long successes = 0;
+		long failures = 0;
+
+		for ( int i = 0; i < ring.length (); i++ ) {
+			long value = ring.get (i);
+			long tag = value >>> (2 * COUNT_BITS);
+			long age = (epoch - tag) & EPOCH_MASK;
+			if ( value == 0 || age >= ring.length () ) { continue; }
+
+			successes += value & COUNT_MASK;
+			failures += (value >>> COUNT_BITS) & COUNT_MASK;
+		}
+
+		return new long [] { successes, failures };
+	}
+
+	private static class StatusRequest extends RequestWrapper {
+		private volatile int status = 200;
+
+		private StatusRequest (Request request) {
+			super (request);
+		}
+
+		@Override public void setStatus (int status) {
+			this.status = status;
+			super.setStatus (status);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, Object payload) {
+			this.status = status;
+			return super.reply (status, headers, payload);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, InputStream in) {
+			this.status = status;
+			return super.reply (status, headers, in);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, byte [] payload) {
+			this.status = status;
+			return super.reply (status, headers, payload);
+		}
+	}
+
+}
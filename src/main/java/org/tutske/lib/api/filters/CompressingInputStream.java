@@ -0,0 +1,98 @@
+package org.tutske.lib.api.filters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+
+/**
+ * Compresses the source while it is being read, so replies are never buffered
+ * as a whole. The deflater goes back to its pool once the end is reached or
+ * the stream is closed.
+ */
+public class CompressingInputStream extends InputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte [] GZIP_HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+	private static final byte [] NO_BYTES = {};
+
+	public static CompressingInputStream gzip (InputStream source, DeflaterPool pool) {
+		return new CompressingInputStream (source, pool, new CRC32 ());
+	}
+
+	public static CompressingInputStream deflate (InputStream source, DeflaterPool pool) {
+		return new CompressingInputStream (source, pool, null);
+	}
+
+	private final DeflaterPool pool;
+	private final CRC32 crc;
+	private final InputStream body;
+	private Deflater deflater;
+
+	private byte [] pending;
+	private int position = 0;
+	private boolean bodyDone = false;
+
+	private CompressingInputStream (InputStream source, DeflaterPool pool, CRC32 crc) {
+		this.pool = pool;
+		this.crc = crc;
+		this.deflater = pool.acquire ();
+		this.body = new DeflaterInputStream (crc == null ? source : new CheckedInputStream (source, crc), deflater, BUFFER_SIZE);
+		this.pending = crc == null ? NO_BYTES : GZIP_HEADER;
+	}
+
+	@Override
+	public int read () throws IOException {
+		byte [] single = new byte [1];
+		int n = read (single, 0, 1);
+		return n < 0 ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read (byte [] b, int off, int len) throws IOException {
+		if ( len == 0 ) { return 0; }
+
+		while ( true ) {
+			if ( position < pending.length ) {
+				int n = Math.min (len, pending.length - position);
+				System.arraycopy (pending, position, b, off, n);
+				position += n;
+				return n;
+			}
+
+			if ( bodyDone ) { return -1; }
+
+			int n = body.read (b, off, len);
+			if ( n > 0 ) { return n; }
+			if ( n == 0 ) { continue; }
+
+			bodyDone = true;
+			pending = crc == null ? NO_BYTES : trailer (crc.getValue (), deflater.getBytesRead ());
+			position = 0;
+			release ();
+		}
+	}
+
+	@Override
+	public void close () throws IOException {
+		try { body.close (); }
+		finally { release (); }
+	}
+
+	private void release () {
+		if ( deflater == null ) { return; }
+		pool.release (deflater);
+		deflater = null;
+	}
+
+	private static byte [] trailer (long crc, long size) {
+		return new byte [] {
+			(byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+			(byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+		};
+	}
+
+}
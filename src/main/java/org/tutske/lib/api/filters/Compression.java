@@ -0,0 +1,213 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Method;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.RequestWrapper;
+import org.tutske.lib.utils.Exceptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.Deflater;
+
+
+public class Compression implements Filter<Request, CompletableFuture<Void>> {
+
+	public static class Config {
+		protected int minSize = 1024;
+		protected int level = Deflater.DEFAULT_COMPRESSION;
+		protected int poolSize = 32;
+		protected Set<String> types = new HashSet<> (Arrays.asList (
+			"text/", "application/json", "application/javascript", "application/xml", "image/svg+xml"
+		));
+
+		public Config () {}
+	}
+
+	public static enum Encoding {
+		GZIP ("gzip"), DEFLATE ("deflate");
+
+		public final String value;
+
+		Encoding (String value) {
+			this.value = value;
+		}
+	}
+
+	public static Encoding negotiate (String header) {
+		if ( header == null || header.isEmpty () ) { return null; }
+
+		Encoding best = null;
+		float quality = 0;
+
+		for ( String part : header.split (",") ) {
+			int semi = part.indexOf (';');
+			String name = (semi < 0 ? part : part.substring (0, semi)).trim ();
+			float q = semi < 0 ? 1 : quality (part.substring (semi + 1));
+
+			Encoding encoding = (
+				name.equalsIgnoreCase ("gzip") || name.equalsIgnoreCase ("x-gzip") ? Encoding.GZIP :
+				name.equalsIgnoreCase ("deflate") ? Encoding.DEFLATE :
+				name.equals ("*") ? Encoding.GZIP :
+				null
+			);
+
+			if ( encoding != null && q > quality ) {
+				best = encoding;
+				quality = q;
+			}
+		}
+
+		return best;
+	}
+
+	private static float quality (String params) {
+		for ( String param : params.split (";") ) {
+			String trimmed = param.trim ();
+			if ( ! trimmed.startsWith ("q=") ) { continue; }
+			try { return Float.parseFloat (trimmed.substring (2)); }
+			catch ( NumberFormatException e ) { return 0; }
+		}
+		return 1;
+	}
+
+	private final int minSize;
+	private final Set<String> types;
+	private final DeflaterPool gzip;
+	private final DeflaterPool deflate;
+
+	public Compression () {
+		this (new Config ());
+	}
+
+	public Compression (Config config) {
+		this.minSize = config.minSize;
+		this.types = new HashSet<> (config.types);
+		this.gzip = new DeflaterPool (config.level, true, config.poolSize);
+		this.deflate = new DeflaterPool (config.level, false, config.poolSize);
+	}
+
+	@Override
+	public CompletableFuture<Void> call (Request source, Chain<Request, CompletableFuture<Void>> chain) throws Exception {
+		if ( source.method () == Method.HEAD ) { return chain.apply (source); }
+
+		Encoding encoding = negotiate (Headers.get (source.headers (), "Accept-Encoding"));
+		return chain.apply (new CompressingRequest (source, encoding));
+	}
+
+	private boolean allowed (String contentType) {
+		if ( contentType == null ) { return false; }
+
+		int semi = contentType.indexOf (';');
+		String mime = (semi < 0 ? contentType : contentType.substring (0, semi)).trim ().toLowerCase (Locale.ROOT);
+		int slash = mime.indexOf ('/');
+
+		return types.contains (mime) || (slash > 0 && types.contains (mime.substring (0, slash + 1)));
+	}
+
+	private class CompressingRequest extends RequestWrapper {
+		private final Encoding encoding;
+		private String contentType;
+		private String contentLength;
+		private boolean encoded = false;
+
+		private CompressingRequest (Request request, Encoding encoding) {
+			super (request);
+			this.encoding = encoding;
+		}
+
+		@Override public void setHeader (String header, String value) {
+			if ( "Content-Length".equalsIgnoreCase (header) ) { contentLength = value; return; }
+			if ( "Content-Type".equalsIgnoreCase (header) ) { contentType = value; }
+			if ( "Content-Encoding".equalsIgnoreCase (header) ) { encoded = true; }
+			super.setHeader (header, value);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, Object payload) {
+			String type = compressible (status, headers, "application/json");
+			if ( type == null ) { return plain ().reply (status, headers, payload); }
+			if ( encoding == null ) { return plain ().reply (status, headers (headers, type, false), payload); }
+
+			byte [] bytes;
+			try { bytes = request.mapper ().writeValueAsBytes (payload); }
+			catch ( IOException e ) { throw Exceptions.wrap (e); }
+
+			if ( bytes.length < minSize ) { return plain ().reply (status, headers (headers, type, false), bytes); }
+			return compressed (status, headers, type, new ByteArrayInputStream (bytes));
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, byte [] payload) {
+			String type = compressible (status, headers, null);
+			if ( type == null ) { return plain ().reply (status, headers, payload); }
+			if ( encoding == null || payload.length < minSize ) {
+				return plain ().reply (status, headers (headers, type, false), payload);
+			}
+			return compressed (status, headers, type, new ByteArrayInputStream (payload));
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, InputStream in) {
+			String type = compressible (status, headers, null);
+			if ( type == null ) { return plain ().reply (status, headers, in); }
+			if ( encoding == null ) { return plain ().reply (status, headers (headers, type, false), in); }
+
+			byte [] head;
+			try { head = in.readNBytes (minSize); }
+			catch ( IOException e ) { throw Exceptions.wrap (e); }
+
+			if ( head.length < minSize ) {
+				try { in.close (); }
+				catch ( IOException e ) { throw Exceptions.wrap (e); }
+				return plain ().reply (status, headers (headers, type, false), head);
+			}
+
+			return compressed (status, headers, type, new SequenceInputStream (new ByteArrayInputStream (head), in));
+		}
+
+		/* The content type the reply goes out with, or null when it should not be compressed. */
+		private String compressible (int status, Map<String, ?> headers, String fallback) {
+			if ( encoded || status < 200 || status == 204 || status == 304 ) { return null; }
+			if ( Headers.find (headers, "Content-Encoding") != null ) { return null; }
+
+			Object header = Headers.find (headers, "Content-Type");
+			String type = header != null ? String.valueOf (header) : contentType != null ? contentType : fallback;
+			return allowed (type) ? type : null;
+		}
+
+		private Request plain () {
+			if ( contentLength != null ) { request.setHeader ("Content-Length", contentLength); }
+			return request;
+		}
+
+		private CompletableFuture<Void> compressed (int status, Map<String, ?> headers, String type, InputStream in) {
+			return request.reply (status, headers (headers, type, true), encoding == Encoding.GZIP ?
+				CompressingInputStream.gzip (in, gzip) :
+				CompressingInputStream.deflate (in, deflate)
+			);
+		}
+
+		private Map<String, Object> headers (Map<String, ?> headers, String type, boolean compressed) {
+			Map<String, Object> copy = new LinkedHashMap<> ();
+			for ( Map.Entry<String, ?> header : headers.entrySet () ) {
+				if ( compressed && "Content-Length".equalsIgnoreCase (header.getKey ()) ) { continue; }
+				if ( "Vary".equalsIgnoreCase (header.getKey ()) ) { continue; }
+				copy.put (header.getKey (), header.getValue ());
+			}
+
+			if ( Headers.find (headers, "Content-Type") == null ) { copy.put ("Content-Type", type); }
+			if ( compressed ) { copy.put ("Content-Encoding", encoding.value); }
+			copy.put ("Vary", Headers.vary (Headers.find (headers, "Vary"), "Accept-Encoding"));
+			return copy;
+		}
+	}
+
+}
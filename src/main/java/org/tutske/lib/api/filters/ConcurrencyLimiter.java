@@ -0,0 +1,154 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.exceptions.ResponseException;
+import org.tutske.lib.api.exceptions.ServiceUnavailableException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Limits the number of in flight requests per route. The limit follows AIMD:
+ * it grows by one when a request completes within the latency target while
+ * the route was at least half utilized, and is multiplied by the backoff when
+ * a request takes longer than the target. Only requests that started after the
+ * last decrease can decrease it again, so a burst of slow requests backs off
+ * once rather than once per request.
+ */
+public class ConcurrencyLimiter<REQ extends Request> implements Filter<REQ, CompletableFuture<Void>> {
+
+	public static class Config {
+		protected int initial = 20;
+		protected int min = 1;
+		protected int max = 1000;
+		protected double backoff = 0.9;
+		protected Duration latency = Duration.ofSeconds (1);
+
+		public Config () {}
+
+		public Config (int initial, Duration latency) {
+			this.initial = initial;
+			this.latency = latency;
+		}
+	}
+
+	private static final String UNKNOWN_ROUTE = "";
+	private static final ResponseException REJECTED = new ServiceUnavailableException ("Concurrency limit reached.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	private final Clock clock;
+	private final int initial;
+	private final int min;
+	private final int max;
+	private final double backoff;
+	private final long latency;
+
+	private final ConcurrentHashMap<String, Limit> limits = new ConcurrentHashMap<> ();
+
+	public ConcurrencyLimiter (Config config) {
+		this (Clock.systemUTC (), config);
+	}
+
+	public ConcurrencyLimiter (Clock clock, Config config) {
+		this.clock = clock;
+		this.min = Math.max (1, config.min);
+		this.max = Math.max (min, config.max);
+		this.initial = Math.min (max, Math.max (min, config.initial));
+		this.backoff = config.backoff;
+		this.latency = config.latency.toMillis ();
+	}
+
+	@Override
+	public CompletableFuture<Void> call (REQ source, Chain<REQ, CompletableFuture<Void>> chain) throws Exception {
+		Limit limit = limitFor (chain.identifier () == null ? UNKNOWN_ROUTE : chain.identifier ());
+		int started = limit.acquire ();
+		long start = clock.millis ();
+
+		CompletableFuture<Void> future;
+		try { future = chain.apply (source); }
+		catch ( RuntimeException e ) { limit.inFlight.decrementAndGet (); throw e; }
+
+		if ( future == null ) {
+			limit.inFlight.decrementAndGet ();
+			return null;
+		}
+
+		future.whenComplete ((ignore, throwable) -> release (limit, started, start, clock.millis ()));
+		return future;
+	}
+
+	public Set<String> routes () {
+		return new HashSet<> (limits.keySet ());
+	}
+
+	public int limit (String route) {
+		Limit limit = limits.get (route);
+		return limit == null ? initial : limit.limit.get ();
+	}
+
+	public int inFlight (String route) {
+		Limit limit = limits.get (route);
+		return limit == null ? 0 : limit.inFlight.get ();
+	}
+
+	public long rejections (String route) {
+		Limit limit = limits.get (route);
+		return limit == null ? 0 : limit.rejections.sum ();
+	}
+
+	public long rejections () {
+		return limits.values ().stream ().mapToLong (limit -> limit.rejections.sum ()).sum ();
+	}
+
+	private Limit limitFor (String route) {
+		Limit limit = limits.get (route);
+		return limit != null ? limit : limits.computeIfAbsent (route, r -> new Limit (initial));
+	}
+
+	private void release (Limit limit, int started, long start, long end) {
+		limit.inFlight.decrementAndGet ();
+
+		if ( end - start > latency ) {
+			long decreased = limit.decreased.get ();
+			if ( start > decreased && limit.decreased.compareAndSet (decreased, end) ) {
+				limit.limit.updateAndGet (current -> Math.max (min, (int) (current * backoff)));
+			}
+		} else if ( started * 2 >= limit.limit.get () ) {
+			limit.limit.updateAndGet (current -> Math.min (max, current + 1));
+		}
+	}
+
+	private static class Limit {
+		private final AtomicInteger limit;
+		private final AtomicInteger inFlight = new AtomicInteger ();
+		private final AtomicLong decreased = new AtomicLong (Long.MIN_VALUE);
+		private final LongAdder rejections = new LongAdder ();
+
+		private Limit (int initial) {
+			this.limit = new AtomicInteger (initial);
+		}
+
+		private int acquire () {
+			while ( true ) {
+				int current = inFlight.get ();
+				if ( current >= limit.get () ) {
+					rejections.increment ();
+					throw REJECTED;
+				}
+				if ( inFlight.compareAndSet (current, current + 1) ) { return current + 1; }
+			}
+		}
+	}
+
+}
@@ -0,0 +1,201 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Method;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.RequestWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Answers {@code If-None-Match} and {@code If-Modified-Since} with a 304.
+ * Handlers declare a validator through {@link #validator} before building
+ * their payload; replies to requests whose validator matches are replaced by
+ * a 304 without serializing the payload. Byte replies without a validator get
+ * an ETag from a hash of their content.
+ */
+public class Conditional implements Filter<Request, CompletableFuture<Void>> {
+
+	public static final String ETAG_KEY = "etag";
+	public static final String LAST_MODIFIED_KEY = "last-modified";
+
+	private static final byte [] NO_BYTES = {};
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle (long [].class, ByteOrder.LITTLE_ENDIAN);
+	private static final long P1 = 0x9E3779B185EBCA87L;
+	private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long P3 = 0x165667B19E3779F9L;
+	private static final long P4 = 0x85EBCA77C2B2AE63L;
+	private static final long P5 = 0x27D4EB2F165667C5L;
+
+	public static boolean validator (Request request, Object version) {
+		return validator (request, version, null);
+	}
+
+	public static boolean validator (Request request, Instant lastModified) {
+		return validator (request, null, lastModified);
+	}
+
+	public static boolean validator (Request request, Object version, Instant lastModified) {
+		String etag = version == null ? null : quote (String.valueOf (version));
+		Instant modified = lastModified == null ? null : lastModified.truncatedTo (ChronoUnit.SECONDS);
+
+		if ( etag != null ) {
+			request.context ().put (ETAG_KEY, etag);
+			request.setHeader ("ETag", etag);
+		}
+		if ( modified != null ) {
+			request.context ().put (LAST_MODIFIED_KEY, modified);
+			request.setHeader ("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format (modified.atZone (ZoneOffset.UTC)));
+		}
+
+		return notModified (request, etag, modified);
+	}
+
+	public static CompletableFuture<Void> notModified (Request request) {
+		return request.reply (304, Collections.emptyMap (), NO_BYTES);
+	}
+
+	public static String etag (byte [] bytes) {
+		return '"' + Long.toHexString (hash (bytes)) + '"';
+	}
+
+	static boolean notModified (Request request, String etag, Instant modified) {
+		if ( request.method () != Method.GET && request.method () != Method.HEAD ) { return false; }
+
+		String match = Headers.get (request.headers (), "If-None-Match");
+		if ( match != null ) { return etag != null && matches (match, etag); }
+
+		String since = Headers.get (request.headers (), "If-Modified-Since");
+		if ( since == null || modified == null ) { return false; }
+
+		try { return ! modified.isAfter (ZonedDateTime.parse (since, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant ()); }
+		catch ( DateTimeParseException e ) { return false; }
+	}
+
+	private static boolean matches (String header, String etag) {
+		String opaque = opaque (etag);
+		for ( String candidate : header.split (",") ) {
+			String trimmed = candidate.trim ();
+			if ( trimmed.equals ("*") || opaque (trimmed).equals (opaque) ) { return true; }
+		}
+		return false;
+	}
+
+	private static String opaque (String etag) {
+		return etag.startsWith ("W/") ? etag.substring (2) : etag;
+	}
+
+	private static String quote (String etag) {
+		if ( etag.startsWith ("\"") || etag.startsWith ("W/\"") ) { return etag; }
+		return '"' + etag + '"';
+	}
+
+	static long hash (byte [] bytes) {
+		int length = bytes.length;
+		long h = P5 + length;
+		int i = 0;
+
+		for ( ; i + 8 <= length; i += 8 ) {
+			long k = (long) LONGS.get (bytes, i) * P2;
+			h ^= Long.rotateLeft (k, 31) * P1;
+			h = Long.rotateLeft (h, 27) * P1 + P4;
+		}
+		for ( ; i < length; i++ ) {
+			h ^= (bytes[i] & 0xFF) * P5;
+			h = Long.rotateLeft (h, 11) * P1;
+		}
+
+		h ^= h >>> 33;
+		h *= P2;
+		h ^= h >>> 29;
+		h *= P3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	@Override
+	public CompletableFuture<Void> call (Request source, Chain<Request, CompletableFuture<Void>> chain) throws Exception {
+		if ( source.method () != Method.GET && source.method () != Method.HEAD ) { return chain.apply (source); }
+		return chain.apply (new ConditionalRequest (source));
+	}
+
+	private static class ConditionalRequest extends RequestWrapper {
+		private ConditionalRequest (Request request) {
+			super (request);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, Object payload) {
+			if ( status == 200 && declared () ) { return notModified (headers); }
+			return super.reply (status, headers, payload);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, InputStream in) {
+			if ( status == 200 && declared () ) {
+				try { in.close (); }
+				catch ( IOException ignore ) {}
+				return notModified (headers);
+			}
+			return super.reply (status, headers, in);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, byte [] payload) {
+			if ( status != 200 ) { return super.reply (status, headers, payload); }
+			if ( hasValidator () ) { return declared () ? notModified (headers) : super.reply (status, headers, payload); }
+
+			Object existing = Headers.find (headers, "ETag");
+			String etag = existing != null ? String.valueOf (existing) : etag (payload);
+
+			if ( Conditional.notModified (request, etag, null) ) {
+				request.setHeader ("ETag", etag);
+				return Conditional.notModified (request);
+			}
+
+			if ( existing != null ) { return super.reply (status, headers, payload); }
+
+			Map<String, Object> copy = new LinkedHashMap<> (headers);
+			copy.put ("ETag", etag);
+			return super.reply (status, copy, payload);
+		}
+
+		/* A validator declared by the handler wins over a hash of the content. */
+		private boolean hasValidator () {
+			return request.context ().get (ETAG_KEY) != null || request.context ().get (LAST_MODIFIED_KEY) != null;
+		}
+
+		private boolean declared () {
+			Object etag = request.context ().get (ETAG_KEY);
+			Object modified = request.context ().get (LAST_MODIFIED_KEY);
+			if ( etag == null && modified == null ) { return false; }
+
+			return Conditional.notModified (request,
+				etag instanceof String ? (String) etag : null,
+				modified instanceof Instant ? (Instant) modified : null
+			);
+		}
+
+		private CompletableFuture<Void> notModified (Map<String, ?> headers) {
+			for ( String name : new String [] { "ETag", "Last-Modified", "Cache-Control", "Vary", "Expires" } ) {
+				Object value = Headers.find (headers, name);
+				if ( value != null ) { request.setHeader (name, String.valueOf (value)); }
+			}
+			return Conditional.notModified (request);
+		}
+	}
+
+}
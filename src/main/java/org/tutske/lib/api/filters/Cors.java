@@ -0,0 +1,172 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Method;
+import org.tutske.lib.api.Request;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+
+/**
+ * Answers preflight requests without running the chain and adds the cors
+ * headers to other requests. Headers are built once per allowed origin;
+ * origins are matched against a hash set first and against wildcard patterns
+ * like {@code https://*.example.com} only on the first request from them.
+ */
+public class Cors<REQ extends Request> implements Filter<REQ, CompletableFuture<Void>> {
+
+	public static class Config {
+		protected Set<String> origins = Collections.singleton ("*");
+		protected EnumSet<Method> methods = EnumSet.of (
+			Method.GET, Method.HEAD, Method.POST, Method.PUT, Method.PATCH, Method.DELETE
+		);
+		protected List<String> headers = null;
+		protected List<String> exposed = Collections.emptyList ();
+		protected boolean credentials = false;
+		protected Duration maxAge = Duration.ofMinutes (10);
+		protected int maxCached = 1024;
+
+		public Config () {}
+
+		public Config (String ... origins) {
+			this.origins = new HashSet<> (Arrays.asList (origins));
+		}
+	}
+
+	private static final byte [] NO_BYTES = {};
+	private static final String ANY = "*";
+
+	private final boolean credentials;
+	private final int maxCached;
+	private final List<String []> patterns = new ArrayList<> ();
+
+	private final String methods;
+	private final String headers;
+	private final String exposed;
+	private final String maxAge;
+
+	private final HeaderSet wildcard;
+	private final Map<String, HeaderSet> exact = new HashMap<> ();
+	private final ConcurrentHashMap<String, HeaderSet> matched = new ConcurrentHashMap<> ();
+
+	public Cors (Config config) {
+		this.credentials = config.credentials;
+		this.maxCached = config.maxCached;
+		this.methods = config.methods.stream ().map (Enum::name).collect (Collectors.joining (", "));
+		this.headers = config.headers == null ? null : String.join (", ", config.headers);
+		this.exposed = config.exposed.isEmpty () ? null : String.join (", ", config.exposed);
+		this.maxAge = String.valueOf (config.maxAge.getSeconds ());
+
+		boolean any = false;
+		for ( String origin : config.origins ) {
+			int star = origin.indexOf ("*.");
+			if ( origin.equals (ANY) ) {
+				if ( credentials ) { throw new IllegalArgumentException ("Credentials can not be allowed for any origin"); }
+				any = true;
+			}
+			else if ( star >= 0 ) { patterns.add (new String [] { origin.substring (0, star), origin.substring (star + 1) }); }
+			else { exact.put (origin, new HeaderSet (origin)); }
+		}
+
+		this.wildcard = any ? new HeaderSet (ANY) : null;
+	}
+
+	@Override
+	public CompletableFuture<Void> call (REQ source, Chain<REQ, CompletableFuture<Void>> chain) throws Exception {
+		String origin = Headers.get (source.headers (), "Origin");
+		if ( origin == null ) { return chain.apply (source); }
+
+		HeaderSet set = lookup (origin);
+		boolean preflight = source.method () == Method.OPTIONS
+			&& Headers.get (source.headers (), "Access-Control-Request-Method") != null;
+
+		if ( preflight ) {
+			if ( set == null ) { return source.reply (403, Collections.emptyMap (), NO_BYTES); }
+			return source.reply (204, set.preflight (source), NO_BYTES);
+		}
+
+		if ( set != null ) {
+			String [] simple = set.simple;
+			for ( int i = 0; i < simple.length; i += 2 ) { source.setHeader (simple[i], simple[i + 1]); }
+		}
+
+		return chain.apply (source);
+	}
+
+	private HeaderSet lookup (String origin) {
+		HeaderSet set = exact.get (origin);
+		if ( set != null ) { return set; }
+		if ( wildcard != null ) { return wildcard; }
+
+		set = matched.get (origin);
+		if ( set != null ) { return set; }
+		if ( ! matchesPattern (origin) ) { return null; }
+
+		set = new HeaderSet (origin);
+		if ( matched.size () < maxCached ) { matched.putIfAbsent (origin, set); }
+		return set;
+	}
+
+	private boolean matchesPattern (String origin) {
+		for ( String [] pattern : patterns ) {
+			String scheme = pattern[0];
+			String suffix = pattern[1];
+			if ( origin.length () > scheme.length () + suffix.length ()
+				&& origin.startsWith (scheme)
+				&& origin.endsWith (suffix)
+			) { return true; }
+		}
+		return false;
+	}
+
+	private class HeaderSet {
+		private final String [] simple;
+		private final Map<String, String> preflight;
+
+		private HeaderSet (String origin) {
+			Map<String, String> common = new LinkedHashMap<> ();
+			common.put ("Access-Control-Allow-Origin", origin);
+			if ( credentials ) { common.put ("Access-Control-Allow-Credentials", "true"); }
+			if ( ! ANY.equals (origin) ) { common.put ("Vary", "Origin"); }
+
+			Map<String, String> simple = new LinkedHashMap<> (common);
+			if ( exposed != null ) { simple.put ("Access-Control-Expose-Headers", exposed); }
+
+			Map<String, String> preflight = new LinkedHashMap<> (common);
+			preflight.put ("Access-Control-Allow-Methods", methods);
+			if ( headers != null ) { preflight.put ("Access-Control-Allow-Headers", headers); }
+			preflight.put ("Access-Control-Max-Age", maxAge);
+
+			this.simple = simple.entrySet ().stream ()
+				.flatMap (e -> Arrays.stream (new String [] { e.getKey (), e.getValue () }))
+				.toArray (String []::new);
+			this.preflight = Collections.unmodifiableMap (preflight);
+		}
+
+		private Map<String, String> preflight (Request request) {
+			if ( headers != null ) { return preflight; }
+
+			String requested = Headers.get (request.headers (), "Access-Control-Request-Headers");
+			if ( requested == null ) { return preflight; }
+
+			Map<String, String> copy = new LinkedHashMap<> (preflight);
+			copy.put ("Access-Control-Allow-Headers", requested);
+			return copy;
+		}
+	}
+
+}
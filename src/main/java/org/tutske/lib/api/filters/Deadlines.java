@@ -0,0 +1,157 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Deadline;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.RequestWrapper;
+import org.tutske.lib.api.exceptions.GatewayTimeoutException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Fails requests with a 504 once their budget runs out. The handler is then
+ * cancelled and can no longer reply, so the timeout is the only answer the
+ * client gets.
+ */
+public class Deadlines implements Filter<Request, CompletableFuture<Void>> {
+
+	public static class Config {
+		protected Duration budget = null;
+		protected Map<String, Duration> routes = Collections.emptyMap ();
+		protected boolean acceptHeader = true;
+		protected HashedWheelTimer timer = null;
+
+		public Config () {}
+
+		public Config (Duration budget) {
+			this.budget = budget;
+		}
+	}
+
+	private final Duration budget;
+	private final Map<String, Duration> routes;
+	private final boolean acceptHeader;
+	private final HashedWheelTimer timer;
+
+	public Deadlines (Config config) {
+		this.budget = config.budget;
+		this.routes = new HashMap<> (config.routes);
+		this.acceptHeader = config.acceptHeader;
+		this.timer = config.timer == null ? HashedWheelTimer.shared () : config.timer;
+	}
+
+	@Override
+	public CompletableFuture<Void> call (Request source, Chain<Request, CompletableFuture<Void>> chain) throws Exception {
+		Duration budget = budget (source, chain.identifier ());
+		if ( budget == null ) { return chain.apply (source); }
+
+		if ( budget.isZero () || budget.isNegative () ) {
+			throw new GatewayTimeoutException ("No time left to handle the request.");
+		}
+
+		Deadline deadline = Deadline.after (budget);
+		source.context ().put (Deadline.CONTEXT_KEY, deadline);
+
+		TimedRequest request = new TimedRequest (source);
+		CompletableFuture<Void> result = new CompletableFuture<> ();
+		HashedWheelTimer.Timeout timeout = timer.schedule (() -> {
+			if ( ! request.expire () ) { return; }
+			result.completeExceptionally (
+				new GatewayTimeoutException ("Request did not complete within " + budget.toMillis () + "ms.")
+			);
+		}, budget);
+
+		CompletableFuture<Void> future;
+		try { future = chain.apply (request); }
+		catch ( RuntimeException e ) { timeout.cancel (); throw e; }
+
+		if ( future == null ) {
+			timeout.cancel ();
+			return null;
+		}
+
+		future.whenComplete ((value, throwable) -> {
+			timeout.cancel ();
+			if ( throwable != null ) { result.completeExceptionally (throwable); }
+			else { result.complete (value); }
+		});
+		result.whenComplete ((value, throwable) -> future.cancel (true));
+
+		return result;
+	}
+
+
+	private Duration budget (Request source, String identifier) {
+		Duration budget = identifier == null ? this.budget : routes.getOrDefault (identifier, this.budget);
+		if ( ! acceptHeader ) { return budget; }
+
+		String header = Headers.get (source.headers (), Deadline.HEADER);
+		if ( header == null ) { return budget; }
+
+		try {
+			Duration requested = Duration.ofMillis (Long.parseLong (header.trim ()));
+			return budget == null || requested.compareTo (budget) < 0 ? requested : budget;
+		} catch ( NumberFormatException e ) {
+			return budget;
+		}
+	}
+
+	private static class TimedRequest extends RequestWrapper {
+		private boolean replied = false;
+		private boolean expired = false;
+
+		private TimedRequest (Request request) {
+			super (request);
+		}
+
+		/* Marks the request as timed out, unless the handler already started its reply. */
+		private synchronized boolean expire () {
+			if ( replied ) { return false; }
+			expired = true;
+			return true;
+		}
+
+		private synchronized void replying () {
+			if ( expired ) { throw new GatewayTimeoutException ("The request already timed out."); }
+			replied = true;
+		}
+
+		@Override public synchronized void setHeader (String header, String value) {
+			if ( ! expired ) { super.setHeader (header, value); }
+		}
+
+		@Override public synchronized void setStatus (int status) {
+			if ( ! expired ) { super.setStatus (status); }
+		}
+
+		@Override public OutputStream outputstream () throws IOException {
+			replying ();
+			return super.outputstream ();
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, Object payload) {
+			replying ();
+			return super.reply (status, headers, payload);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, InputStream in) {
+			replying ();
+			return super.reply (status, headers, in);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, byte [] payload) {
+			replying ();
+			return super.reply (status, headers, payload);
+		}
+	}
+
+}
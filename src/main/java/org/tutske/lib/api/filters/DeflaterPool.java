@@ -0,0 +1,33 @@
+package org.tutske.lib.api.filters;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+
+
+public class DeflaterPool {
+
+	private final int level;
+	private final boolean nowrap;
+	private final ArrayBlockingQueue<Deflater> idle;
+
+	public DeflaterPool (int level, boolean nowrap, int size) {
+		this.level = level;
+		this.nowrap = nowrap;
+		this.idle = new ArrayBlockingQueue<> (Math.max (1, size));
+	}
+
+	public Deflater acquire () {
+		Deflater deflater = idle.poll ();
+		return deflater != null ? deflater : new Deflater (level, nowrap);
+	}
+
+	public void release (Deflater deflater) {
+		deflater.reset ();
+		if ( ! idle.offer (deflater) ) { deflater.end (); }
+	}
+
+	public int idle () {
+		return idle.size ();
+	}
+
+}
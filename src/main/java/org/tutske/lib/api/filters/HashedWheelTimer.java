@@ -0,0 +1,118 @@
+package org.tutske.lib.api.filters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Runs delayed tasks from a single thread. Timeouts are put in the bucket of
+ * the tick at which they expire; each tick only the current bucket is
+ * visited, so scheduling and cancelling are constant time regardless of how
+ * many timeouts are pending.
+ */
+public class HashedWheelTimer implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger (HashedWheelTimer.class);
+	private static volatile HashedWheelTimer shared;
+
+	public static HashedWheelTimer shared () {
+		if ( shared == null ) {
+			synchronized ( HashedWheelTimer.class ) {
+				if ( shared == null ) { shared = new HashedWheelTimer (Duration.ofMillis (10), 512); }
+			}
+		}
+		return shared;
+	}
+
+	public static class Timeout {
+		private final Runnable task;
+		private final long deadline;
+		private long rounds;
+		private volatile boolean cancelled = false;
+
+		private Timeout (Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		public void cancel () { cancelled = true; }
+		public boolean isCancelled () { return cancelled; }
+	}
+
+	private final long tick;
+	private final long start;
+	private final LinkedList<Timeout> [] wheel;
+	private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<> ();
+	private final Thread worker;
+	private volatile boolean running = true;
+
+	@SuppressWarnings ("unchecked")
+	public HashedWheelTimer (Duration tick, int size) {
+		this.tick = Math.max (1, tick.toNanos ());
+		this.start = System.nanoTime ();
+		this.wheel = new LinkedList [Integer.highestOneBit (Math.max (1, size))];
+		for ( int i = 0; i < wheel.length; i++ ) { wheel[i] = new LinkedList<> (); }
+
+		this.worker = new Thread (this::run, "hashed-wheel-timer");
+		this.worker.setDaemon (true);
+		this.worker.start ();
+	}
+
+	public Timeout schedule (Runnable task, Duration delay) {
+		Timeout timeout = new Timeout (task, System.nanoTime () - start + delay.toNanos ());
+		pending.add (timeout);
+		return timeout;
+	}
+
+	@Override
+	public void close () {
+		running = false;
+		worker.interrupt ();
+	}
+
+	private void run () {
+		long current = 0;
+		while ( running ) {
+			long wait = (current + 1) * tick - (System.nanoTime () - start);
+			if ( wait > 0 ) {
+				LockSupport.parkNanos (this, wait);
+				continue;
+			}
+
+			transfer (current);
+			expire (wheel[(int) (current & (wheel.length - 1))]);
+			current++;
+		}
+	}
+
+	private void transfer (long current) {
+		for ( Timeout timeout = pending.poll (); timeout != null; timeout = pending.poll () ) {
+			if ( timeout.cancelled ) { continue; }
+
+			long calculated = timeout.deadline / tick;
+			timeout.rounds = Math.max (0, (calculated - current) / wheel.length);
+			wheel[(int) (Math.max (calculated, current) & (wheel.length - 1))].add (timeout);
+		}
+	}
+
+	private void expire (LinkedList<Timeout> bucket) {
+		Iterator<Timeout> it = bucket.iterator ();
+		while ( it.hasNext () ) {
+			Timeout timeout = it.next ();
+			if ( timeout.cancelled ) { it.remove (); }
+			else if ( timeout.rounds > 0 ) { timeout.rounds--; }
+			else {
+				it.remove ();
+				try { timeout.task.run (); }
+				catch ( Throwable e ) { logger.warn ("Timeout task failed", e); }
+			}
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.tutske.lib.api.filters;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+public class Headers {
+
+	public static String get (Map<String, String> headers, String name) {
+		if ( headers == null ) { return null; }
+
+		String value = headers.get (name);
+		if ( value != null ) { return value; }
+
+		for ( Map.Entry<String, String> entry : headers.entrySet () ) {
+			if ( name.equalsIgnoreCase (entry.getKey ()) ) { return entry.getValue (); }
+		}
+
+		return null;
+	}
+
+	public static Object find (Map<String, ?> headers, String name) {
+		if ( headers == null || headers.isEmpty () ) { return null; }
+
+		for ( Map.Entry<String, ?> entry : headers.entrySet () ) {
+			if ( name.equalsIgnoreCase (entry.getKey ()) ) { return entry.getValue (); }
+		}
+
+		return null;
+	}
+
+	/* Combines two Vary values, keeping every header name once. */
+	public static String vary (Object existing, Object added) {
+		if ( existing == null ) { return added == null ? null : String.valueOf (added); }
+		if ( added == null ) { return String.valueOf (existing); }
+
+		Set<String> seen = new LinkedHashSet<> ();
+		StringBuilder builder = new StringBuilder ();
+		for ( String value : new String [] { String.valueOf (existing), String.valueOf (added) } ) {
+			for ( String name : value.split (",") ) {
+				String trimmed = name.trim ();
+				if ( trimmed.equals ("*") ) { return "*"; }
+				if ( trimmed.isEmpty () || ! seen.add (trimmed.toLowerCase (Locale.ROOT)) ) { continue; }
+				if ( builder.length () > 0 ) { builder.append (", "); }
+				builder.append (trimmed);
+			}
+		}
+		return builder.toString ();
+	}
+
+}
@@ -0,0 +1,178 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Method;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+import org.tutske.lib.api.exceptions.UnprocessableEntityException;
+import org.tutske.lib.utils.Exceptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+
+/**
+ * Stores the reply of unsafe requests that carry an idempotency key and
+ * replays it when the same key is used again. Keys are scoped to the caller
+ * and bound to a fingerprint of the body, so reusing a key for a different
+ * payload is rejected. Duplicates that arrive while the first request is still
+ * running wait for its reply. Server errors are not stored, so those requests
+ * can be retried.
+ */
+public class Idempotency implements Filter<Request, CompletableFuture<Void>> {
+
+	public static class Config {
+		protected String header = "Idempotency-Key";
+		protected EnumSet<Method> methods = EnumSet.of (Method.POST, Method.PUT, Method.PATCH, Method.DELETE);
+		protected Duration ttl = Duration.ofHours (24);
+		protected int maxKeyLength = 255;
+		protected IdempotencyStore store = null;
+		protected int maxEntries = 10_000;
+		protected Function<Request, String> scope = null;
+		protected boolean fingerprint = true;
+		protected long maxFingerprintSize = 16 * 1024 * 1024;
+
+		public Config () {}
+
+		public Config (Duration ttl) {
+			this.ttl = ttl;
+		}
+	}
+
+	public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+	private final String header;
+	private final EnumSet<Method> methods;
+	private final Duration ttl;
+	private final int maxKeyLength;
+	private final IdempotencyStore store;
+	private final Function<Request, String> scope;
+	private final boolean fingerprint;
+	private final long maxFingerprintSize;
+	private final ConcurrentHashMap<String, CompletableFuture<IdempotencyStore.Stored>> inflight = new ConcurrentHashMap<> ();
+
+	public Idempotency () {
+		this (new Config ());
+	}
+
+	public Idempotency (Config config) {
+		this.header = config.header;
+		this.methods = EnumSet.copyOf (config.methods);
+		this.ttl = config.ttl;
+		this.maxKeyLength = config.maxKeyLength;
+		this.store = config.store != null ? config.store : new InMemoryIdempotencyStore (config.maxEntries);
+		this.scope = config.scope;
+		this.fingerprint = config.fingerprint;
+		this.maxFingerprintSize = config.maxFingerprintSize;
+	}
+
+	@Override
+	public CompletableFuture<Void> call (Request source, Chain<Request, CompletableFuture<Void>> chain) throws Exception {
+		if ( ! methods.contains (source.method ()) ) { return chain.apply (source); }
+
+		String value = Headers.get (source.headers (), header);
+		if ( value == null || value.isEmpty () ) { return chain.apply (source); }
+		if ( value.length () > maxKeyLength ) { throw new InputException ("Idempotency key is too long."); }
+
+		String key = key (scope == null ? null : scope.apply (source), source.method ().name (), source.uri (), value);
+		String fingerprint = this.fingerprint ? fingerprint (source) : null;
+
+		IdempotencyStore.Stored stored = store.get (key);
+		if ( stored != null ) { return replay (source, fingerprint, stored); }
+
+		CompletableFuture<IdempotencyStore.Stored> shared = new CompletableFuture<> ();
+		CompletableFuture<IdempotencyStore.Stored> existing = inflight.putIfAbsent (key, shared);
+		if ( existing != null ) { return existing.thenCompose (other -> replay (source, fingerprint, other)); }
+
+		/* The first request may have finished between the lookup and taking the key. */
+		stored = store.get (key);
+		if ( stored != null ) {
+			inflight.remove (key, shared);
+			shared.complete (stored);
+			return replay (source, fingerprint, stored);
+		}
+
+		ReplyRecorder recorder = new ReplyRecorder (source);
+		CompletableFuture<Void> future;
+
+		try { future = chain.apply (recorder); }
+		catch ( RuntimeException e ) {
+			inflight.remove (key, shared);
+			shared.completeExceptionally (e);
+			throw e;
+		}
+
+		if ( future == null ) {
+			inflight.remove (key, shared);
+			shared.completeExceptionally (new NullPointerException ("Chain did not produce a reply"));
+			return null;
+		}
+
+		return future
+			.thenApply (ignore -> {
+				IdempotencyStore.Stored reply = new IdempotencyStore.Stored (fingerprint, recorder.recorded ().serialized (source.mapper ()));
+				if ( reply.reply.status () < 500 ) { store.put (key, reply, ttl); }
+				return reply;
+			})
+			.whenComplete ((reply, throwable) -> {
+				inflight.remove (key, shared);
+				if ( throwable != null ) { shared.completeExceptionally (throwable); }
+				else { shared.complete (reply); }
+			})
+			.thenCompose (ignore -> recorder.recorded ().replay (source));
+	}
+
+	public int inflight () {
+		return inflight.size ();
+	}
+
+	private CompletableFuture<Void> replay (Request request, String fingerprint, IdempotencyStore.Stored stored) {
+		if ( ! Objects.equals (fingerprint, stored.fingerprint) ) {
+			throw new UnprocessableEntityException ("Idempotency key was used for a different request.");
+		}
+
+		request.setHeader (REPLAYED_HEADER, "true");
+		return stored.reply.replay (request);
+	}
+
+	/* Length prefixed, so parts that contain separators can not run into each other. */
+	private static String key (String ... parts) {
+		StringBuilder builder = new StringBuilder ();
+		for ( String part : parts ) {
+			if ( part == null ) { builder.append ("-;"); }
+			else { builder.append (part.length ()).append (':').append (part).append (';'); }
+		}
+		return builder.toString ();
+	}
+
+	/* Hashes the body as it streams by, the transport keeps it around for the handler. */
+	private String fingerprint (Request request) {
+		try ( InputStream in = request.inputstream () ) {
+			MessageDigest digest = MessageDigest.getInstance ("SHA-256");
+			byte [] buffer = new byte [8 * 1024];
+			long total = 0;
+
+			for ( int read = in.read (buffer); read >= 0; read = in.read (buffer) ) {
+				total += read;
+				if ( total > maxFingerprintSize ) { throw new PayloadTooLargeException ("Request body is too large to be made idempotent."); }
+				digest.update (buffer, 0, read);
+			}
+
+			return Base64.getEncoder ().encodeToString (digest.digest ());
+		} catch ( IOException | NoSuchAlgorithmException e ) {
+			throw Exceptions.wrap (e);
+		}
+	}
+
+}
@@ -0,0 +1,21 @@
+package org.tutske.lib.api.filters;
+
+import java.time.Duration;
+
+
+public interface IdempotencyStore {
+
+	public static class Stored {
+		public final String fingerprint;
+		public final RecordedReply reply;
+
+		public Stored (String fingerprint, RecordedReply reply) {
+			this.fingerprint = fingerprint;
+			this.reply = reply;
+		}
+	}
+
+	public Stored get (String key);
+	public void put (String key, Stored stored, Duration ttl);
+
+}
@@ -0,0 +1,64 @@
+package org.tutske.lib.api.filters;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+	private final Clock clock;
+	private final int maxEntries;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<> ();
+
+	public InMemoryIdempotencyStore (int maxEntries) {
+		this (Clock.systemUTC (), maxEntries);
+	}
+
+	public InMemoryIdempotencyStore (Clock clock, int maxEntries) {
+		this.clock = clock;
+		this.maxEntries = maxEntries;
+	}
+
+	@Override
+	public synchronized Stored get (String key) {
+		Entry entry = entries.get (key);
+		if ( entry == null ) { return null; }
+		if ( entry.expires <= clock.millis () ) {
+			entries.remove (key);
+			return null;
+		}
+		return entry.stored;
+	}
+
+	@Override
+	public synchronized void put (String key, Stored stored, Duration ttl) {
+		long now = clock.millis ();
+		entries.remove (key);
+		entries.put (key, new Entry (stored, now + ttl.toMillis ()));
+
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet ().iterator ();
+		while ( it.hasNext () ) {
+			Entry eldest = it.next ().getValue ();
+			if ( entries.size () <= maxEntries && eldest.expires > now ) { break; }
+			it.remove ();
+		}
+	}
+
+	public synchronized int size () {
+		return entries.size ();
+	}
+
+	private static class Entry {
+		private final Stored stored;
+		private final long expires;
+
+		private Entry (Stored stored, long expires) {
+			this.stored = stored;
+			this.expires = expires;
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.jwt.JsonWebToken;
+
+import java.util.function.Function;
+
+
+public class Keys {
+
+	private static final String BEARER = "Bearer ";
+
+	public static <REQ extends Request> Function<REQ, String> header (String header) {
+		return req -> Headers.get (req.headers (), header);
+	}
+
+	public static <REQ extends Request> Function<REQ, String> pathParam (String param) {
+		return req -> req.pathParams ().get (param);
+	}
+
+	public static <REQ extends Request> Function<REQ, String> queryParam (String param) {
+		return req -> req.queryParams ().get (param);
+	}
+
+	public static <REQ extends Request> Function<REQ, String> jwtSubject () {
+		return jwtSubject ("Authorization");
+	}
+
+	public static <REQ extends Request> Function<REQ, String> jwtSubject (String header) {
+		return req -> {
+			String value = Headers.get (req.headers (), header);
+			if ( value == null || value.isEmpty () ) { return null; }
+
+			String token = value.regionMatches (true, 0, BEARER, 0, BEARER.length ()) ?
+				value.substring (BEARER.length ()) :
+				value;
+
+			try { return JsonWebToken.fromTokenString (token).payload ().path ("sub").textValue (); }
+			catch ( Exception ignore ) { return null; }
+		};
+	}
+
+}
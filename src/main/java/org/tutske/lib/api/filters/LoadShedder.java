@@ -0,0 +1,94 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Priority;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.exceptions.ResponseException;
+import org.tutske.lib.api.exceptions.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Sheds requests for low priority routes in the way CoDel drops packets: the
+ * time a request waited before reaching the chain is compared against a
+ * target, and shedding starts once every request has been over that target
+ * for a full interval. The first request below target ends the shedding.
+ */
+public class LoadShedder<REQ extends Request, RES> implements Filter<REQ, RES> {
+
+	public static class Config {
+		protected Duration target = Duration.ofMillis (50);
+		protected Duration interval = Duration.ofMillis (500);
+		protected EnumSet<Priority> shed = EnumSet.of (Priority.LOW);
+
+		public Config () {}
+
+		public Config (Duration target, Duration interval) {
+			this.target = target;
+			this.interval = interval;
+		}
+	}
+
+	private static final ResponseException SHED = new ServiceUnavailableException ("Server is overloaded.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	private final long target;
+	private final long interval;
+	private final EnumSet<Priority> priorities;
+	private final LongAdder shed = new LongAdder ();
+
+	private volatile boolean aboveTarget = false;
+	private volatile long firstAboveTime = 0;
+	private volatile boolean shedding = false;
+
+	public LoadShedder (Config config) {
+		this.target = config.target.toNanos ();
+		this.interval = config.interval.toNanos ();
+		this.priorities = EnumSet.copyOf (config.shed);
+	}
+
+	@Override
+	public RES call (REQ source, Chain<REQ, RES> chain) throws Exception {
+		long now = System.nanoTime ();
+		boolean shedding = update (now, now - source.arrival ());
+
+		if ( shedding && priorities.contains (chain.priority ()) ) {
+			shed.increment ();
+			source.setHeader ("Retry-After", "1");
+			throw SHED;
+		}
+
+		return chain.apply (source);
+	}
+
+	public boolean shedding () {
+		return shedding;
+	}
+
+	public long shed () {
+		return shed.sum ();
+	}
+
+	private boolean update (long now, long sojourn) {
+		if ( sojourn < target ) {
+			if ( aboveTarget ) { aboveTarget = false; }
+			if ( shedding ) { shedding = false; }
+			return false;
+		}
+
+		if ( ! aboveTarget ) {
+			firstAboveTime = now + interval;
+			aboveTarget = true;
+			return shedding;
+		}
+
+		if ( ! shedding && now - firstAboveTime >= 0 ) { shedding = true; }
+		return shedding;
+	}
+
+}
@@ -0,0 +1,127 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.exceptions.ResponseException;
+import org.tutske.lib.api.exceptions.TooManyRequestsException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+
+/**
+ * Token bucket per key, stored as a single theoretical arrival time (GCRA) so
+ * that taking a token is one compare and set and refilling happens lazily.
+ * Keys without a value, and new keys while all stripes are full, share one
+ * bucket.
+ */
+public class RateLimiter<REQ extends Request, RES> implements Filter<REQ, RES> {
+
+	public static class Config {
+		protected int requests = 100;
+		protected Duration period = Duration.ofSeconds (1);
+		protected int stripes = 16;
+		protected int maxKeys = 10_000;
+		protected Duration idle = Duration.ofMinutes (5);
+
+		public Config () {}
+
+		public Config (int requests, Duration period) {
+			this.requests = requests;
+			this.period = period;
+		}
+	}
+
+	private static final ResponseException REJECTED = new TooManyRequestsException ("Rate limit exceeded.") {
+		@Override public synchronized Throwable fillInStackTrace () { return this; }
+	};
+
+	private final Clock clock;
+	private final Function<? super REQ, String> key;
+
+	private final long interval;
+	private final long tolerance;
+	private final long idle;
+	private final int perStripe;
+	private final String retryAfter;
+
+	private final Stripe [] stripes;
+	private final AtomicLong shared = new AtomicLong ();
+
+	public RateLimiter (Function<? super REQ, String> key, Config config) {
+		this (Clock.systemUTC (), key, config);
+	}
+
+	public RateLimiter (Clock clock, Function<? super REQ, String> key, Config config) {
+		if ( config.requests < 1 ) { throw new IllegalArgumentException ("requests should be positive"); }
+
+		this.clock = clock;
+		this.key = key;
+
+		this.interval = Math.max (1, TimeUnit.NANOSECONDS.toMicros (config.period.toNanos ()) / config.requests);
+		this.tolerance = interval * (config.requests - 1);
+		this.idle = TimeUnit.NANOSECONDS.toMicros (config.idle.toNanos ());
+		this.retryAfter = String.valueOf (Math.max (1, (interval + 999_999) / 1_000_000));
+
+		int size = Integer.highestOneBit (Math.max (1, config.stripes));
+		this.stripes = new Stripe [size];
+		this.perStripe = Math.max (1, config.maxKeys / size);
+		for ( int i = 0; i < size; i++ ) { stripes[i] = new Stripe (); }
+	}
+
+	@Override
+	public RES call (REQ source, Chain<REQ, RES> chain) throws Exception {
+		long now = TimeUnit.MILLISECONDS.toMicros (clock.millis ());
+
+		if ( ! acquire (bucket (key.apply (source), now), now) ) {
+			source.setHeader ("Retry-After", retryAfter);
+			throw REJECTED;
+		}
+
+		return chain.apply (source);
+	}
+
+	private boolean acquire (AtomicLong bucket, long now) {
+		while ( true ) {
+			long tat = bucket.get ();
+			long base = Math.max (tat, now);
+			if ( base - now > tolerance ) { return false; }
+			if ( bucket.compareAndSet (tat, base + interval) ) { return true; }
+		}
+	}
+
+	private AtomicLong bucket (String key, long now) {
+		if ( key == null ) { return shared; }
+
+		int h = key.hashCode ();
+		Stripe stripe = stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+
+		AtomicLong bucket = stripe.buckets.get (key);
+		if ( bucket != null ) { return bucket; }
+
+		if ( stripe.buckets.size () >= perStripe ) {
+			sweep (stripe, now);
+			if ( stripe.buckets.size () >= perStripe ) { return shared; }
+		}
+
+		return stripe.buckets.computeIfAbsent (key, k -> new AtomicLong ());
+	}
+
+	private void sweep (Stripe stripe, long now) {
+		if ( ! stripe.sweeping.compareAndSet (false, true) ) { return; }
+		try { stripe.buckets.values ().removeIf (bucket -> bucket.get () + idle < now); }
+		finally { stripe.sweeping.set (false); }
+	}
+
+	private static class Stripe {
+		private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<> ();
+		private final AtomicBoolean sweeping = new AtomicBoolean ();
+	}
+
+}
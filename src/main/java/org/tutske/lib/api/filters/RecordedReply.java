@@ -0,0 +1,75 @@
+package org.tutske.lib.api.filters;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.utils.Exceptions;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+public class RecordedReply {
+
+	private final int status;
+	private final Map<String, String> headers;
+	private final boolean replied;
+	private final int replyStatus;
+	private final Map<String, ?> replyHeaders;
+	private final Object payload;
+	private final byte [] bytes;
+
+	public RecordedReply (
+		int status, Map<String, String> headers,
+		boolean replied, int replyStatus, Map<String, ?> replyHeaders, Object payload, byte [] bytes
+	) {
+		this.status = status;
+		this.headers = Collections.unmodifiableMap (new LinkedHashMap<> (headers));
+		this.replied = replied;
+		this.replyStatus = replyStatus;
+		this.replyHeaders = Collections.unmodifiableMap (new LinkedHashMap<> (replyHeaders));
+		this.payload = payload;
+		this.bytes = bytes;
+	}
+
+	public int status () {
+		return status != 0 ? status : replied ? replyStatus : 200;
+	}
+
+	public Map<String, String> headers () {
+		Map<String, String> all = new LinkedHashMap<> (headers);
+		for ( Map.Entry<String, ?> header : replyHeaders.entrySet () ) {
+			if ( header.getKey () == null ) { continue; }
+			all.putIfAbsent (header.getKey (), String.valueOf (header.getValue ()));
+		}
+		return all;
+	}
+
+	public boolean hasBytes () { return bytes != null; }
+	public byte [] bytes () { return bytes; }
+	public Object payload () { return payload; }
+
+	public RecordedReply serialized (ObjectMapper mapper) {
+		if ( ! replied || bytes != null ) { return this; }
+
+		Map<String, Object> replyHeaders = new LinkedHashMap<> (this.replyHeaders);
+		if ( Headers.find (replyHeaders, "Content-Type") == null && Headers.get (headers, "Content-Type") == null ) {
+			replyHeaders.put ("Content-Type", "application/json");
+		}
+
+		try { return new RecordedReply (status, headers, true, replyStatus, replyHeaders, null, mapper.writeValueAsBytes (payload)); }
+		catch ( JsonProcessingException e ) { throw Exceptions.wrap (e); }
+	}
+
+	public CompletableFuture<Void> replay (Request request) {
+		headers.forEach (request::setHeader);
+		if ( status != 0 ) { request.setStatus (status); }
+
+		if ( ! replied ) { return CompletableFuture.completedFuture (null); }
+		if ( bytes != null ) { return request.reply (replyStatus, replyHeaders, bytes); }
+		return request.reply (replyStatus, replyHeaders, payload);
+	}
+
+}
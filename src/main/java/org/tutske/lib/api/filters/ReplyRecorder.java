@@ -0,0 +1,78 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.RequestWrapper;
+import org.tutske.lib.utils.Exceptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+
+public class ReplyRecorder extends RequestWrapper {
+
+	private final Map<String, String> headers = new LinkedHashMap<> ();
+	private int status = 0;
+
+	private boolean replied = false;
+	private int replyStatus;
+	private Map<String, ?> replyHeaders = Collections.emptyMap ();
+	private Object payload;
+	private byte [] bytes;
+	private ByteArrayOutputStream out;
+
+	public ReplyRecorder (Request request) {
+		super (request);
+	}
+
+	@Override public void setHeader (String header, String value) {
+		headers.put (header, value);
+	}
+
+	@Override public void setStatus (int status) {
+		this.status = status;
+	}
+
+	@Override public OutputStream outputstream () {
+		if ( out == null ) { out = new ByteArrayOutputStream (); }
+		return out;
+	}
+
+	@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, Object payload) {
+		record (status, headers, payload, null);
+		return CompletableFuture.completedFuture (null);
+	}
+
+	@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, InputStream in) {
+		try ( InputStream stream = in ) { record (status, headers, null, stream.readAllBytes ()); }
+		catch ( IOException e ) { throw Exceptions.wrap (e); }
+		return CompletableFuture.completedFuture (null);
+	}
+
+	@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, byte [] payload) {
+		record (status, headers, null, payload);
+		return CompletableFuture.completedFuture (null);
+	}
+
+	public RecordedReply recorded () {
+		if ( ! replied && out != null ) {
+			return new RecordedReply (status, headers, true, 200, Collections.emptyMap (), null, out.toByteArray ());
+		}
+		return new RecordedReply (status, headers, replied, replyStatus, replyHeaders, payload, bytes);
+	}
+
+	private void record (int status, Map<String, ?> headers, Object payload, byte [] bytes) {
+		if ( replied ) { return; }
+		this.replied = true;
+		this.replyStatus = status;
+		this.replyHeaders = headers;
+		this.payload = payload;
+		this.bytes = bytes;
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.tutske.lib.api.filters;
+
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Filter;
+import org.tutske.lib.api.Method;
+import org.tutske.lib.api.Request;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Runs the chain once for concurrent requests with the same method, path and
+ * selected query parameters. The reply of that run is recorded and replayed on
+ * every request that joined while it was in flight.
+ */
+public class SingleFlight implements Filter<Request, CompletableFuture<Void>> {
+
+	private final EnumSet<Method> methods;
+	private final List<String> params;
+	private final ConcurrentHashMap<List<Object>, CompletableFuture<RecordedReply>> inflight = new ConcurrentHashMap<> ();
+
+	public SingleFlight (String ... params) {
+		this (EnumSet.of (Method.GET, Method.HEAD), Arrays.asList (params));
+	}
+
+	public SingleFlight (EnumSet<Method> methods, List<String> params) {
+		this.methods = methods;
+		this.params = params;
+	}
+
+	@Override
+	public CompletableFuture<Void> call (Request source, Chain<Request, CompletableFuture<Void>> chain) throws Exception {
+		if ( ! methods.contains (source.method ()) ) { return chain.apply (source); }
+
+		List<Object> key = key (source);
+		CompletableFuture<RecordedReply> shared = new CompletableFuture<> ();
+		CompletableFuture<RecordedReply> existing = inflight.putIfAbsent (key, shared);
+
+		if ( existing != null ) {
+			return existing.thenCompose (reply -> reply.replay (source));
+		}
+
+		ReplyRecorder recorder = new ReplyRecorder (source);
+		CompletableFuture<Void> future;
+
+		try { future = chain.apply (recorder); }
+		catch ( RuntimeException e ) {
+			inflight.remove (key, shared);
+			shared.completeExceptionally (e);
+			throw e;
+		}
+
+		if ( future == null ) {
+			inflight.remove (key, shared);
+			shared.completeExceptionally (new NullPointerException ("Chain did not produce a reply"));
+			return null;
+		}
+
+		return future
+			.whenComplete ((ignore, throwable) -> {
+				inflight.remove (key, shared);
+				if ( throwable != null ) { shared.completeExceptionally (throwable); }
+				else { shared.complete (recorder.recorded ()); }
+			})
+			.thenCompose (ignore -> recorder.recorded ().replay (source));
+	}
+
+	public int inflight () {
+		return inflight.size ();
+	}
+
+	/* A structured key, so values containing separators can not collide with other parameters. */
+	private List<Object> key (Request request) {
+		List<Object> key = new ArrayList<> (params.size () + 2);
+		key.add (request.method ());
+		key.add (request.uri ());
+		for ( String param : params ) { key.add (request.queryParams ().get (param)); }
+		return key;
+	}
+
+}
@@ -210,6 +210,38 @@ public class APIChainTest {
 		verify (notify, times (0)).accept ("john");
 	}
 
+	@Test
+	public void it_should_expose_the_route_identifier_to_filters () {
+		ApiRouter<String, String> router = API.configure (api -> {
+			api.filter ("/::path", (name, chain) -> chain.identifier ());
+			api.route ("users", "/users", name -> name);
+		});
+
+		Function<String, String> chain = router.createChain (GET, "current", "/users", API.splitParts ("/users"));
+		assertThat (chain.apply ("john"), is ("users"));
+	}
+
+	@Test
+	public void it_should_expose_the_route_priority_to_filters () {
+		ApiRouter<String, String> router = API.configure (api -> {
+			api.filter ("/::path", (name, chain) -> chain.priority ().name ());
+			api.route ("reports", "/reports", EnumSet.of (GET), Priority.LOW, name -> name);
+		});
+
+		Function<String, String> chain = router.createChain (GET, "current", "/reports", API.splitParts ("/reports"));
+		assertThat (chain.apply ("john"), is ("LOW"));
+		assertThat (router.getPriority ("reports"), is (Priority.LOW));
+	}
+
+	@Test
+	public void it_should_give_routes_normal_priority_by_default () {
+		ApiRouter<String, String> router = API.configure (api -> {
+			api.route ("users", "/users", name -> name);
+		});
+
+		assertThat (router.getPriority ("users"), is (Priority.NORMAL));
+	}
+
 	private <REQ, RES> Filter<REQ, RES> filter (Consumer<REQ> consumer) {
 		return (req, chain) -> {
 			consumer.accept (req);
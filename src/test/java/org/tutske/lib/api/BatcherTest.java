@@ -0,0 +1,145 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.tutske.lib.api.Method.GET;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.exceptions.NotFoundException;
+import org.tutske.lib.json.Json;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+
+public class BatcherTest {
+
+	private final List<List<String>> batches = new CopyOnWriteArrayList<> ();
+
+	private final Function<List<String>, CompletableFuture<Map<String, String>>> lookup = keys -> {
+		batches.add (keys);
+		return CompletableFuture.completedFuture (keys.stream ()
+			.filter (key -> ! key.equals ("missing"))
+			.collect (Collectors.toMap (key -> key, key -> "value-" + key))
+		);
+	};
+
+	@Test
+	public void it_should_load_a_single_key () throws Exception {
+		Batcher<String, String> batcher = new Batcher<> (lookup::apply, new Batcher.Config ());
+		assertThat (batcher.load ("a").get (), is ("value-a"));
+	}
+
+	@Test
+	public void it_should_combine_concurrent_loads_into_one_batch () throws Exception {
+		Batcher<String, String> batcher = new Batcher<> (lookup::apply, new Batcher.Config (Duration.ofMillis (50), 10));
+
+		CompletableFuture<String> a = batcher.load ("a");
+		CompletableFuture<String> b = batcher.load ("b");
+
+		assertThat (a.get (), is ("value-a"));
+		assertThat (b.get (), is ("value-b"));
+		assertThat (batches, hasSize (1));
+		assertThat (batches.get (0), contains ("a", "b"));
+	}
+
+	@Test
+	public void it_should_ask_for_duplicate_keys_only_once () throws Exception {
+		Batcher<String, String> batcher = new Batcher<> (lookup::apply, new Batcher.Config (Duration.ofMillis (50), 10));
+
+		CompletableFuture<String> first = batcher.load ("a");
+		CompletableFuture<String> second = batcher.load ("a");
+
+		assertThat (second.get (), is (first.get ()));
+		assertThat (batches.get (0), hasSize (1));
+	}
+
+	@Test
+	public void it_should_dispatch_as_soon_as_the_batch_is_full () throws Exception {
+		Batcher<String, String> batcher = new Batcher<> (lookup::apply, new Batcher.Config (Duration.ofSeconds (10), 2));
+
+		CompletableFuture<String> a = batcher.load ("a");
+		CompletableFuture<String> b = batcher.load ("b");
+
+		assertThat (a.isDone () && b.isDone (), is (true));
+		assertThat (batcher.batches (), is (1L));
+	}
+
+	@Test
+	public void it_should_fail_every_load_when_the_batch_fails () {
+		Batcher<String, String> batcher = new Batcher<> (keys -> {
+			throw new IllegalStateException ("database is down");
+		}, new Batcher.Config (Duration.ofMillis (50), 2));
+
+		CompletableFuture<String> a = batcher.load ("a");
+		CompletableFuture<String> b = batcher.load ("b");
+
+		assertThrows (ExecutionException.class, a::get);
+		assertThrows (ExecutionException.class, b::get);
+	}
+
+	@Test
+	public void it_should_fail_every_load_when_the_batch_returns_no_future () {
+		Batcher<String, String> batcher = new Batcher<> (keys -> null, new Batcher.Config (Duration.ofMillis (50), 2));
+
+		CompletableFuture<String> a = batcher.load ("a");
+		CompletableFuture<String> b = batcher.load ("b");
+
+		ExecutionException exception = assertThrows (ExecutionException.class, a::get);
+		assertThat (exception.getCause (), instanceOf (NullPointerException.class));
+		assertThrows (ExecutionException.class, b::get);
+	}
+
+	@Test
+	public void it_should_reply_with_the_value_for_each_request () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/users/:id", Batcher.<Request, String, String> route (
+				req -> req.pathParams ().get ("id"),
+				keys -> lookup.apply (keys),
+				(req, value) -> req.reply (Json.objectNode ("value", value)),
+				new Batcher.Config (Duration.ofMillis (50), 10)
+			));
+		});
+
+		List<CompletableFuture<Client.Response>> responses = new ArrayList<> ();
+		for ( String id : new String [] { "a", "b", "c" } ) {
+			responses.add (client.request (GET, "/users/" + id).send ());
+		}
+
+		assertThat (responses.get (0).get ().body (), containsString ("value-a"));
+		assertThat (responses.get (2).get ().body (), containsString ("value-c"));
+		assertThat (batches.size (), lessThanOrEqualTo (2));
+	}
+
+	@Test
+	public void it_should_reply_not_found_for_missing_values () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/users/:id", Batcher.<Request, String, String> route (
+				req -> req.pathParams ().get ("id"),
+				keys -> lookup.apply (keys)
+			));
+		});
+
+		Client.Response response = client.request (GET, "/users/missing").send ().get ();
+		assertThat (response.status (), is (NotFoundException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_complete_with_null_for_missing_values () throws Exception {
+		Batcher<String, String> batcher = new Batcher<> (keys -> {
+			return CompletableFuture.completedFuture (Collections.emptyMap ());
+		}, new Batcher.Config ());
+
+		assertThat (batcher.load ("a").get (), nullValue ());
+	}
+
+}
@@ -0,0 +1,240 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+import org.tutske.lib.json.Json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.EnumSet;
+import java.util.Random;
+
+
+public class BodySpoolTest {
+
+	private final BodySpool spool = new BodySpool (new BodySpool.Config (64 * 1024, 100 * 1024) {{
+		chunkSize = 1024;
+		memoryThreshold = 4 * 1024;
+	}});
+
+	@Test
+	public void it_should_keep_small_bodies_in_memory () throws IOException {
+		byte [] content = content (3000);
+
+		try ( SpooledBody body = spool.read (new ByteArrayInputStream (content), -1) ) {
+			assertThat (body.spilled (), is (false));
+			assertThat (body.length (), is (3000L));
+			assertThat (body.bytes (), is (content));
+		}
+	}
+
+	@Test
+	public void it_should_spill_large_bodies_to_a_file () throws IOException {
+		byte [] content = content (20_000);
+
+		try ( SpooledBody body = spool.read (new ByteArrayInputStream (content), -1) ) {
+			assertThat (body.spilled (), is (true));
+			assertThat (body.bytes (), is (content));
+			assertThat (body.inputstream ().readAllBytes (), is (content));
+		}
+	}
+
+	@Test
+	public void it_should_keep_spilled_bodies_charged_until_the_last_stream_closes () throws IOException {
+		byte [] content = content (20_000);
+		SpooledBody body = spool.read (new ByteArrayInputStream (content), -1);
+		InputStream in = body.inputstream ();
+		body.close ();
+
+		assertThat (spool.inflight (), is (20_000L));
+		assertThat (in.readAllBytes (), is (content));
+		assertThat (spool.inflight (), is (0L));
+	}
+
+	@Test
+	public void it_should_expose_spilled_bodies_as_a_channel () throws IOException {
+		byte [] content = content (20_000);
+
+		try ( SpooledBody body = spool.read (new ByteArrayInputStream (content), -1) ) {
+			ReadableByteChannel channel = body.channel ();
+			ByteBuffer target = ByteBuffer.allocate (25_000);
+			while ( channel.read (target) >= 0 ) {}
+
+			target.flip ();
+			byte [] read = new byte [target.remaining ()];
+			target.get (read);
+			assertThat (read, is (content));
+		}
+	}
+
+	@Test
+	public void it_should_read_bodies_of_exactly_one_chunk () throws IOException {
+		byte [] content = content (1024);
+
+		try ( SpooledBody body = spool.read (new ByteArrayInputStream (content), -1) ) {
+			assertThat (body.bytes (), is (content));
+		}
+	}
+
+	@Test
+	public void it_should_expose_the_body_as_a_channel () throws IOException {
+		byte [] content = content (5000);
+
+		try ( SpooledBody body = spool.read (new ByteArrayInputStream (content), -1) ) {
+			ReadableByteChannel channel = body.channel ();
+			ByteBuffer target = ByteBuffer.allocate (6000);
+			while ( channel.read (target) >= 0 ) {}
+
+			target.flip ();
+			byte [] read = new byte [target.remaining ()];
+			target.get (read);
+			assertThat (read, is (content));
+		}
+	}
+
+	@Test
+	public void it_should_reject_bodies_over_the_maximum_size () {
+		assertThrows (PayloadTooLargeException.class, () -> {
+			spool.read (new ByteArrayInputStream (content (70 * 1024)), -1);
+		});
+		assertThat (spool.inflight (), is (0L));
+	}
+
+	@Test
+	public void it_should_reject_declared_lengths_over_the_maximum_size () {
+		assertThrows (PayloadTooLargeException.class, () -> {
+			spool.read (new ByteArrayInputStream (content (10)), 70 * 1024);
+		});
+	}
+
+	@Test
+	public void it_should_reject_bodies_when_the_budget_is_used () throws IOException {
+		try ( SpooledBody held = spool.read (new ByteArrayInputStream (content (60 * 1024)), -1) ) {
+			assertThrows (PayloadTooLargeException.class, () -> {
+				spool.read (new ByteArrayInputStream (content (60 * 1024)), -1);
+			});
+			assertThat (spool.inflight (), is (60 * 1024L));
+		}
+	}
+
+	@Test
+	public void it_should_return_the_budget_and_buffers_when_closed () throws IOException {
+		SpooledBody body = spool.read (new ByteArrayInputStream (content (3000)), -1);
+		assertThat (spool.inflight (), is (3 * 1024L));
+
+		body.close ();
+		body.close ();
+
+		assertThat (spool.inflight (), is (0L));
+		assertThat (spool.pooled (), greaterThan (0));
+	}
+
+	@Test
+	public void it_should_charge_the_budget_for_whole_buffers () throws IOException {
+		try ( SpooledBody body = spool.read (new ByteArrayInputStream (content (10)), -1) ) {
+			assertThat (spool.inflight (), is (1024L));
+		}
+		assertThat (spool.inflight (), is (0L));
+	}
+
+	@Test
+	public void it_should_not_hold_buffers_for_empty_bodies () throws IOException {
+		try ( SpooledBody body = spool.read (new ByteArrayInputStream (new byte [] {}), -1) ) {
+			assertThat (body.length (), is (0L));
+			assertThat (spool.inflight (), is (0L));
+		}
+	}
+
+	@Test
+	public void it_should_reject_bodies_before_allocating_past_the_budget () {
+		BodySpool small = new BodySpool (new BodySpool.Config (64 * 1024, 2 * 1024) {{
+			chunkSize = 1024;
+			memoryThreshold = 4 * 1024;
+		}});
+
+		assertThrows (PayloadTooLargeException.class, () -> {
+			small.read (new ByteArrayInputStream (content (2500)), -1);
+		});
+		assertThat (small.inflight (), is (0L));
+	}
+
+	@Test
+	public void it_should_keep_the_buffers_while_streams_are_open () throws IOException {
+		byte [] content = content (3000);
+		SpooledBody body = spool.read (new ByteArrayInputStream (content), -1);
+		InputStream in = body.inputstream ();
+		body.close ();
+
+		assertThat (spool.inflight (), is (3 * 1024L));
+		assertThat (in.readAllBytes (), is (content));
+		assertThat (spool.inflight (), is (0L));
+	}
+
+	@Test
+	public void it_should_return_the_buffers_when_the_last_stream_closes () throws IOException {
+		SpooledBody body = spool.read (new ByteArrayInputStream (content (3000)), -1);
+		InputStream first = body.inputstream ();
+		InputStream second = body.inputstream ();
+		body.close ();
+
+		first.close ();
+		assertThat (spool.inflight (), is (3 * 1024L));
+		second.close ();
+		assertThat (spool.inflight (), is (0L));
+	}
+
+	@Test
+	public void it_should_refuse_new_streams_once_closed () throws IOException {
+		SpooledBody body = spool.read (new ByteArrayInputStream (content (3000)), -1);
+		body.close ();
+
+		assertThrows (IllegalStateException.class, body::inputstream);
+		assertThrows (IllegalStateException.class, body::bytes);
+	}
+
+	@Test
+	public void it_should_echo_the_spooled_body_as_a_stream () throws Exception {
+		byte [] content = content (3000);
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", Filters.spoolBody (spool));
+			api.route ("/echo", EnumSet.of (Method.POST), req -> req.reply (req.inputstream ()));
+		});
+
+		Client.Response response = client.request (Method.POST, "/echo").send (new ByteArrayInputStream (content)).get ();
+
+		assertThat (response.bytes (), is (content));
+		assertThat (spool.inflight (), is (0L));
+	}
+
+	@Test
+	public void it_should_release_the_body_once_the_request_completes () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", Filters.spoolBody (spool));
+			api.route ("/echo", EnumSet.of (Method.POST), req -> {
+				JsonNode json = req.json ();
+				assertThat (spool.inflight (), greaterThan (0L));
+				return req.reply (json);
+			});
+		});
+
+		Client.Response response = client.request (Method.POST, "/echo").send (Json.objectNode ("id", 1)).get ();
+
+		assertThat (response.json (), is (Json.objectNode ("id", 1)));
+		assertThat (spool.inflight (), is (0L));
+	}
+
+	private byte [] content (int size) {
+		byte [] content = new byte [size];
+		new Random (size).nextBytes (content);
+		return content;
+	}
+
+}
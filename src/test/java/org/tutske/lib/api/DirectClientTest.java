@@ -4,15 +4,26 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import org.junit.jupiter.api.Test;
 import org.tutske.lib.api.data.EmptyResponse;
+import org.tutske.lib.api.exceptions.InputException;
 import org.tutske.lib.api.exceptions.NotFoundException;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
 import org.tutske.lib.json.Json;
+import org.tutske.lib.utils.Bag;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.stream.Stream;
 
 
 public class DirectClientTest {
@@ -135,4 +146,305 @@ public class DirectClientTest {
 		assertThat (response.json ().get ("title"), is (Json.valueOf ("Not Found")));
 	}
 
+	@Test
+	public void it_should_read_typed_parameters () throws Exception {
+		Client client = DirectClient.fromApi (api -> api.route ("/items/:id", req -> {
+			return req.reply (Json.objectNode (
+				"id", req.pathLong ("id", 0),
+				"limit", req.queryInt ("limit", 10),
+				"debug", req.queryBoolean ("debug", false)
+			));
+		}));
+
+		Client.Response response = client.request (Method.GET, "/items/42").withQuery ("limit", 25).send ().get ();
+
+		assertThat (response.json (), is (Json.objectNode ("id", 42L, "limit", 25, "debug", false)));
+	}
+
+	@Test
+	public void it_should_expose_the_raw_query_string () throws Exception {
+		Client client = DirectClient.fromApi (api -> api.route ("/items", req -> {
+			QueryString query = req.queryString ();
+			return req.reply (Json.objectNode ("name", query.get ("name"), "limit", query.getInt ("limit", 10)));
+		}));
+
+		Client.Response response = client.request (Method.GET, "/items")
+			.withQuery ("name", "a&b")
+			.withQuery ("limit", 25)
+			.send ().get ();
+
+		assertThat (response.json (), is (Json.objectNode ("name", "a&b", "limit", 25)));
+	}
+
+	@Test
+	public void it_should_reject_malformed_typed_parameters () throws Exception {
+		Client client = DirectClient.fromApi (api -> api.route ("/items", req -> {
+			return req.reply (Json.objectNode ("limit", req.queryInt ("limit", 10)));
+		}));
+
+		Client.Response response = client.request (Method.GET, "/items").withQuery ("limit", "ten").send ().get ();
+
+		assertThat (response.status (), is (InputException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_stream_json_arrays_sent_to_the_api () throws Exception {
+		Client client = DirectClient.fromApi (api -> api.route ("/bulk", EnumSet.of (Method.POST), req -> {
+			try ( Stream<JsonNode> items = req.jsonStream (JsonNode.class) ) {
+				return req.reply (Json.objectNode ("count", items.count ()));
+			}
+		}));
+
+		Client.Response response = client.request (Method.POST, "/bulk")
+			.send (Json.arrayNode (Json.objectNode ("id", 1), Json.objectNode ("id", 2), Json.objectNode ("id", 3)))
+			.get ();
+
+		assertThat (response.json (), is (Json.objectNode ("count", 3L)));
+	}
+
+	@Test
+	public void it_should_stream_json_arrays_without_buffering_the_body () throws Exception {
+		Client client = DirectClient.fromApi (api -> api.route ("/bulk", EnumSet.of (Method.POST), req -> {
+			try ( Stream<JsonNode> items = req.jsonStream (JsonNode.class) ) {
+				return req.reply (Json.objectNode ("count", items.count ()));
+			}
+		})).maxBodySize (16);
+
+		Client.Response response = client.request (Method.POST, "/bulk")
+			.send (Json.arrayNode (Json.objectNode ("id", 1), Json.objectNode ("id", 2), Json.objectNode ("id", 3)))
+			.get ();
+
+		assertThat (response.json (), is (Json.objectNode ("count", 3L)));
+	}
+
+	@Test
+	public void it_should_allow_reading_the_stream_in_a_filter_and_the_body_in_the_handler () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", (req, chain) -> {
+				try ( InputStream in = req.inputstream () ) { req.context ().put ("size", in.readAllBytes ().length); }
+				return chain.apply (req);
+			});
+			api.route ("/echo", EnumSet.of (Method.POST), req -> req.reply (req.json ()));
+		});
+
+		Client.Response response = client.request (Method.POST, "/echo").send (Json.objectNode ("id", 1)).get ();
+
+		assertThat (response.json (), is (Json.objectNode ("id", 1)));
+	}
+
+	@Test
+	public void it_should_refuse_to_buffer_a_body_that_was_streamed () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/echo", EnumSet.of (Method.POST), req -> {
+				try ( InputStream in = req.rawInputstream () ) { in.readAllBytes (); }
+				return req.reply (req.json ());
+			});
+		});
+
+		Client.Response response = client.request (Method.POST, "/echo").send (Json.objectNode ("id", 1)).get ();
+
+		assertThat (response.status (), is (500));
+	}
+
+	@Test
+	public void it_should_allow_reading_the_body_more_than_once () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", (req, chain) -> {
+				req.context ().put ("raw", req.body ());
+				return chain.apply (req);
+			});
+			api.route ("/echo", EnumSet.of (Method.POST), req -> req.reply (req.json ()));
+		});
+
+		Client.Response response = client.request (Method.POST, "/echo").send (Json.objectNode ("id", 1)).get ();
+
+		assertThat (response.json (), is (Json.objectNode ("id", 1)));
+	}
+
+	@Test
+	public void it_should_reject_bodies_over_the_size_limit () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/echo", EnumSet.of (Method.POST), req -> req.reply (req.json ()));
+		}).maxBodySize (4);
+
+		Client.Response response = client.request (Method.POST, "/echo").send (Json.objectNode ("id", 1)).get ();
+
+		assertThat (response.status (), is (PayloadTooLargeException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_provide_the_body_asynchronously () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/echo", EnumSet.of (Method.POST), req -> req.bodyAsync ().thenCompose (buffer -> {
+				byte [] bytes = new byte [buffer.remaining ()];
+				buffer.get (bytes);
+				return req.reply (200, Collections.emptyMap (), bytes);
+			}));
+		});
+
+		Client.Response response = client.request (Method.POST, "/echo").send (Json.objectNode ("id", 1)).get ();
+
+		assertThat (response.json (), is (Json.objectNode ("id", 1)));
+	}
+
+	@Test
+	public void it_should_publish_the_body_in_chunks () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/echo", EnumSet.of (Method.POST), req -> Publishers.collect (req.bodyPublisher ())
+				.thenCompose (buffer -> req.reply (Json.objectNode ("size", buffer.remaining ())))
+			);
+		});
+
+		Client.Response response = client.request (Method.POST, "/echo").send (Json.objectNode ("id", 1)).get ();
+
+		assertThat (response.json (), is (Json.objectNode ("size", 8)));
+	}
+
+	@Test
+	public void it_should_parse_multipart_bodies () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/upload", EnumSet.of (Method.POST), req -> {
+				try ( Multipart multipart = req.multipart () ) {
+					Multipart.Part part = multipart.next ();
+					return req.reply (Json.objectNode ("name", part.name (), "content", part.string ()));
+				}
+			});
+		});
+
+		Client.Response response = client.request (Method.POST, "/upload")
+			.withHeader ("Content-Type", "multipart/form-data; boundary=XyZ")
+			.send ("--XyZ\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nabc\r\n--XyZ--\r\n")
+			.get ();
+
+		assertThat (response.json (), is (Json.objectNode ("name", "a", "content", "abc")));
+	}
+
+	@Test
+	public void it_should_decode_form_bodies () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/form", EnumSet.of (Method.POST), req -> {
+				Bag<String, String> form = req.form ();
+				return req.reply (Json.objectNode ("name", form.get ("name"), "city", form.get ("city")));
+			});
+		});
+
+		Client.Response response = client.request (Method.POST, "/form")
+			.withHeader ("Content-Type", "application/x-www-form-urlencoded")
+			.send ("name=John+Doe&city=New%20York")
+			.get ();
+
+		assertThat (response.json (), is (Json.objectNode ("name", "John Doe", "city", "New York")));
+	}
+
+	@Test
+	public void it_should_stream_json_lines () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/export", req -> req.replyLines (Stream.of (1, 2, 3).map (i -> Json.objectNode ("id", i))));
+		});
+
+		Client.Response response = client.request (Method.GET, "/export").send ().get ();
+
+		assertThat (response.headers ().get ("Content-Type"), is ("application/x-ndjson"));
+		assertThat (response.body (), is ("{\"id\":1}\n{\"id\":2}\n{\"id\":3}\n"));
+	}
+
+	@Test
+	public void it_should_stream_json_arrays () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/export", req -> req.replyArray (Stream.of (1, 2, 3).map (i -> Json.objectNode ("id", i))));
+		});
+
+		Client.Response response = client.request (Method.GET, "/export").send ().get ();
+
+		assertThat (response.json (), is (Json.arrayNode (
+			Json.objectNode ("id", 1), Json.objectNode ("id", 2), Json.objectNode ("id", 3)
+		)));
+	}
+
+	@Test
+	public void it_should_stream_json_with_the_mapper_of_the_transport () throws Exception {
+		ObjectMapper mapper = new ObjectMapper ().setPropertyNamingStrategy (PropertyNamingStrategies.SNAKE_CASE);
+		Client client = DirectClient.fromApi (mapper, api -> {
+			api.route ("/lines", req -> req.replyLines (Stream.of (new Item (1), new Item (2))));
+			api.route ("/array", req -> req.replyArray (Stream.of (new Item (1), new Item (2))));
+		});
+
+		assertThat (client.request (Method.GET, "/lines").send ().get ().body (), is ("{\"item_id\":1}\n{\"item_id\":2}\n"));
+		assertThat (client.request (Method.GET, "/array").send ().get ().body (), is ("[{\"item_id\":1},{\"item_id\":2}]"));
+	}
+
+	@Test
+	public void it_should_stream_server_sent_events () throws Exception {
+		CompletableFuture<EventSink> sink = new CompletableFuture<> ();
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/events", req -> {
+				sink.complete (req.replyEvents ());
+				return CompletableFuture.completedFuture (null);
+			});
+		});
+
+		Client.Response response = client.request (Method.GET, "/events").send ().get ();
+		assertThat (response.status (), is (200));
+		assertThat (response.headers ().get ("Content-Type"), is ("text/event-stream"));
+
+		sink.get ().send ("1", "tick", "first");
+		sink.get ().send ("second");
+		sink.get ().close ();
+
+		assertThat (response.body (), is ("id: 1\nevent: tick\ndata: first\n\ndata: second\n\n"));
+	}
+
+	@Test
+	public void it_should_reply_with_the_chunks_of_a_publisher () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/chunks", req -> {
+				SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<> ();
+				CompletableFuture.runAsync (() -> {
+					while ( publisher.getNumberOfSubscribers () == 0 ) { Thread.onSpinWait (); }
+					publisher.submit (ByteBuffer.wrap ("Hello ".getBytes (StandardCharsets.UTF_8)));
+					publisher.submit (ByteBuffer.wrap ("World".getBytes (StandardCharsets.UTF_8)));
+					publisher.close ();
+				});
+				return req.reply (publisher);
+			});
+		});
+
+		Client.Response response = client.request (Method.GET, "/chunks").send ().get ();
+
+		assertThat (response.body (), is ("Hello World"));
+	}
+
+	@Test
+	public void it_should_hand_out_the_reply_publisher_without_copying () throws Exception {
+		ByteBuffer chunk = ByteBuffer.wrap ("Hello World".getBytes (StandardCharsets.UTF_8));
+		Client client = DirectClient.fromApi (api -> {
+			api.route ("/chunks", req -> req.reply (Publishers.fromStream (() -> new ByteArrayInputStream (chunk.array ()))));
+		});
+
+		Client.Response response = client.request (Method.GET, "/chunks").send ().get ();
+		ByteBuffer body = Publishers.collect (response.publisher ()).get ();
+
+		assertThat (body.remaining (), is (11));
+	}
+
+	@Test
+	public void it_should_pass_publisher_replies_through_wrapping_filters () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", (req, chain) -> chain.apply (new RequestWrapper (req)));
+			api.route ("/chunks", req -> req.reply (Publishers.fromStream (
+				() -> new ByteArrayInputStream ("Hello World".getBytes (StandardCharsets.UTF_8))
+			)));
+		});
+
+		Client.Response response = client.request (Method.GET, "/chunks").send ().get ();
+
+		assertThat (response.body (), is ("Hello World"));
+	}
+
+	public static class Item {
+		private final int id;
+		public Item (int id) { this.id = id; }
+		public int getItemId () { return id; }
+	}
+
 }
@@ -0,0 +1,138 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+public class EventSinkTest {
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream ();
+
+	@Test
+	public void it_should_write_data_only_events () {
+		EventSink sink = new EventSink (out, noHeartbeat ());
+		sink.send ("hello");
+
+		assertThat (written (), is ("data: hello\n\n"));
+	}
+
+	@Test
+	public void it_should_write_ids_and_event_names () {
+		EventSink sink = new EventSink (out, noHeartbeat ());
+		sink.send ("7", "update", "{\"id\":7}");
+
+		assertThat (written (), is ("id: 7\nevent: update\ndata: {\"id\":7}\n\n"));
+	}
+
+	@Test
+	public void it_should_split_multi_line_data () {
+		EventSink sink = new EventSink (out, noHeartbeat ());
+		sink.send ("first\nsecond\r\nthird");
+
+		assertThat (written (), is ("data: first\ndata: second\ndata: third\n\n"));
+	}
+
+	@Test
+	public void it_should_split_data_on_carriage_returns () {
+		EventSink sink = new EventSink (out, noHeartbeat ());
+		sink.send ("first\rsecond\r\nthird\n\rfourth");
+
+		assertThat (written (), is ("data: first\ndata: second\ndata: third\ndata: \ndata: fourth\n\n"));
+	}
+
+	@Test
+	public void it_should_keep_trailing_line_breaks_as_empty_data_lines () {
+		EventSink sink = new EventSink (out, noHeartbeat ());
+		sink.send ("first\r");
+
+		assertThat (written (), is ("data: first\ndata: \n\n"));
+	}
+
+	@Test
+	public void it_should_write_the_retry_interval_up_front () {
+		new EventSink (out, new EventSink.Config () {{ heartbeat = null; retry = Duration.ofSeconds (3); }});
+		assertThat (written (), is ("retry: 3000\n\n"));
+	}
+
+	@Test
+	public void it_should_reject_line_breaks_in_single_line_fields () {
+		EventSink sink = new EventSink (out, noHeartbeat ());
+
+		assertThrows (IllegalArgumentException.class, () -> sink.send ("1\n2", "update", "data"));
+		assertThat (written (), is (""));
+	}
+
+	@Test
+	public void it_should_send_heartbeats_when_idle () throws Exception {
+		CountDownLatch written = new CountDownLatch (1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream () {
+			@Override public synchronized void write (byte [] b, int off, int len) {
+				super.write (b, off, len);
+				if ( len > 0 ) { written.countDown (); }
+			}
+		};
+		EventSink sink = new EventSink (out, new EventSink.Config () {{ heartbeat = Duration.ofMillis (10); }});
+
+		assertThat (written.await (5, TimeUnit.SECONDS), is (true));
+		sink.close ();
+
+		assertThat (new String (out.toByteArray (), StandardCharsets.UTF_8), startsWith (":\n\n"));
+	}
+
+	@Test
+	public void it_should_beat_on_a_dedicated_thread () throws Exception {
+		CompletableFuture<String> thread = new CompletableFuture<> ();
+		ByteArrayOutputStream out = new ByteArrayOutputStream () {
+			@Override public synchronized void write (byte [] b, int off, int len) {
+				if ( len > 0 ) { thread.complete (Thread.currentThread ().getName ()); }
+				super.write (b, off, len);
+			}
+		};
+		EventSink sink = new EventSink (out, new EventSink.Config () {{ heartbeat = Duration.ofMillis (10); }});
+
+		assertThat (thread.get (5, TimeUnit.SECONDS), not (containsString ("ForkJoinPool")));
+		sink.close ();
+	}
+
+	@Test
+	public void it_should_close_when_the_client_goes_away () {
+		EventSink sink = new EventSink (new OutputStream () {
+			@Override public void write (int b) throws IOException { throw new IOException ("Broken pipe"); }
+			@Override public void write (byte [] b, int off, int len) throws IOException { throw new IOException ("Broken pipe"); }
+		}, noHeartbeat ());
+
+		assertThat (sink.send ("hello"), is (false));
+		assertThat (sink.isOpen (), is (false));
+		assertThat (sink.closed ().isDone (), is (true));
+	}
+
+	@Test
+	public void it_should_not_write_after_being_closed () {
+		EventSink sink = new EventSink (out, noHeartbeat ());
+		sink.close ();
+
+		assertThat (sink.send ("hello"), is (false));
+		assertThat (written (), is (""));
+	}
+
+	private EventSink.Config noHeartbeat () {
+		return new EventSink.Config () {{ heartbeat = null; }};
+	}
+
+	private String written () {
+		return new String (out.toByteArray (), StandardCharsets.UTF_8);
+	}
+
+}
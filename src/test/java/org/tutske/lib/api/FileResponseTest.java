@@ -0,0 +1,188 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.exceptions.NotFoundException;
+import org.tutske.lib.api.exceptions.RangeNotSatisfiableException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+
+public class FileResponseTest {
+
+	private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+	private final Path file = createFile ();
+	private final Client client = DirectClient.fromApi (api -> {
+		api.route ("/file", req -> req.reply (file, "text/plain"));
+		api.route ("/missing", req -> req.reply (file.resolveSibling ("does-not-exist.txt")));
+	});
+
+	@Test
+	public void it_should_reply_with_the_whole_file () throws Exception {
+		Client.Response response = client.request (Method.GET, "/file").send ().get ();
+
+		assertThat (response.status (), is (200));
+		assertThat (response.body (), is (CONTENT));
+		assertThat (response.headers ().get ("Accept-Ranges"), is ("bytes"));
+		assertThat (response.headers ().get ("Content-Length"), is ("36"));
+		assertThat (response.headers ().get ("ETag"), notNullValue ());
+	}
+
+	@Test
+	public void it_should_reply_with_a_single_range () throws Exception {
+		Client.Response response = send ("bytes=10-15");
+
+		assertThat (response.status (), is (206));
+		assertThat (response.body (), is ("abcdef"));
+		assertThat (response.headers ().get ("Content-Range"), is ("bytes 10-15/36"));
+		assertThat (response.headers ().get ("Content-Length"), is ("6"));
+	}
+
+	@Test
+	public void it_should_reply_with_suffix_and_open_ended_ranges () throws Exception {
+		assertThat (send ("bytes=-4").body (), is ("wxyz"));
+		assertThat (send ("bytes=30-").body (), is ("uvwxyz"));
+		assertThat (send ("bytes=30-100").body (), is ("uvwxyz"));
+	}
+
+	@Test
+	public void it_should_reply_with_multiple_ranges_as_multipart () throws Exception {
+		Client.Response response = send ("bytes=0-1, 10-11");
+
+		assertThat (response.status (), is (206));
+		String type = response.headers ().get ("Content-Type");
+		assertThat (type, startsWith ("multipart/byteranges; boundary="));
+
+		byte [] body = response.bytes ();
+		assertThat (response.headers ().get ("Content-Length"), is (String.valueOf (body.length)));
+
+		Multipart multipart = new Multipart (new ByteArrayInputStream (body), Multipart.boundary (type), new Multipart.Config ());
+		Multipart.Part first = multipart.next ();
+		assertThat (first.headers ().get ("Content-Range"), is ("bytes 0-1/36"));
+		assertThat (first.string (), is ("01"));
+
+		Multipart.Part second = multipart.next ();
+		assertThat (second.headers ().get ("Content-Range"), is ("bytes 10-11/36"));
+		assertThat (second.string (), is ("ab"));
+
+		assertThat (multipart.next (), nullValue ());
+	}
+
+	@Test
+	public void it_should_reject_unsatisfiable_ranges () throws Exception {
+		Client.Response response = send ("bytes=100-200");
+
+		assertThat (response.status (), is (RangeNotSatisfiableException.STATUS_CODE));
+		assertThat (response.headers ().get ("Content-Range"), is ("bytes */36"));
+	}
+
+	@Test
+	public void it_should_ignore_malformed_ranges () throws Exception {
+		Client.Response response = send ("bytes=5-2");
+
+		assertThat (response.status (), is (200));
+		assertThat (response.body (), is (CONTENT));
+	}
+
+	@Test
+	public void it_should_ignore_ranges_when_if_range_does_not_match () throws Exception {
+		Client.Response response = client.request (Method.GET, "/file")
+			.withHeader ("Range", "bytes=0-1")
+			.withHeader ("If-Range", "\"stale\"")
+			.send ().get ();
+
+		assertThat (response.status (), is (200));
+		assertThat (response.body (), is (CONTENT));
+	}
+
+	@Test
+	public void it_should_honor_ranges_when_if_range_matches () throws Exception {
+		String etag = client.request (Method.GET, "/file").send ().get ().headers ().get ("ETag");
+		Client.Response response = client.request (Method.GET, "/file")
+			.withHeader ("Range", "bytes=0-1")
+			.withHeader ("If-Range", etag)
+			.send ().get ();
+
+		assertThat (response.status (), is (206));
+		assertThat (response.body (), is ("01"));
+	}
+
+	@Test
+	public void it_should_reply_not_modified_for_matching_etags () throws Exception {
+		String etag = client.request (Method.GET, "/file").send ().get ().headers ().get ("ETag");
+		Client.Response response = client.request (Method.GET, "/file").withHeader ("If-None-Match", etag).send ().get ();
+
+		assertThat (response.status (), is (304));
+	}
+
+	@Test
+	public void it_should_reply_not_found_for_missing_files () throws Exception {
+		Client.Response response = client.request (Method.GET, "/missing").send ().get ();
+		assertThat (response.status (), is (NotFoundException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_expose_the_mapped_regions () throws Exception {
+		DirectClient.Response response = (DirectClient.Response) send ("bytes=10-15");
+		List<ByteBuffer> regions = response.regions ();
+
+		assertThat (regions, hasSize (1));
+		byte [] bytes = new byte [regions.get (0).remaining ()];
+		regions.get (0).get (bytes);
+		assertThat (new String (bytes, StandardCharsets.US_ASCII), is ("abcdef"));
+	}
+
+	@Test
+	public void it_should_transfer_ranges_to_a_channel () throws Exception {
+		DirectClient.Response response = (DirectClient.Response) send ("bytes=0-1, 10-11");
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+
+		long transferred = ((FileResponse) response.inputstream ()).transferTo (Channels.newChannel (out));
+
+		assertThat (transferred, is ((long) out.size ()));
+		assertThat (out.toString (StandardCharsets.US_ASCII), containsString ("\r\n\r\n01\r\n"));
+	}
+
+	@Test
+	public void it_should_merge_overlapping_ranges () {
+		List<long []> ranges = FileResponse.ranges ("bytes=5-10, 0-2, 8-12, 3-3", 36);
+
+		assertThat (ranges, hasSize (2));
+		assertThat (ranges.get (0), is (new long [] { 0, 3 }));
+		assertThat (ranges.get (1), is (new long [] { 5, 12 }));
+	}
+
+	@Test
+	public void it_should_ignore_headers_with_too_many_ranges () {
+		StringBuilder header = new StringBuilder ("bytes=0-0");
+		for ( int i = 1; i <= FileResponse.MAX_RANGES; i++ ) { header.append (",").append (i * 2).append ("-").append (i * 2); }
+
+		assertThat (FileResponse.ranges (header.toString (), 100), nullValue ());
+	}
+
+	private static Path createFile () {
+		try {
+			Path file = Files.createTempFile ("file-response", ".txt");
+			file.toFile ().deleteOnExit ();
+			return Files.write (file, CONTENT.getBytes (StandardCharsets.US_ASCII));
+		} catch ( IOException e ) {
+			throw new RuntimeException (e);
+		}
+	}
+
+	private Client.Response send (String range) throws Exception {
+		return client.request (Method.GET, "/file").withHeader ("Range", range).send ().get ();
+	}
+
+}
@@ -0,0 +1,99 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+import org.tutske.lib.utils.Bag;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+
+public class FormDecoderTest {
+
+	@Test
+	public void it_should_decode_simple_fields () throws Exception {
+		Bag<String, String> form = FormDecoder.decode (stream ("name=john&age=42"));
+
+		assertThat (form.get ("name"), is ("john"));
+		assertThat (form.get ("age"), is ("42"));
+	}
+
+	@Test
+	public void it_should_unescape_keys_and_values () throws Exception {
+		Bag<String, String> form = FormDecoder.decode (stream ("first+name=John+Do%C3%AB&a%26b=c%3Dd"));
+
+		assertThat (form.get ("first name"), is ("John Do\u00EB"));
+		assertThat (form.get ("a&b"), is ("c=d"));
+	}
+
+	@Test
+	public void it_should_skip_empty_segments () throws Exception {
+		FormDecoder decoder = new FormDecoder (stream ("&&a=1&&b=2&"), new FormDecoder.Config ());
+
+		assertThat (decoder.next (), is (true));
+		assertThat (decoder.key (), is ("a"));
+		assertThat (decoder.next (), is (true));
+		assertThat (decoder.key (), is ("b"));
+		assertThat (decoder.next (), is (false));
+		assertThat (decoder.fields (), is (2));
+	}
+
+	@Test
+	public void it_should_report_fields_without_values () throws Exception {
+		FormDecoder decoder = new FormDecoder (stream ("flag&empty="), new FormDecoder.Config ());
+
+		decoder.next ();
+		assertThat (decoder.key (), is ("flag"));
+		assertThat (decoder.value (), nullValue ());
+
+		decoder.next ();
+		assertThat (decoder.key (), is ("empty"));
+		assertThat (decoder.value (), nullValue ());
+	}
+
+	@Test
+	public void it_should_decode_fields_spanning_buffer_refills () throws Exception {
+		String value = "x".repeat (100) + "%20" + "y".repeat (100);
+		Bag<String, String> form = FormDecoder.decode (stream ("key=" + value + "&other=1"), new FormDecoder.Config () {{
+			bufferSize = 7;
+		}});
+
+		assertThat (form.get ("key"), is ("x".repeat (100) + " " + "y".repeat (100)));
+		assertThat (form.get ("other"), is ("1"));
+	}
+
+	@Test
+	public void it_should_reject_too_many_fields () {
+		FormDecoder.Config config = new FormDecoder.Config () {{ maxFields = 2; }};
+		assertThrows (PayloadTooLargeException.class, () -> FormDecoder.decode (stream ("a=1&b=2&c=3"), config));
+	}
+
+	@Test
+	public void it_should_reject_fields_that_are_too_long () {
+		FormDecoder.Config config = new FormDecoder.Config () {{ maxValueLength = 4; }};
+		assertThrows (PayloadTooLargeException.class, () -> FormDecoder.decode (stream ("a=12345"), config));
+	}
+
+	@Test
+	public void it_should_reject_malformed_escapes () {
+		assertThrows (InputException.class, () -> FormDecoder.decode (stream ("a=%zz")));
+		assertThrows (InputException.class, () -> FormDecoder.decode (stream ("a=%2")));
+	}
+
+	@Test
+	public void it_should_share_the_unescaping_with_query_strings () {
+		assertThat (Request.decodeQueryString ("a+b%2Fc"), is ("a b/c"));
+		assertThat (Request.decodeQueryString ("plain"), is ("plain"));
+	}
+
+	private InputStream stream (String body) {
+		return new ByteArrayInputStream (body.getBytes (StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.tutske.lib.api.Method.GET;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.json.Json;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+
+public class InstrumentationTest {
+
+	private final Instrumentation instrumentation = new Instrumentation ();
+
+	@Test
+	public void it_should_record_the_time_of_handlers () throws Exception {
+		Client client = createClient ();
+
+		client.request (GET, "/test").send ().get ();
+
+		Instrumentation.Timing timing = instrumentation.timings ().get ("route:test");
+		assertThat (timing.total.count (), is (1L));
+		assertThat (timing.self.count (), is (1L));
+	}
+
+	@Test
+	public void it_should_record_the_time_of_filters () throws Exception {
+		Client client = createClient ();
+
+		client.request (GET, "/test").send ().get ();
+		client.request (GET, "/test").send ().get ();
+
+		Instrumentation.Timing timing = instrumentation.timings ().get ("filter:/::path#0");
+		assertThat (timing.total.count (), is (2L));
+	}
+
+	@Test
+	public void it_should_not_count_the_rest_of_the_chain_as_self_time () throws Exception {
+		Client client = createClient ();
+
+		client.request (GET, "/test").send ().get ();
+
+		Map<String, Instrumentation.Timing> timings = instrumentation.timings ();
+		Instrumentation.Timing filter = timings.get ("filter:/::path#0");
+		Instrumentation.Timing handler = timings.get ("route:test");
+
+		assertThat (filter.self.sum (), greaterThanOrEqualTo (5_000_000L));
+		assertThat (filter.self.sum (), is (filter.total.sum () - handler.total.sum ()));
+	}
+
+	@Test
+	public void it_should_record_filters_that_do_not_continue_the_chain () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.instrument (instrumentation);
+			api.filter ("/::path", (req, chain) -> req.reply (Json.objectNode ("blocked", true)));
+			api.route ("test", "/test", req -> req.reply (Json.objectNode ("status", "ok")));
+		});
+
+		client.request (GET, "/test").send ().get ();
+
+		Map<String, Instrumentation.Timing> timings = instrumentation.timings ();
+		assertThat (timings.get ("filter:/::path#0").self.count (), is (1L));
+		assertThat (timings.get ("route:test").total.count (), is (0L));
+	}
+
+	@Test
+	public void it_should_record_the_time_until_async_handlers_complete () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.instrument (instrumentation);
+			api.filter ("/::path", (req, chain) -> chain.apply (req));
+			api.route ("test", "/test", req -> CompletableFuture
+				.runAsync (() -> {}, CompletableFuture.delayedExecutor (20, TimeUnit.MILLISECONDS))
+				.thenCompose (ignore -> req.reply (Json.objectNode ("status", "ok")))
+			);
+		});
+
+		client.request (GET, "/test").send ().get ();
+
+		Map<String, Instrumentation.Timing> timings = instrumentation.timings ();
+		Instrumentation.Timing filter = timings.get ("filter:/::path#0");
+		Instrumentation.Timing handler = timings.get ("route:test");
+
+		assertThat (handler.total.sum (), greaterThanOrEqualTo (20_000_000L));
+		assertThat (filter.total.sum (), greaterThanOrEqualTo (handler.total.sum ()));
+		assertThat (filter.self.sum (), is (filter.total.sum () - handler.total.sum ()));
+	}
+
+	@Test
+	public void it_should_not_record_anything_when_not_enabled () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", (req, chain) -> chain.apply (req));
+			api.route ("test", "/test", req -> req.reply (Json.objectNode ("status", "ok")));
+		});
+
+		client.request (GET, "/test").send ().get ();
+
+		assertThat (instrumentation.timings ().isEmpty (), is (true));
+	}
+
+	@Test
+	public void it_should_estimate_percentiles_within_a_power_of_two () {
+		LatencyHistogram histogram = new LatencyHistogram ();
+		for ( int i = 1; i <= 100; i++ ) { histogram.record (i * 1000L); }
+
+		assertThat (histogram.count (), is (100L));
+		assertThat (histogram.max (), is (100_000L));
+		assertThat (histogram.percentile (0.5), greaterThanOrEqualTo (50_000L));
+		assertThat (histogram.percentile (0.5), lessThan (100_000L));
+		assertThat (histogram.percentile (1), is (100_000L));
+	}
+
+	private Client createClient () {
+		return DirectClient.fromApi (api -> {
+			api.instrument (instrumentation);
+			api.filter ("/::path", (req, chain) -> {
+				Thread.sleep (5);
+				return chain.apply (req);
+			});
+			api.route ("test", "/test", req -> {
+				Thread.sleep (5);
+				return req.reply (Json.objectNode ("status", "ok"));
+			});
+		});
+	}
+
+}
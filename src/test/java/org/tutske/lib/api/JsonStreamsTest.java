@@ -0,0 +1,106 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.json.Json;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+
+public class JsonStreamsTest {
+
+	@Test
+	public void it_should_write_each_element_on_its_own_line () throws Exception {
+		InputStream in = JsonStreams.lines (Arrays.asList (
+			Json.objectNode ("id", 1), Json.objectNode ("id", 2)
+		).iterator ());
+
+		assertThat (read (in), is ("{\"id\":1}\n{\"id\":2}\n"));
+	}
+
+	@Test
+	public void it_should_read_null_elements () throws Exception {
+		InputStream in = new ByteArrayInputStream ("[1,null,2]".getBytes (StandardCharsets.UTF_8));
+		try ( Stream<Integer> elements = JsonStreams.elements (JsonStreams.parser (in), Integer.class) ) {
+			assertThat (elements.collect (Collectors.toList ()), contains (1, null, 2));
+		}
+	}
+
+	@Test
+	public void it_should_write_elements_as_a_json_array () throws Exception {
+		InputStream in = JsonStreams.array (Arrays.asList (1, 2, 3).iterator ());
+		assertThat (read (in), is ("[1,2,3]"));
+	}
+
+	@Test
+	public void it_should_write_an_empty_array_for_no_elements () throws Exception {
+		assertThat (read (JsonStreams.array (Collections.emptyIterator ())), is ("[]"));
+		assertThat (read (JsonStreams.lines (Collections.emptyIterator ())), is (""));
+	}
+
+	@Test
+	public void it_should_only_serialize_elements_when_bytes_are_read () throws Exception {
+		AtomicInteger produced = new AtomicInteger ();
+		Iterator<Integer> items = IntStream.range (0, 100_000).peek (i -> produced.incrementAndGet ()).iterator ();
+
+		InputStream in = JsonStreams.lines (items);
+		in.read (new byte [16]);
+
+		assertThat (produced.get (), lessThan (100_000));
+		assertThat (produced.get (), greaterThan (0));
+	}
+
+	@Test
+	public void it_should_close_the_stream_when_done () throws Exception {
+		AtomicBoolean closed = new AtomicBoolean (false);
+		Stream<Integer> stream = Stream.of (1, 2).onClose (() -> closed.set (true));
+
+		JsonStreams.lines (JsonStreams.iterator (stream)).close ();
+
+		assertThat (closed.get (), is (true));
+	}
+
+	@Test
+	public void it_should_write_the_elements_of_a_publisher () throws Exception {
+		SubmissionPublisher<Integer> publisher = new SubmissionPublisher<> ();
+		InputStream in = JsonStreams.array (JsonStreams.iterator (publisher, 2));
+
+		new Thread (() -> {
+			for ( int i = 0; i < 10; i++ ) { publisher.submit (i); }
+			publisher.close ();
+		}).start ();
+
+		assertThat (read (in), is ("[0,1,2,3,4,5,6,7,8,9]"));
+	}
+
+	@Test
+	public void it_should_fail_the_stream_when_the_publisher_fails () throws Exception {
+		SubmissionPublisher<Integer> publisher = new SubmissionPublisher<> ();
+		InputStream in = JsonStreams.lines (JsonStreams.iterator (publisher));
+
+		publisher.closeExceptionally (new IllegalStateException ("Broken source"));
+
+		assertThrows (RuntimeException.class, () -> read (in));
+	}
+
+	private String read (InputStream in) throws Exception {
+		try ( InputStream stream = in ) {
+			return new String (stream.readAllBytes (), StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+
+public class MultipartTest {
+
+	private static final String BODY = String.join ("\r\n",
+		"preamble",
+		"--XyZ",
+		"Content-Disposition: form-data; name=\"title\"",
+		"",
+		"Hello World",
+		"--XyZ",
+		"Content-Disposition: form-data; name=\"file\"; filename=\"notes.txt\"",
+		"Content-Type: text/plain",
+		"",
+		"first line\r\nsecond line",
+		"--XyZ--",
+		""
+	);
+
+	@Test
+	public void it_should_extract_the_boundary_from_the_content_type () {
+		assertThat (Multipart.boundary ("multipart/form-data; boundary=XyZ"), is ("XyZ"));
+		assertThat (Multipart.boundary ("multipart/form-data; boundary=\"a b\""), is ("a b"));
+		assertThat (Multipart.boundary ("application/json"), nullValue ());
+		assertThat (Multipart.boundary ("multipart/form-data"), nullValue ());
+	}
+
+	@Test
+	public void it_should_keep_separators_inside_quoted_params () {
+		String disposition = "form-data; name=\"file\"; filename=\"a;b \\\"c\\\".txt\"";
+
+		assertThat (Multipart.param (disposition, "name"), is ("file"));
+		assertThat (Multipart.param (disposition, "filename"), is ("a;b \"c\".txt"));
+	}
+
+	@Test
+	public void it_should_read_all_parts_in_order () throws Exception {
+		Multipart multipart = multipart (BODY, new Multipart.Config ());
+
+		Multipart.Part title = multipart.next ();
+		assertThat (title.name (), is ("title"));
+		assertThat (title.filename (), nullValue ());
+		assertThat (title.string (), is ("Hello World"));
+
+		Multipart.Part file = multipart.next ();
+		assertThat (file.name (), is ("file"));
+		assertThat (file.filename (), is ("notes.txt"));
+		assertThat (file.contentType (), is ("text/plain"));
+		assertThat (file.string (), is ("first line\r\nsecond line"));
+
+		assertThat (multipart.next (), nullValue ());
+	}
+
+	@Test
+	public void it_should_skip_parts_that_were_not_read () throws Exception {
+		Multipart multipart = multipart (BODY, new Multipart.Config ());
+
+		multipart.next ();
+		Multipart.Part file = multipart.next ();
+
+		assertThat (file.name (), is ("file"));
+		assertThat (file.string (), is ("first line\r\nsecond line"));
+	}
+
+	@Test
+	public void it_should_find_boundaries_across_buffer_refills () throws Exception {
+		byte [] content = new byte [10_000];
+		Arrays.fill (content, (byte) '-');
+		String body = "--XyZ\r\nContent-Disposition: form-data; name=\"big\"\r\n\r\n"
+			+ new String (content, StandardCharsets.US_ASCII)
+			+ "\r\n--XyZ--\r\n";
+
+		Multipart multipart = multipart (body, new Multipart.Config () {{ bufferSize = 64; maxHeaderSize = 64; }});
+		Multipart.Part part = multipart.next ();
+
+		assertThat (part.bytes (), is (content));
+		assertThat (part.size (), is (10_000L));
+		assertThat (multipart.next (), nullValue ());
+	}
+
+	@Test
+	public void it_should_read_parts_one_byte_at_a_time () throws Exception {
+		byte [] content = new byte [10_000];
+		Arrays.fill (content, (byte) 'x');
+		String body = "--XyZ\r\nContent-Disposition: form-data; name=\"big\"\r\n\r\n"
+			+ new String (content, StandardCharsets.US_ASCII)
+			+ "\r\n--XyZ--\r\n";
+
+		Multipart multipart = multipart (body, new Multipart.Config () {{ bufferSize = 256; maxHeaderSize = 64; }});
+		Multipart.Part part = multipart.next ();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		for ( int b = part.read (); b >= 0; b = part.read () ) { out.write (b); }
+
+		assertThat (out.toByteArray (), is (content));
+		assertThat (part.available (), is (0));
+		assertThat (multipart.next (), nullValue ());
+	}
+
+	@Test
+	public void it_should_transfer_parts_to_a_file () throws Exception {
+		Multipart multipart = multipart (BODY, new Multipart.Config () {{ bufferSize = 32; maxHeaderSize = 96; }});
+		multipart.next ();
+
+		Path target = Files.createTempFile ("multipart", ".txt");
+		try {
+			long written = multipart.next ().transferTo (target);
+
+			assertThat (written, is (23L));
+			assertThat (Files.readString (target), is ("first line\r\nsecond line"));
+		} finally {
+			Files.delete (target);
+		}
+	}
+
+	@Test
+	public void it_should_reject_parts_over_the_part_limit () throws Exception {
+		Multipart multipart = multipart (BODY, new Multipart.Config () {{ maxPartSize = 8; }});
+		Multipart.Part part = multipart.next ();
+
+		assertThrows (PayloadTooLargeException.class, part::bytes);
+	}
+
+	@Test
+	public void it_should_reject_bodies_over_the_total_limit () throws Exception {
+		Multipart multipart = multipart (BODY, new Multipart.Config () {{ bufferSize = 16; maxTotalSize = 64; }});
+
+		assertThrows (PayloadTooLargeException.class, () -> {
+			while ( multipart.next () != null ) {}
+		});
+	}
+
+	@Test
+	public void it_should_reject_too_many_parts () throws Exception {
+		Multipart multipart = multipart (BODY, new Multipart.Config () {{ maxParts = 1; }});
+		multipart.next ();
+
+		assertThrows (PayloadTooLargeException.class, multipart::next);
+	}
+
+	@Test
+	public void it_should_complain_about_truncated_bodies () throws Exception {
+		Multipart multipart = multipart ("--XyZ\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\nabc", new Multipart.Config ());
+		Multipart.Part part = multipart.next ();
+
+		assertThrows (InputException.class, part::bytes);
+	}
+
+	@Test
+	public void it_should_complain_about_truncated_bodies_read_in_chunks () throws Exception {
+		String data = "0123456789".repeat (10);
+		Multipart multipart = multipart ("--XyZ\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\n" + data, new Multipart.Config ());
+		Multipart.Part part = multipart.next ();
+
+		assertThrows (InputException.class, () -> {
+			byte [] chunk = new byte [16];
+			while ( part.read (chunk) >= 0 ) {}
+		});
+	}
+
+	@Test
+	public void it_should_complain_about_truncated_bodies_when_transferring () throws Exception {
+		String data = "0123456789".repeat (10);
+		Multipart multipart = multipart ("--XyZ\r\nContent-Disposition: form-data; name=\"a\"\r\n\r\n" + data, new Multipart.Config ());
+		Multipart.Part part = multipart.next ();
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+
+		assertThrows (InputException.class, () -> part.transferTo (out));
+		assertThat (out.toString (StandardCharsets.UTF_8), is (data.substring (0, out.size ())));
+	}
+
+	private Multipart multipart (String body, Multipart.Config config) {
+		InputStream in = new ByteArrayInputStream (body.getBytes (StandardCharsets.UTF_8));
+		return new Multipart (in, "XyZ", config);
+	}
+
+}
@@ -0,0 +1,233 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class PublishersTest {
+
+	@Test
+	public void it_should_collect_all_chunks_of_a_stream () throws Exception {
+		byte [] data = "Hello World, this is a longer body".getBytes (StandardCharsets.UTF_8);
+		Flow.Publisher<ByteBuffer> publisher = Publishers.fromStream (
+			() -> new ByteArrayInputStream (data), Runnable::run, 4
+		);
+
+		ByteBuffer buffer = Publishers.collect (publisher).get ();
+
+		assertThat (bytes (buffer), is (data));
+	}
+
+	@Test
+	public void it_should_only_publish_as_many_chunks_as_requested () throws Exception {
+		byte [] data = new byte [40];
+		Flow.Publisher<ByteBuffer> publisher = Publishers.fromStream (
+			() -> new ByteArrayInputStream (data), Runnable::run, 4
+		);
+
+		RecordingSubscriber subscriber = new RecordingSubscriber ();
+		publisher.subscribe (subscriber);
+
+		subscriber.subscription.request (2);
+		assertThat (subscriber.chunks, hasSize (2));
+
+		subscriber.subscription.request (3);
+		assertThat (subscriber.chunks, hasSize (5));
+		assertThat (subscriber.completed, is (false));
+	}
+
+	@Test
+	public void it_should_stop_publishing_when_cancelled () throws Exception {
+		Flow.Publisher<ByteBuffer> publisher = Publishers.fromStream (
+			() -> new ByteArrayInputStream (new byte [40]), Runnable::run, 4
+		);
+
+		RecordingSubscriber subscriber = new RecordingSubscriber ();
+		publisher.subscribe (subscriber);
+
+		subscriber.subscription.request (1);
+		subscriber.subscription.cancel ();
+		subscriber.subscription.request (5);
+
+		assertThat (subscriber.chunks, hasSize (1));
+		assertThat (subscriber.completed, is (false));
+	}
+
+	@Test
+	public void it_should_signal_an_error_for_non_positive_requests () {
+		Flow.Publisher<ByteBuffer> publisher = Publishers.fromStream (
+			() -> new ByteArrayInputStream (new byte [40]), Runnable::run, 4
+		);
+
+		RecordingSubscriber subscriber = new RecordingSubscriber ();
+		publisher.subscribe (subscriber);
+		subscriber.subscription.request (0);
+
+		assertThat (subscriber.error, instanceOf (IllegalArgumentException.class));
+	}
+
+	@Test
+	public void it_should_allow_only_a_single_subscriber () {
+		Flow.Publisher<ByteBuffer> publisher = Publishers.fromStream (
+			() -> new ByteArrayInputStream (new byte [40]), Runnable::run, 4
+		);
+
+		publisher.subscribe (new RecordingSubscriber ());
+		CompletableFuture<ByteBuffer> second = Publishers.collect (publisher);
+
+		ExecutionException e = assertThrows (ExecutionException.class, second::get);
+		assertThat (e.getCause (), instanceOf (IllegalStateException.class));
+	}
+
+	@Test
+	public void it_should_complete_empty_streams_with_an_empty_buffer () throws Exception {
+		Flow.Publisher<ByteBuffer> publisher = Publishers.fromStream (
+			() -> new ByteArrayInputStream (new byte [0]), Runnable::run, 4
+		);
+
+		assertThat (Publishers.collect (publisher).get ().remaining (), is (0));
+	}
+
+	@Test
+	public void it_should_read_all_chunks_of_a_publisher_as_a_stream () throws Exception {
+		SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<> ();
+		InputStream in = Publishers.toStream (publisher);
+
+		new Thread (() -> {
+			for ( String chunk : new String [] { "Hello", " ", "World" } ) {
+				publisher.submit (ByteBuffer.wrap (chunk.getBytes (StandardCharsets.UTF_8)));
+			}
+			publisher.close ();
+		}).start ();
+
+		assertThat (new String (in.readAllBytes (), StandardCharsets.UTF_8), is ("Hello World"));
+	}
+
+	@Test
+	public void it_should_read_streams_off_the_common_pool () throws Exception {
+		CompletableFuture<String> thread = new CompletableFuture<> ();
+		Flow.Publisher<ByteBuffer> publisher = Publishers.fromStream (() -> {
+			thread.complete (Thread.currentThread ().getName ());
+			return new ByteArrayInputStream (new byte [10]);
+		});
+
+		Publishers.collect (publisher).get ();
+
+		assertThat (thread.get (), startsWith ("publishers-io-"));
+	}
+
+	@Test
+	public void it_should_reuse_chunks_once_the_stream_has_read_them () throws Exception {
+		byte [] data = new byte [64 * 1024];
+		new Random (7).nextBytes (data);
+		Set<byte []> chunks = Collections.newSetFromMap (new IdentityHashMap<> ());
+
+		InputStream in = Publishers.toStream (Publishers.fromStream (() -> new ByteArrayInputStream (data) {
+			@Override public synchronized int read (byte [] b, int off, int len) {
+				chunks.add (b);
+				return super.read (b, off, len);
+			}
+		}, Runnable::run, 1024));
+
+		assertThat (in.readAllBytes (), is (data));
+		assertThat (chunks.size (), lessThan (16));
+	}
+
+	@Test
+	public void it_should_only_request_chunks_as_the_stream_is_read () throws Exception {
+		AtomicLong requested = new AtomicLong ();
+		List<Flow.Subscriber<? super ByteBuffer>> subscribers = new ArrayList<> ();
+		Flow.Publisher<ByteBuffer> publisher = subscriber -> {
+			subscribers.add (subscriber);
+			subscriber.onSubscribe (new Flow.Subscription () {
+				@Override public void request (long n) { requested.addAndGet (n); }
+				@Override public void cancel () {}
+			});
+		};
+
+		InputStream in = Publishers.toStream (publisher, 2);
+		assertThat (requested.get (), is (2L));
+
+		subscribers.get (0).onNext (ByteBuffer.wrap (new byte [] { 1 }));
+		subscribers.get (0).onNext (ByteBuffer.wrap (new byte [] { 2 }));
+		in.read ();
+		assertThat (requested.get (), is (2L));
+
+		in.read ();
+		assertThat (requested.get (), is (3L));
+	}
+
+	@Test
+	public void it_should_fail_the_stream_when_the_publisher_fails () {
+		SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<> ();
+		InputStream in = Publishers.toStream (publisher);
+
+		publisher.closeExceptionally (new IllegalStateException ("Broken source"));
+
+		assertThrows (IOException.class, in::readAllBytes);
+	}
+
+	@Test
+	public void it_should_cancel_the_publisher_when_the_stream_is_closed () throws Exception {
+		AtomicBoolean cancelled = new AtomicBoolean (false);
+		InputStream in = Publishers.toStream (subscriber -> subscriber.onSubscribe (new Flow.Subscription () {
+			@Override public void request (long n) {}
+			@Override public void cancel () { cancelled.set (true); }
+		}));
+
+		in.close ();
+
+		assertThat (cancelled.get (), is (true));
+		assertThat (in.read (), is (-1));
+	}
+
+	private static byte [] bytes (ByteBuffer buffer) {
+		byte [] bytes = new byte [buffer.remaining ()];
+		buffer.get (bytes);
+		return bytes;
+	}
+
+	private static class RecordingSubscriber implements Flow.Subscriber<ByteBuffer> {
+		private final List<ByteBuffer> chunks = new ArrayList<> ();
+		private Flow.Subscription subscription;
+		private Throwable error;
+		private boolean completed = false;
+
+		@Override public void onSubscribe (Flow.Subscription subscription) { this.subscription = subscription; }
+		@Override public void onNext (ByteBuffer item) { chunks.add (item); }
+		@Override public void onError (Throwable throwable) { this.error = throwable; }
+		@Override public void onComplete () { this.completed = true; }
+	}
+
+	@Test
+	public void it_should_publish_the_given_buffers_to_every_subscriber () throws Exception {
+		ByteBuffer buffer = ByteBuffer.wrap ("Hello".getBytes (StandardCharsets.UTF_8));
+		Flow.Publisher<ByteBuffer> publisher = Publishers.of (buffer, ByteBuffer.wrap (" World".getBytes (StandardCharsets.UTF_8)));
+
+		assertThat (new String (Publishers.toStream (publisher).readAllBytes (), StandardCharsets.UTF_8), is ("Hello World"));
+		assertThat (new String (Publishers.toStream (publisher).readAllBytes (), StandardCharsets.UTF_8), is ("Hello World"));
+		assertThat (buffer.remaining (), is (5));
+	}
+
+}
@@ -0,0 +1,158 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.utils.Bag;
+
+
+public class QueryStringTest {
+
+	@Test
+	public void it_should_find_plain_values () {
+		QueryString query = new QueryString ("page=2&limit=10");
+
+		assertThat (query.get ("page"), is ("2"));
+		assertThat (query.get ("limit"), is ("10"));
+	}
+
+	@Test
+	public void it_should_decode_escaped_values () {
+		QueryString query = new QueryString ("name=John+Doe&city=New%20York");
+
+		assertThat (query.get ("name"), is ("John Doe"));
+		assertThat (query.get ("city"), is ("New York"));
+	}
+
+	@Test
+	public void it_should_match_escaped_keys () {
+		QueryString query = new QueryString ("first+name=John&last%5Fname=Doe");
+
+		assertThat (query.get ("first name"), is ("John"));
+		assertThat (query.get ("last_name"), is ("Doe"));
+	}
+
+	@Test
+	public void it_should_give_the_first_value_for_repeated_keys () {
+		QueryString query = new QueryString ("tag=one&tag=two");
+
+		assertThat (query.get ("tag"), is ("one"));
+		assertThat (query.getAll ("tag"), contains ("one", "two"));
+	}
+
+	@Test
+	public void it_should_not_confuse_keys_that_share_a_prefix () {
+		QueryString query = new QueryString ("pages=3&page=2");
+		assertThat (query.get ("page"), is ("2"));
+	}
+
+	@Test
+	public void it_should_know_about_keys_without_values () {
+		QueryString query = new QueryString ("debug&page=");
+
+		assertThat (query.containsKey ("debug"), is (true));
+		assertThat (query.get ("debug"), nullValue ());
+		assertThat (query.get ("page"), nullValue ());
+		assertThat (query.containsKey ("other"), is (false));
+	}
+
+	@Test
+	public void it_should_skip_empty_segments () {
+		QueryString query = new QueryString ("&&page=2&");
+		assertThat (query.getAll ("page"), contains ("2"));
+		assertThat (query.decode ().size (), is (1));
+	}
+
+	@Test
+	public void it_should_handle_missing_query_strings () {
+		assertThat (new QueryString (null).isEmpty (), is (true));
+		assertThat (new QueryString ("").get ("page"), nullValue ());
+		assertThat (new QueryString (null).getAll ("page"), hasSize (0));
+	}
+
+	@Test
+	public void it_should_keep_the_raw_query_string () {
+		assertThat (new QueryString ("name=John+Doe").raw (), is ("name=John+Doe"));
+	}
+
+	@Test
+	public void it_should_decode_into_a_bag () {
+		Bag<String, String> bag = new QueryString ("tag=one&tag=two&name=John+Doe&debug").decode ();
+
+		assertThat (bag.get ("name"), is ("John Doe"));
+		assertThat (bag.getAll ("tag"), contains ("one", "two"));
+		assertThat (bag.containsKey ("debug"), is (true));
+	}
+
+	@Test
+	public void it_should_parse_numbers_from_the_raw_query_string () {
+		QueryString query = new QueryString ("limit=25&offset=-3&id=9223372036854775807");
+
+		assertThat (query.getInt ("limit", 10), is (25));
+		assertThat (query.getInt ("offset", 0), is (-3));
+		assertThat (query.getLong ("id", 0), is (Long.MAX_VALUE));
+	}
+
+	@Test
+	public void it_should_parse_numbers_from_escaped_values () {
+		assertThat (new QueryString ("limit=%32%35").getInt ("limit", 10), is (25));
+	}
+
+	@Test
+	public void it_should_use_the_fallback_for_missing_numbers () {
+		QueryString query = new QueryString ("limit=");
+
+		assertThat (query.getInt ("limit", 10), is (10));
+		assertThat (query.getLong ("offset", 7), is (7L));
+	}
+
+	@Test
+	public void it_should_reject_malformed_numbers () {
+		assertThrows (InputException.class, () -> new QueryString ("limit=ten").getInt ("limit", 10));
+		assertThrows (InputException.class, () -> new QueryString ("limit=-").getInt ("limit", 10));
+		assertThrows (InputException.class, () -> new QueryString ("limit=1.5").getLong ("limit", 10));
+	}
+
+	@Test
+	public void it_should_reject_numbers_that_overflow () {
+		assertThrows (InputException.class, () -> new QueryString ("id=9223372036854775808").getLong ("id", 0));
+		assertThrows (InputException.class, () -> new QueryString ("id=2147483648").getInt ("id", 0));
+		assertThat (new QueryString ("id=-9223372036854775808").getLong ("id", 0), is (Long.MIN_VALUE));
+	}
+
+	@Test
+	public void it_should_parse_booleans () {
+		QueryString query = new QueryString ("a=true&b=FALSE&c=1&d=0&flag");
+
+		assertThat (query.getBoolean ("a", false), is (true));
+		assertThat (query.getBoolean ("b", true), is (false));
+		assertThat (query.getBoolean ("c", false), is (true));
+		assertThat (query.getBoolean ("d", true), is (false));
+		assertThat (query.getBoolean ("flag", false), is (true));
+		assertThat (query.getBoolean ("missing", true), is (true));
+	}
+
+	@Test
+	public void it_should_reject_malformed_booleans () {
+		assertThrows (InputException.class, () -> new QueryString ("a=maybe").getBoolean ("a", false));
+	}
+
+	@Test
+	public void it_should_encode_a_bag_of_parameters () {
+		Bag<String, String> params = new Bag<> ();
+		params.add ("name", "John & Doe");
+		params.add ("tag", "one");
+		params.add ("tag", "two");
+		params.add ("debug");
+
+		QueryString query = QueryString.encode (params);
+
+		assertThat (query.get ("name"), is ("John & Doe"));
+		assertThat (query.getAll ("tag"), contains ("one", "two"));
+		assertThat (query.getBoolean ("debug", false), is (true));
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+import org.tutske.lib.json.Json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+public class RequestBodyTest {
+
+	@Test
+	public void it_should_read_bodies_of_unknown_length () throws IOException {
+		RequestBody body = RequestBody.read (stream ("content"), -1, 1024);
+
+		assertThat (body.length (), is (7));
+		assertThat (body.bytes (), is ("content".getBytes ()));
+	}
+
+	@Test
+	public void it_should_read_bodies_of_known_length () throws IOException {
+		RequestBody body = RequestBody.read (stream ("content"), 7, 1024);
+		assertThat (body.string (StandardCharsets.UTF_8), is ("content"));
+	}
+
+	@Test
+	public void it_should_read_bodies_larger_than_a_chunk () throws IOException {
+		byte [] content = new byte [100_000];
+		Arrays.fill (content, (byte) 'x');
+		content[content.length - 1] = 'y';
+
+		RequestBody body = RequestBody.read (new ByteArrayInputStream (content), -1, 1024 * 1024);
+
+		assertThat (body.bytes (), is (content));
+	}
+
+	@Test
+	public void it_should_handle_a_missing_stream () throws IOException {
+		assertThat (RequestBody.read (null, -1, 1024).length (), is (0));
+	}
+
+	@Test
+	public void it_should_reject_bodies_over_the_limit () {
+		assertThrows (PayloadTooLargeException.class, () -> RequestBody.read (stream ("content"), -1, 4));
+	}
+
+	@Test
+	public void it_should_reject_declared_lengths_over_the_limit () {
+		assertThrows (PayloadTooLargeException.class, () -> RequestBody.read (stream ("content"), 7, 4));
+	}
+
+	@Test
+	public void it_should_give_fresh_streams_over_the_same_content () throws IOException {
+		RequestBody body = RequestBody.read (stream ("content"), -1, 1024);
+
+		assertThat (body.inputstream ().readAllBytes (), is ("content".getBytes ()));
+		assertThat (body.inputstream ().readAllBytes (), is ("content".getBytes ()));
+	}
+
+	@Test
+	public void it_should_parse_json_from_the_buffer () throws IOException {
+		RequestBody body = RequestBody.read (stream ("{\"id\":1}"), -1, 1024);
+		ObjectMapper mapper = new ObjectMapper ();
+
+		assertThat (body.json (mapper), is (Json.objectNode ("id", 1)));
+		assertThat (body.json (mapper, JsonNode.class), is (Json.objectNode ("id", 1)));
+	}
+
+	@Test
+	public void it_should_read_the_wrapped_body_only_once () throws IOException {
+		Request request = new BufferedRequest (RequestTest.outputstreamRequest (stream ("{\"id\":1}")));
+
+		assertThat (request.body (), is ("{\"id\":1}"));
+		assertThat (request.json (), is (Json.objectNode ("id", 1)));
+		assertThat (request.inputstream ().readAllBytes (), is ("{\"id\":1}".getBytes ()));
+	}
+
+	private ByteArrayInputStream stream (String content) {
+		return new ByteArrayInputStream (content.getBytes (StandardCharsets.UTF_8));
+	}
+
+}
@@ -2,8 +2,13 @@ package org.tutske.lib.api;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.exceptions.InputException;
 import org.tutske.lib.utils.Bag;
 
 import java.io.ByteArrayInputStream;
@@ -14,6 +19,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 public class RequestTest {
@@ -73,6 +80,73 @@ public class RequestTest {
 		future.get ();
 	}
 
+	@Test
+	public void it_should_parse_typed_query_parameters () {
+		Request request = paramsRequest ("limit", "25", "debug", "true");
+
+		assertThat (request.queryInt ("limit", 10), is (25));
+		assertThat (request.queryLong ("limit", 10), is (25L));
+		assertThat (request.queryBoolean ("debug", false), is (true));
+		assertThat (request.queryInt ("offset", 3), is (3));
+	}
+
+	@Test
+	public void it_should_parse_typed_path_parameters () {
+		Request request = paramsRequest ("id", "42");
+
+		assertThat (request.pathLong ("id", 0), is (42L));
+		assertThat (request.pathInt ("other", 7), is (7));
+	}
+
+	@Test
+	public void it_should_reject_malformed_typed_parameters () {
+		Request request = paramsRequest ("id", "forty-two");
+
+		assertThrows (InputException.class, () -> request.pathLong ("id", 0));
+		assertThrows (InputException.class, () -> request.queryInt ("id", 0));
+	}
+
+	@Test
+	public void it_should_stream_the_elements_of_a_json_array () throws IOException {
+		Request request = outputstreamRequest (new ByteArrayInputStream ("[{\"id\":1},{\"id\":2}]".getBytes ()));
+
+		try ( Stream<JsonNode> elements = request.jsonStream (JsonNode.class) ) {
+			assertThat (elements.map (node -> node.get ("id").asInt ()).collect (Collectors.toList ()), contains (1, 2));
+		}
+	}
+
+	@Test
+	public void it_should_stream_nothing_for_an_empty_body () throws IOException {
+		Request request = outputstreamRequest (new ByteArrayInputStream (new byte [] {}));
+		assertThat (request.jsonStream (JsonNode.class).count (), is (0L));
+	}
+
+	@Test
+	public void it_should_complain_when_streaming_a_body_that_is_not_an_array () {
+		Request request = outputstreamRequest (new ByteArrayInputStream ("{\"id\":1}".getBytes ()));
+		assertThrows (InputException.class, () -> request.jsonStream (JsonNode.class));
+	}
+
+	@Test
+	public void it_should_give_a_parser_over_the_body () throws IOException {
+		Request request = outputstreamRequest (new ByteArrayInputStream ("{\"id\":1}".getBytes ()));
+
+		try ( JsonParser parser = request.jsonParser () ) {
+			assertThat (parser.nextToken (), is (JsonToken.START_OBJECT));
+			assertThat (parser.nextFieldName (), is ("id"));
+		}
+	}
+
+	public static Request paramsRequest (String ... pairs) {
+		Bag<String, String> params = new Bag<> ();
+		for ( int i = 0; i < pairs.length; i += 2 ) { params.add (pairs[i], pairs[i + 1]); }
+
+		return new EmptyRequest () {
+			@Override public Bag<String, String> pathParams () { return params; }
+			@Override public Bag<String, String> queryParams () { return params; }
+		};
+	}
+
 	public static Request bytesRequest (byte [] body) {
 		return new EmptyRequest () {
 			@Override public byte [] bytes () {
@@ -0,0 +1,257 @@
+package org.tutske.lib.api;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.exceptions.NotFoundException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+public class StaticAssetsTest {
+
+	private final Path root = createDirectory ();
+	private final StaticAssets assets = createAssets (root, new StaticAssets.Config () {{ watch = false; }});
+	private final Client client = DirectClient.fromApi (api -> {
+		api.route ("/assets/::path", EnumSet.of (Method.GET, Method.HEAD), assets.route ());
+	});
+
+	@Test
+	public void it_should_serve_files_with_a_strong_etag () throws Exception {
+		write ("app.css", "body { color: red; }");
+		Client.Response response = get ("/assets/app.css");
+
+		assertThat (response.status (), is (200));
+		assertThat (response.body (), is ("body { color: red; }"));
+		assertThat (response.headers ().get ("Content-Type"), startsWith ("text/css"));
+		assertThat (response.headers ().get ("Content-Length"), is ("20"));
+		assertThat (response.headers ().get ("ETag"), startsWith ("\""));
+		assertThat (response.headers ().get ("Cache-Control"), is ("no-cache"));
+	}
+
+	@Test
+	public void it_should_reply_not_modified_for_matching_etags () throws Exception {
+		write ("app.js", "console.log ('hi');");
+		String etag = get ("/assets/app.js").headers ().get ("ETag");
+
+		Client.Response response = client.request (Method.GET, "/assets/app.js")
+			.withHeader ("If-None-Match", etag)
+			.send ().get ();
+
+		assertThat (response.status (), is (304));
+	}
+
+	@Test
+	public void it_should_serve_the_precompressed_variant_when_accepted () throws Exception {
+		write ("app.js", "console.log ('hi');");
+		Files.write (root.resolve ("app.js.gz"), gzip ("console.log ('hi');"));
+
+		Client.Response plain = get ("/assets/app.js");
+		Client.Response compressed = client.request (Method.GET, "/assets/app.js")
+			.withHeader ("Accept-Encoding", "gzip, deflate")
+			.send ().get ();
+
+		assertThat (plain.headers ().get ("Content-Encoding"), nullValue ());
+		assertThat (plain.headers ().get ("Vary"), is ("Accept-Encoding"));
+		assertThat (compressed.headers ().get ("Content-Encoding"), is ("gzip"));
+		assertThat (compressed.headers ().get ("ETag"), not (plain.headers ().get ("ETag")));
+		assertThat (gunzip (compressed.bytes ()), is ("console.log ('hi');"));
+	}
+
+	@Test
+	public void it_should_cache_fingerprinted_files_forever () throws Exception {
+		write ("app.3f2a9c1b.js", "console.log ('hi');");
+		Client.Response response = get ("/assets/app.3f2a9c1b.js");
+
+		assertThat (response.headers ().get ("Cache-Control"), containsString ("immutable"));
+		assertThat (response.headers ().get ("Cache-Control"), containsString ("max-age=31536000"));
+	}
+
+	@Test
+	public void it_should_serve_the_index_of_directories () throws Exception {
+		Files.createDirectories (root.resolve ("docs"));
+		write ("docs/index.html", "<h1>Docs</h1>");
+
+		Client.Response response = get ("/assets/docs");
+
+		assertThat (response.status (), is (200));
+		assertThat (response.body (), is ("<h1>Docs</h1>"));
+		assertThat (response.headers ().get ("Content-Type"), startsWith ("text/html"));
+	}
+
+	@Test
+	public void it_should_not_serve_files_outside_of_the_root () throws Exception {
+		write ("app.css", "body {}");
+		Files.write (root.resolveSibling (root.getFileName () + "-secret.txt"), "secret".getBytes (StandardCharsets.UTF_8));
+
+		Client.Response response = get ("/assets/..%2F" + root.getFileName () + "-secret.txt");
+		assertThat (response.status (), is (NotFoundException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_not_serve_hidden_files () throws Exception {
+		write (".env", "SECRET=1");
+		assertThat (get ("/assets/.env").status (), is (NotFoundException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_reply_not_found_for_missing_files () throws Exception {
+		assertThat (get ("/assets/missing.css").status (), is (NotFoundException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_only_send_headers_for_head_requests () throws Exception {
+		write ("app.css", "body {}");
+		Client.Response response = client.request (Method.HEAD, "/assets/app.css").send ().get ();
+
+		assertThat (response.status (), is (200));
+		assertThat (response.headers ().get ("Content-Length"), is ("7"));
+		assertThat (response.bytes ().length, is (0));
+	}
+
+	@Test
+	public void it_should_serve_large_files_from_disk_with_ranges () throws Exception {
+		StaticAssets small = createAssets (root, new StaticAssets.Config () {{ watch = false; maxFileSize = 4; }});
+		Client client = DirectClient.fromApi (api -> api.route ("/assets/::path", small.route ()));
+		write ("large.txt", "0123456789");
+
+		Client.Response response = client.request (Method.GET, "/assets/large.txt")
+			.withHeader ("Range", "bytes=2-4")
+			.send ().get ();
+
+		assertThat (response.status (), is (206));
+		assertThat (response.body (), is ("234"));
+		assertThat (small.size (), is (0));
+	}
+
+	@Test
+	public void it_should_pick_up_changed_files_without_a_watcher () throws Exception {
+		write ("app.css", "body {}");
+		assertThat (get ("/assets/app.css").body (), is ("body {}"));
+
+		write ("app.css", "body { margin: 0; }");
+		assertThat (get ("/assets/app.css").body (), is ("body { margin: 0; }"));
+	}
+
+	@Test
+	public void it_should_pick_up_changed_compressed_variants_without_a_watcher () throws Exception {
+		write ("app.js", "console.log ('hi');");
+		Files.write (root.resolve ("app.js.gz"), gzip ("console.log ('hi');"));
+		assertThat (gunzip (gzipped ("/assets/app.js").bytes ()), is ("console.log ('hi');"));
+
+		Files.write (root.resolve ("app.js.gz"), gzip ("console.log ('hello');"));
+		assertThat (gunzip (gzipped ("/assets/app.js").bytes ()), is ("console.log ('hello');"));
+	}
+
+	@Test
+	public void it_should_pick_up_added_and_removed_compressed_variants_without_a_watcher () throws Exception {
+		write ("app.js", "console.log ('hi');");
+		assertThat (gzipped ("/assets/app.js").headers ().get ("Content-Encoding"), nullValue ());
+
+		Files.write (root.resolve ("app.js.gz"), gzip ("console.log ('hi');"));
+		assertThat (gzipped ("/assets/app.js").headers ().get ("Content-Encoding"), is ("gzip"));
+
+		Files.delete (root.resolve ("app.js.gz"));
+		assertThat (gzipped ("/assets/app.js").headers ().get ("Content-Encoding"), nullValue ());
+	}
+
+	@Test
+	public void it_should_drop_changed_files_from_the_cache_when_watching () throws Exception {
+		try ( StaticAssets watched = createAssets (root, new StaticAssets.Config ()) ) {
+			Client client = DirectClient.fromApi (api -> api.route ("/assets/::path", watched.route ()));
+			write ("app.css", "body {}");
+			assertThat (client.request (Method.GET, "/assets/app.css").send ().get ().body (), is ("body {}"));
+			assertThat (watched.size (), is (1));
+
+			write ("app.css", "body { margin: 0; }");
+			long deadline = System.currentTimeMillis () + 15000;
+			while ( watched.size () > 0 && System.currentTimeMillis () < deadline ) { Thread.sleep (50); }
+
+			assertThat (watched.size (), is (0));
+			assertThat (client.request (Method.GET, "/assets/app.css").send ().get ().body (), is ("body { margin: 0; }"));
+		}
+	}
+
+	@Test
+	public void it_should_not_start_a_watcher_from_the_route_factories () throws Exception {
+		long before = watchers ();
+		Client client = DirectClient.fromApi (api -> api.route ("/assets/::path", StaticAssets.route (root)));
+		write ("app.css", "body {}");
+
+		assertThat (watchers (), lessThanOrEqualTo (before));
+		assertThat (client.request (Method.GET, "/assets/app.css").send ().get ().body (), is ("body {}"));
+	}
+
+	@Test
+	public void it_should_evict_the_least_recently_used_files () throws Exception {
+		StaticAssets bounded = createAssets (root, new StaticAssets.Config () {{ watch = false; maxEntries = 2; }});
+		Client client = DirectClient.fromApi (api -> api.route ("/assets/::path", bounded.route ()));
+		write ("a.txt", "a");
+		write ("b.txt", "b");
+		write ("c.txt", "c");
+
+		for ( String name : new String [] { "a.txt", "b.txt", "a.txt", "c.txt" } ) {
+			client.request (Method.GET, "/assets/" + name).send ().get ();
+		}
+
+		assertThat (bounded.size (), is (2));
+		assertThat (bounded.bytes (), is (2L));
+	}
+
+	private Client.Response get (String path) throws Exception {
+		return client.request (Method.GET, path).send ().get ();
+	}
+
+	private Client.Response gzipped (String path) throws Exception {
+		return client.request (Method.GET, path).withHeader ("Accept-Encoding", "gzip").send ().get ();
+	}
+
+	private static long watchers () {
+		return Thread.getAllStackTraces ().keySet ().stream ()
+			.filter (thread -> thread.getName ().equals ("static-assets-watcher"))
+			.count ();
+	}
+
+	private void write (String name, String content) throws IOException {
+		Files.write (root.resolve (name), content.getBytes (StandardCharsets.UTF_8));
+	}
+
+	private static byte [] gzip (String content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		try ( GZIPOutputStream gzip = new GZIPOutputStream (out) ) {
+			gzip.write (content.getBytes (StandardCharsets.UTF_8));
+		}
+		return out.toByteArray ();
+	}
+
+	private static String gunzip (byte [] bytes) throws IOException {
+		try ( GZIPInputStream in = new GZIPInputStream (new ByteArrayInputStream (bytes)) ) {
+			return new String (in.readAllBytes (), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static Path createDirectory () {
+		try {
+			Path directory = Files.createTempDirectory ("static-assets");
+			directory.toFile ().deleteOnExit ();
+			return directory;
+		} catch ( IOException e ) {
+			throw new RuntimeException (e);
+		}
+	}
+
+	private static StaticAssets createAssets (Path root, StaticAssets.Config config) {
+		try { return new StaticAssets (root, config); }
+		catch ( IOException e ) { throw new RuntimeException (e); }
+	}
+
+}
@@ -0,0 +1,236 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.tutske.lib.api.Method.GET;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Client;
+import org.tutske.lib.api.DirectClient;
+import org.tutske.lib.api.RequestTest;
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.api.exceptions.ServiceUnavailableException;
+import org.tutske.lib.json.Json;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+
+public class CircuitBreakerTest {
+
+	private final MutableClock clock = new MutableClock ();
+	private int status = 200;
+	private int calls = 0;
+
+	@Test
+	public void it_should_let_requests_through_while_closed () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = createClient (breaker);
+
+		assertThat (send (client), is (200));
+		assertThat (breaker.state (), is (CircuitBreaker.State.CLOSED));
+		assertThat (breaker.calls (), is (1L));
+	}
+
+	@Test
+	public void it_should_open_when_the_failure_rate_is_exceeded () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = createClient (breaker);
+
+		status = 502;
+		for ( int i = 0; i < 4; i++ ) { send (client); }
+
+		assertThat (breaker.state (), is (CircuitBreaker.State.OPEN));
+		assertThat (breaker.failureRate (), is (1.0));
+	}
+
+	@Test
+	public void it_should_not_open_before_the_minimum_number_of_calls () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = createClient (breaker);
+
+		status = 502;
+		for ( int i = 0; i < 3; i++ ) { send (client); }
+
+		assertThat (breaker.state (), is (CircuitBreaker.State.CLOSED));
+	}
+
+	@Test
+	public void it_should_reject_requests_without_calling_the_chain_while_open () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = createClient (breaker);
+
+		status = 502;
+		for ( int i = 0; i < 4; i++ ) { send (client); }
+		Client.Response response = client.request (GET, "/test").send ().get ();
+
+		assertThat (response.status (), is (ServiceUnavailableException.STATUS_CODE));
+		assertThat (response.headers ().get ("Retry-After"), is ("30"));
+		assertThat (calls, is (4));
+		assertThat (breaker.rejections (), is (1L));
+	}
+
+	@Test
+	public void it_should_answer_with_the_fallback_while_open () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, new CircuitBreaker.Config (0.5, Duration.ofSeconds (30)) {{
+			minimumCalls = 4;
+			fallback = req -> req.reply (200, Collections.emptyMap (), Json.objectNode ("cached", true));
+		}});
+		Client client = createClient (breaker);
+
+		status = 502;
+		for ( int i = 0; i < 4; i++ ) { send (client); }
+
+		assertThat (send (client), is (200));
+		assertThat (calls, is (4));
+	}
+
+	@Test
+	public void it_should_count_exceptions_as_failures () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", breaker);
+			api.route ("/test", req -> { throw new IllegalStateException ("downstream failed"); });
+		});
+
+		for ( int i = 0; i < 4; i++ ) { send (client); }
+
+		assertThat (breaker.state (), is (CircuitBreaker.State.OPEN));
+	}
+
+	@Test
+	public void it_should_not_count_client_errors_as_failures () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", breaker);
+			api.route ("/test", req -> { throw new InputException ("bad input"); });
+		});
+
+		for ( int i = 0; i < 4; i++ ) { send (client); }
+
+		assertThat (breaker.state (), is (CircuitBreaker.State.CLOSED));
+		assertThat (breaker.failures (), is (0L));
+	}
+
+	@Test
+	public void it_should_forget_failures_that_slid_out_of_the_window () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = createClient (breaker);
+
+		status = 502;
+		for ( int i = 0; i < 3; i++ ) { send (client); }
+		clock.advance (Duration.ofSeconds (11));
+		send (client);
+
+		assertThat (breaker.state (), is (CircuitBreaker.State.CLOSED));
+		assertThat (breaker.calls (), is (1L));
+	}
+
+	@Test
+	public void it_should_probe_after_the_open_duration () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = createClient (breaker);
+
+		status = 502;
+		for ( int i = 0; i < 4; i++ ) { send (client); }
+		clock.advance (Duration.ofSeconds (30));
+
+		assertThat (breaker.state (), is (CircuitBreaker.State.HALF_OPEN));
+	}
+
+	@Test
+	public void it_should_close_after_successful_probes () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = createClient (breaker);
+
+		status = 502;
+		for ( int i = 0; i < 4; i++ ) { send (client); }
+		clock.advance (Duration.ofSeconds (30));
+		status = 200;
+		for ( int i = 0; i < 3; i++ ) { send (client); }
+
+		assertThat (breaker.state (), is (CircuitBreaker.State.CLOSED));
+		assertThat (breaker.calls (), is (0L));
+	}
+
+	@Test
+	public void it_should_open_again_when_a_probe_fails () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		Client client = createClient (breaker);
+
+		status = 502;
+		for ( int i = 0; i < 4; i++ ) { send (client); }
+		clock.advance (Duration.ofSeconds (30));
+		send (client);
+
+		assertThat (breaker.state (), is (CircuitBreaker.State.OPEN));
+		assertThat (send (client), is (ServiceUnavailableException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_give_back_probe_slots_when_the_chain_returns_null () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		trip (breaker);
+		clock.advance (Duration.ofSeconds (30));
+
+		for ( int i = 0; i < 5; i++ ) {
+			assertThat (run (breaker, null), nullValue ());
+		}
+		assertThat (breaker.state (), is (CircuitBreaker.State.HALF_OPEN));
+		assertThat (breaker.rejections (), is (0L));
+	}
+
+	@Test
+	public void it_should_start_new_probes_when_the_old_ones_hang () throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker (clock, config ());
+		trip (breaker);
+		clock.advance (Duration.ofSeconds (30));
+
+		List<CompletableFuture<Void>> hanging = new ArrayList<> ();
+		for ( int i = 0; i < 3; i++ ) { hanging.add (run (breaker, new CompletableFuture<> ())); }
+		assertThrows (ServiceUnavailableException.class, () -> run (breaker, new CompletableFuture<> ()));
+
+		clock.advance (Duration.ofSeconds (30));
+		CompletableFuture<Void> probe = run (breaker, new CompletableFuture<> ());
+		hanging.forEach (future -> future.complete (null));
+
+		assertThat (breaker.state (), is (CircuitBreaker.State.HALF_OPEN));
+		probe.complete (null);
+		assertThat (breaker.state (), is (CircuitBreaker.State.HALF_OPEN));
+	}
+
+	private void trip (CircuitBreaker breaker) {
+		for ( int i = 0; i < 4; i++ ) { run (breaker, CompletableFuture.failedFuture (new IllegalStateException ())); }
+		assertThat (breaker.state (), is (CircuitBreaker.State.OPEN));
+	}
+
+	private CompletableFuture<Void> run (CircuitBreaker breaker, CompletableFuture<Void> result) {
+		return new Chain<> ("test", req -> result, Collections.singletonList (breaker)).apply (new RequestTest.EmptyRequest ());
+	}
+
+	private CircuitBreaker.Config config () {
+		return new CircuitBreaker.Config (0.5, Duration.ofSeconds (30)) {{
+			minimumCalls = 4;
+		}};
+	}
+
+	private Client createClient (CircuitBreaker breaker) {
+		return DirectClient.fromApi (api -> {
+			api.filter ("/::path", breaker);
+			api.route ("/test", req -> {
+				calls++;
+				return req.reply (status, Collections.emptyMap (), Json.objectNode ("status", status));
+			});
+		});
+	}
+
+	private int send (Client client) throws Exception {
+		return client.request (GET, "/test").send ().get ().status ();
+	}
+
+}
@@ -0,0 +1,211 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.tutske.lib.api.Method.GET;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.API;
+import org.tutske.lib.api.Client;
+import org.tutske.lib.api.DirectClient;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.json.Json;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+
+public class CompressionTest {
+
+	private static final String CONTENT = "The content that will be compressed. ".repeat (100);
+
+	@Test
+	public void it_should_negotiate_the_preferred_encoding () {
+		assertThat (Compression.negotiate ("gzip, deflate"), is (Compression.Encoding.GZIP));
+		assertThat (Compression.negotiate ("deflate"), is (Compression.Encoding.DEFLATE));
+		assertThat (Compression.negotiate ("gzip;q=0.5, deflate"), is (Compression.Encoding.DEFLATE));
+		assertThat (Compression.negotiate ("gzip;q=0, br"), nullValue ());
+		assertThat (Compression.negotiate ("identity"), nullValue ());
+		assertThat (Compression.negotiate (null), nullValue ());
+	}
+
+	@Test
+	public void it_should_gzip_stream_replies () throws Exception {
+		Client client = createClient (api -> api.route ("/", req -> req.reply (
+			Collections.singletonMap ("Content-Type", "text/plain"),
+			new ByteArrayInputStream (CONTENT.getBytes (StandardCharsets.UTF_8))
+		)));
+
+		Client.Response response = client.request (GET, "/").withHeader ("Accept-Encoding", "gzip").send ().get ();
+
+		assertThat (response.headers ().get ("Content-Encoding"), is ("gzip"));
+		assertThat (gunzip (response.inputstream ()), is (CONTENT));
+	}
+
+	@Test
+	public void it_should_deflate_stream_replies () throws Exception {
+		Client client = createClient (api -> api.route ("/", req -> req.reply (
+			Collections.singletonMap ("Content-Type", "text/plain"),
+			CONTENT.getBytes (StandardCharsets.UTF_8)
+		)));
+
+		Client.Response response = client.request (GET, "/").withHeader ("Accept-Encoding", "deflate").send ().get ();
+		byte [] inflated = new InflaterInputStream (response.inputstream ()).readAllBytes ();
+
+		assertThat (response.headers ().get ("Content-Encoding"), is ("deflate"));
+		assertThat (new String (inflated, StandardCharsets.UTF_8), is (CONTENT));
+	}
+
+	@Test
+	public void it_should_compress_json_payloads () throws Exception {
+		Client client = createClient (api -> api.route ("/", req -> req.reply (
+			Json.objectNode ("content", CONTENT)
+		)));
+
+		Client.Response response = client.request (GET, "/").withHeader ("Accept-Encoding", "gzip").send ().get ();
+		JsonNode json = new ObjectMapper ().readTree (gunzip (response.inputstream ()));
+
+		assertThat (response.headers ().get ("Content-Type"), is ("application/json"));
+		assertThat (json.get ("content").asText (), is (CONTENT));
+	}
+
+	@Test
+	public void it_should_serialize_json_payloads_with_the_mapper_of_the_transport () throws Exception {
+		ObjectMapper mapper = new ObjectMapper ().setPropertyNamingStrategy (PropertyNamingStrategies.SNAKE_CASE);
+		Client client = DirectClient.fromApi (mapper, api -> {
+			api.filter ("/::path", new Compression ());
+			api.route ("/", req -> req.reply (new Payload (CONTENT)));
+		});
+
+		Client.Response response = client.request (GET, "/").withHeader ("Accept-Encoding", "gzip").send ().get ();
+		JsonNode json = new ObjectMapper ().readTree (gunzip (response.inputstream ()));
+
+		assertThat (json.get ("payload_content").asText (), is (CONTENT));
+	}
+
+	@Test
+	public void it_should_vary_on_accept_encoding_for_every_compressible_reply () throws Exception {
+		Client client = createClient (api -> {
+			api.route ("/large", req -> req.reply (Collections.singletonMap ("Content-Type", "text/plain"), CONTENT.getBytes ()));
+			api.route ("/small", req -> req.reply (Json.objectNode ("content", "small")));
+			api.route ("/image", req -> req.reply (Collections.singletonMap ("Content-Type", "image/png"), CONTENT.getBytes ()));
+		});
+
+		Client.Response plain = client.request (GET, "/large").send ().get ();
+		Client.Response small = client.request (GET, "/small").withHeader ("Accept-Encoding", "gzip").send ().get ();
+		Client.Response image = client.request (GET, "/image").withHeader ("Accept-Encoding", "gzip").send ().get ();
+
+		assertThat (plain.headers ().get ("Content-Encoding"), nullValue ());
+		assertThat (plain.headers ().get ("Vary"), is ("Accept-Encoding"));
+		assertThat (small.headers ().get ("Content-Encoding"), nullValue ());
+		assertThat (small.headers ().get ("Vary"), is ("Accept-Encoding"));
+		assertThat (small.headers ().get ("Content-Type"), is ("application/json"));
+		assertThat (small.body (), containsString ("small"));
+		assertThat (image.headers ().get ("Vary"), nullValue ());
+	}
+
+	@Test
+	public void it_should_keep_the_vary_values_of_other_filters () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Cors<> (new Cors.Config ("https://app.example.com")));
+			api.filter ("/::path", new Compression ());
+			api.route ("/", req -> req.reply (Collections.singletonMap ("Vary", "Cookie"), Json.objectNode ("content", CONTENT)));
+		});
+
+		Client.Response response = client.request (GET, "/")
+			.withHeader ("Origin", "https://app.example.com")
+			.withHeader ("Accept-Encoding", "gzip")
+			.send ().get ();
+
+		assertThat (response.headers ().get ("Vary"), is ("Origin, Cookie, Accept-Encoding"));
+	}
+
+	@Test
+	public void it_should_merge_vary_values () {
+		assertThat (Headers.vary (null, "Accept-Encoding"), is ("Accept-Encoding"));
+		assertThat (Headers.vary ("Origin", "accept-encoding"), is ("Origin, accept-encoding"));
+		assertThat (Headers.vary ("Origin, Accept-Encoding", "accept-encoding"), is ("Origin, Accept-Encoding"));
+		assertThat (Headers.vary ("*", "Origin"), is ("*"));
+	}
+
+	@Test
+	public void it_should_not_compress_when_the_client_does_not_accept_it () throws Exception {
+		Client client = createClient (api -> api.route ("/", req -> req.reply (
+			Collections.singletonMap ("Content-Type", "text/plain"),
+			new ByteArrayInputStream (CONTENT.getBytes (StandardCharsets.UTF_8))
+		)));
+
+		Client.Response response = client.request (GET, "/").send ().get ();
+
+		assertThat (response.headers ().get ("Content-Encoding"), nullValue ());
+		assertThat (response.body (), is (CONTENT));
+	}
+
+	@Test
+	public void it_should_not_compress_small_replies () throws Exception {
+		Client client = createClient (api -> api.route ("/", req -> req.reply (
+			Collections.singletonMap ("Content-Type", "text/plain"),
+			new ByteArrayInputStream ("small".getBytes (StandardCharsets.UTF_8))
+		)));
+
+		Client.Response response = client.request (GET, "/").withHeader ("Accept-Encoding", "gzip").send ().get ();
+
+		assertThat (response.headers ().get ("Content-Encoding"), nullValue ());
+		assertThat (response.body (), is ("small"));
+	}
+
+	@Test
+	public void it_should_not_compress_content_types_that_are_not_allowed () throws Exception {
+		Client client = createClient (api -> api.route ("/", req -> req.reply (
+			Collections.singletonMap ("Content-Type", "image/png"),
+			new ByteArrayInputStream (CONTENT.getBytes (StandardCharsets.UTF_8))
+		)));
+
+		Client.Response response = client.request (GET, "/").withHeader ("Accept-Encoding", "gzip").send ().get ();
+
+		assertThat (response.headers ().get ("Content-Encoding"), nullValue ());
+		assertThat (response.body (), is (CONTENT));
+	}
+
+	@Test
+	public void it_should_reuse_deflaters_from_the_pool () throws Exception {
+		DeflaterPool pool = new DeflaterPool (Deflater.DEFAULT_COMPRESSION, true, 4);
+
+		String first = gunzip (CompressingInputStream.gzip (new ByteArrayInputStream (CONTENT.getBytes ()), pool));
+		String second = gunzip (CompressingInputStream.gzip (new ByteArrayInputStream ("other".getBytes ()), pool));
+
+		assertThat (first, is (CONTENT));
+		assertThat (second, is ("other"));
+		assertThat (pool.idle (), is (1));
+	}
+
+	public static class Payload {
+		public final String payloadContent;
+
+		public Payload (String payloadContent) {
+			this.payloadContent = payloadContent;
+		}
+	}
+
+	private Client createClient (API.Producer<Request> producer) {
+		return DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Compression ());
+			producer.accept (api);
+		});
+	}
+
+	private String gunzip (InputStream in) throws Exception {
+		try ( InputStream stream = new GZIPInputStream (in) ) {
+			return new String (stream.readAllBytes (), StandardCharsets.UTF_8);
+		}
+	}
+
+}
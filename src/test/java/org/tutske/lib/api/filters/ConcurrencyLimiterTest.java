@@ -0,0 +1,153 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.RequestTest;
+import org.tutske.lib.api.exceptions.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+
+public class ConcurrencyLimiterTest {
+
+	private final MutableClock clock = new MutableClock ();
+	private final Request request = new RequestTest.EmptyRequest ();
+
+	@Test
+	public void it_should_let_requests_through_below_the_limit () {
+		ConcurrencyLimiter<Request> limiter = new ConcurrencyLimiter<> (clock, new ConcurrencyLimiter.Config (2, Duration.ofSeconds (1)));
+
+		run (limiter, "route", new CompletableFuture<> ());
+		run (limiter, "route", new CompletableFuture<> ());
+
+		assertThat (limiter.inFlight ("route"), is (2));
+	}
+
+	@Test
+	public void it_should_reject_requests_over_the_limit () {
+		ConcurrencyLimiter<Request> limiter = new ConcurrencyLimiter<> (clock, new ConcurrencyLimiter.Config (1, Duration.ofSeconds (1)));
+
+		run (limiter, "route", new CompletableFuture<> ());
+
+		assertThrows (ServiceUnavailableException.class, () -> {
+			run (limiter, "route", new CompletableFuture<> ());
+		});
+		assertThat (limiter.rejections ("route"), is (1L));
+		assertThat (limiter.rejections (), is (1L));
+	}
+
+	@Test
+	public void it_should_keep_limits_per_route () {
+		ConcurrencyLimiter<Request> limiter = new ConcurrencyLimiter<> (clock, new ConcurrencyLimiter.Config (1, Duration.ofSeconds (1)));
+
+		run (limiter, "first", new CompletableFuture<> ());
+		run (limiter, "second", new CompletableFuture<> ());
+
+		assertThat (limiter.inFlight ("first"), is (1));
+		assertThat (limiter.inFlight ("second"), is (1));
+	}
+
+	@Test
+	public void it_should_release_when_the_reply_completes () {
+		ConcurrencyLimiter<Request> limiter = new ConcurrencyLimiter<> (clock, new ConcurrencyLimiter.Config (1, Duration.ofSeconds (1)));
+		CompletableFuture<Void> future = new CompletableFuture<> ();
+
+		run (limiter, "route", future);
+		future.complete (null);
+
+		assertThat (limiter.inFlight ("route"), is (0));
+		run (limiter, "route", new CompletableFuture<> ());
+	}
+
+	@Test
+	public void it_should_increase_the_limit_on_fast_replies () {
+		ConcurrencyLimiter<Request> limiter = new ConcurrencyLimiter<> (clock, new ConcurrencyLimiter.Config (2, Duration.ofSeconds (1)));
+
+		run (limiter, "route", CompletableFuture.completedFuture (null));
+
+		assertThat (limiter.limit ("route"), is (3));
+	}
+
+	@Test
+	public void it_should_decrease_the_limit_on_slow_replies () {
+		ConcurrencyLimiter<Request> limiter = new ConcurrencyLimiter<> (clock, new ConcurrencyLimiter.Config () {{
+			initial = 10;
+			backoff = 0.5;
+			latency = Duration.ofMillis (100);
+		}});
+		CompletableFuture<Void> future = new CompletableFuture<> ();
+
+		run (limiter, "route", future);
+		clock.advance (Duration.ofMillis (200));
+		future.complete (null);
+
+		assertThat (limiter.limit ("route"), is (5));
+	}
+
+	@Test
+	public void it_should_decrease_the_limit_once_for_a_burst_of_slow_replies () {
+		ConcurrencyLimiter<Request> limiter = new ConcurrencyLimiter<> (clock, new ConcurrencyLimiter.Config () {{
+			initial = 10;
+			backoff = 0.5;
+			latency = Duration.ofMillis (100);
+		}});
+		CompletableFuture<Void> first = new CompletableFuture<> ();
+		CompletableFuture<Void> second = new CompletableFuture<> ();
+		CompletableFuture<Void> third = new CompletableFuture<> ();
+
+		run (limiter, "route", first);
+		run (limiter, "route", second);
+		run (limiter, "route", third);
+		clock.advance (Duration.ofMillis (200));
+		first.complete (null);
+		second.complete (null);
+		third.complete (null);
+
+		assertThat (limiter.limit ("route"), is (5));
+	}
+
+	@Test
+	public void it_should_decrease_again_for_requests_started_after_a_decrease () {
+		ConcurrencyLimiter<Request> limiter = new ConcurrencyLimiter<> (clock, new ConcurrencyLimiter.Config () {{
+			initial = 10;
+			backoff = 0.5;
+			latency = Duration.ofMillis (100);
+		}});
+		CompletableFuture<Void> first = new CompletableFuture<> ();
+		CompletableFuture<Void> second = new CompletableFuture<> ();
+
+		run (limiter, "route", first);
+		clock.advance (Duration.ofMillis (200));
+		first.complete (null);
+
+		clock.advance (Duration.ofMillis (1));
+		run (limiter, "route", second);
+		clock.advance (Duration.ofMillis (200));
+		second.complete (null);
+
+		assertThat (limiter.limit ("route"), is (2));
+	}
+
+	@Test
+	public void it_should_release_when_the_chain_throws () {
+		ConcurrencyLimiter<Request> limiter = new ConcurrencyLimiter<> (clock, new ConcurrencyLimiter.Config (1, Duration.ofSeconds (1)));
+		Chain<Request, CompletableFuture<Void>> chain = new Chain<> ("route", req -> {
+			throw new IllegalStateException ();
+		}, Collections.singletonList (limiter));
+
+		assertThrows (IllegalStateException.class, () -> chain.apply (request));
+		assertThat (limiter.inFlight ("route"), is (0));
+	}
+
+	private CompletableFuture<Void> run (ConcurrencyLimiter<Request> limiter, String route, CompletableFuture<Void> result) {
+		return new Chain<> (route, req -> result, Collections.singletonList (limiter)).apply (request);
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.tutske.lib.api.Method.GET;
+import static org.tutske.lib.api.Method.HEAD;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.Client;
+import org.tutske.lib.api.DirectClient;
+import org.tutske.lib.api.Method;
+import org.tutske.lib.json.Json;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class ConditionalTest {
+
+	private final AtomicInteger serialized = new AtomicInteger ();
+
+	private final Client client = DirectClient.fromApi (api -> {
+		api.filter ("/::path", new Conditional ());
+		api.route ("/versioned", req -> {
+			Conditional.validator (req, 7);
+			return req.reply (new Counted ());
+		});
+		api.route ("/dated", req -> {
+			Conditional.validator (req, Instant.parse ("2020-01-01T10:00:00.250Z"));
+			return req.reply (Json.objectNode ("status", "ok"));
+		});
+		api.route ("/early", req -> {
+			if ( Conditional.validator (req, "v7") ) { return Conditional.notModified (req); }
+			throw new IllegalStateException ("Should not build the payload");
+		});
+		api.route ("/bytes", req -> req.reply ("content".getBytes (StandardCharsets.UTF_8)));
+		api.route ("/declared", EnumSet.of (Method.GET, Method.HEAD), req -> {
+			Conditional.validator (req, "v1");
+			if ( req.method () == Method.HEAD ) { return req.reply (200, Collections.emptyMap (), new byte [] {}); }
+			return req.reply ("content".getBytes (StandardCharsets.UTF_8));
+		});
+	});
+
+	@Test
+	public void it_should_add_the_declared_etag_to_the_reply () throws Exception {
+		Client.Response response = client.request (GET, "/versioned").send ().get ();
+
+		assertThat (response.status (), is (200));
+		assertThat (response.headers ().get ("ETag"), is ("\"7\""));
+	}
+
+	@Test
+	public void it_should_answer_not_modified_when_the_etag_matches () throws Exception {
+		Client.Response response = client.request (GET, "/versioned")
+			.withHeader ("If-None-Match", "\"6\", \"7\"")
+			.send ().get ();
+
+		assertThat (response.status (), is (304));
+		assertThat (response.headers ().get ("ETag"), is ("\"7\""));
+	}
+
+	@Test
+	public void it_should_not_serialize_the_payload_when_not_modified () throws Exception {
+		client.request (GET, "/versioned").withHeader ("If-None-Match", "\"7\"").send ().get ();
+		assertThat (serialized.get (), is (0));
+	}
+
+	@Test
+	public void it_should_treat_weak_etags_as_matching () throws Exception {
+		Client.Response response = client.request (GET, "/versioned")
+			.withHeader ("If-None-Match", "W/\"7\"")
+			.send ().get ();
+
+		assertThat (response.status (), is (304));
+	}
+
+	@Test
+	public void it_should_reply_normally_when_the_etag_does_not_match () throws Exception {
+		Client.Response response = client.request (GET, "/versioned")
+			.withHeader ("If-None-Match", "\"6\"")
+			.send ().get ();
+
+		assertThat (response.status (), is (200));
+	}
+
+	@Test
+	public void it_should_answer_not_modified_for_unchanged_timestamps () throws Exception {
+		Client.Response response = client.request (GET, "/dated")
+			.withHeader ("If-Modified-Since", "Wed, 1 Jan 2020 10:00:00 GMT")
+			.send ().get ();
+
+		assertThat (response.status (), is (304));
+		assertThat (response.headers ().get ("Last-Modified"), is ("Wed, 1 Jan 2020 10:00:00 GMT"));
+	}
+
+	@Test
+	public void it_should_reply_normally_when_modified_since () throws Exception {
+		Client.Response response = client.request (GET, "/dated")
+			.withHeader ("If-Modified-Since", "Wed, 1 Jan 2020 09:59:59 GMT")
+			.send ().get ();
+
+		assertThat (response.status (), is (200));
+	}
+
+	@Test
+	public void it_should_let_handlers_skip_building_the_payload () throws Exception {
+		Client.Response response = client.request (GET, "/early")
+			.withHeader ("If-None-Match", "\"v7\"")
+			.send ().get ();
+
+		assertThat (response.status (), is (304));
+	}
+
+	@Test
+	public void it_should_compute_etags_for_byte_replies () throws Exception {
+		Client.Response response = client.request (GET, "/bytes").send ().get ();
+
+		assertThat (response.headers ().get ("ETag"), is (Conditional.etag ("content".getBytes (StandardCharsets.UTF_8))));
+		assertThat (response.body (), is ("content"));
+	}
+
+	@Test
+	public void it_should_answer_not_modified_for_unchanged_byte_replies () throws Exception {
+		String etag = client.request (GET, "/bytes").send ().get ().headers ().get ("ETag");
+		Client.Response response = client.request (GET, "/bytes").withHeader ("If-None-Match", etag).send ().get ();
+
+		assertThat (response.status (), is (304));
+		assertThat (response.bytes ().length, is (0));
+	}
+
+	@Test
+	public void it_should_keep_the_declared_etag_on_byte_replies () throws Exception {
+		Client.Response response = client.request (GET, "/declared").send ().get ();
+
+		assertThat (response.status (), is (200));
+		assertThat (response.headers ().get ("ETag"), is ("\"v1\""));
+		assertThat (response.body (), is ("content"));
+	}
+
+	@Test
+	public void it_should_answer_not_modified_for_declared_etags_on_byte_replies () throws Exception {
+		Client.Response response = client.request (GET, "/declared")
+			.withHeader ("If-None-Match", "\"v1\"")
+			.send ().get ();
+
+		assertThat (response.status (), is (304));
+	}
+
+	@Test
+	public void it_should_give_head_requests_the_same_etag_as_get () throws Exception {
+		Client.Response get = client.request (GET, "/declared").send ().get ();
+		Client.Response head = client.request (HEAD, "/declared").send ().get ();
+
+		assertThat (head.status (), is (200));
+		assertThat (head.headers ().get ("ETag"), is (get.headers ().get ("ETag")));
+	}
+
+	@Test
+	public void it_should_hash_different_content_differently () {
+		assertThat (Conditional.etag ("content 1".getBytes ()), not (Conditional.etag ("content 2".getBytes ())));
+		assertThat (Conditional.etag ("longer content".getBytes ()), not (Conditional.etag ("longer contenT".getBytes ())));
+	}
+
+	public class Counted {
+		public String getStatus () {
+			serialized.incrementAndGet ();
+			return "ok";
+		}
+	}
+
+}
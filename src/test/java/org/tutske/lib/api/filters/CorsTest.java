@@ -0,0 +1,141 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.tutske.lib.api.Method.*;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.Client;
+import org.tutske.lib.api.DirectClient;
+import org.tutske.lib.json.Json;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class CorsTest {
+
+	private final AtomicInteger calls = new AtomicInteger ();
+
+	@Test
+	public void it_should_answer_preflight_requests_without_running_the_handler () throws Exception {
+		Client client = createClient (new Cors.Config ("https://app.example.com"));
+
+		Client.Response response = preflight (client, "https://app.example.com");
+
+		assertThat (response.status (), is (204));
+		assertThat (response.headers ().get ("Access-Control-Allow-Origin"), is ("https://app.example.com"));
+		assertThat (response.headers ().get ("Access-Control-Max-Age"), is ("600"));
+		assertThat (calls.get (), is (0));
+	}
+
+	@Test
+	public void it_should_reject_preflight_requests_from_unknown_origins () throws Exception {
+		Client client = createClient (new Cors.Config ("https://app.example.com"));
+
+		Client.Response response = preflight (client, "https://evil.com");
+
+		assertThat (response.status (), is (403));
+		assertThat (response.headers ().get ("Access-Control-Allow-Origin"), nullValue ());
+	}
+
+	@Test
+	public void it_should_add_headers_to_requests_from_allowed_origins () throws Exception {
+		Client client = createClient (new Cors.Config ("https://app.example.com") {{
+			credentials = true;
+			exposed = Arrays.asList ("X-Total");
+		}});
+
+		Client.Response response = client.request (GET, "/test")
+			.withHeader ("Origin", "https://app.example.com")
+			.send ().get ();
+
+		assertThat (response.status (), is (200));
+		assertThat (response.headers ().get ("Access-Control-Allow-Origin"), is ("https://app.example.com"));
+		assertThat (response.headers ().get ("Access-Control-Allow-Credentials"), is ("true"));
+		assertThat (response.headers ().get ("Access-Control-Expose-Headers"), is ("X-Total"));
+		assertThat (calls.get (), is (1));
+	}
+
+	@Test
+	public void it_should_refuse_credentials_for_any_origin () {
+		assertThrows (IllegalArgumentException.class, () -> new Cors<> (new Cors.Config ("*") {{ credentials = true; }}));
+	}
+
+	@Test
+	public void it_should_not_reflect_unknown_origins_when_allowing_credentials () throws Exception {
+		Client client = createClient (new Cors.Config ("https://app.example.com", "https://*.example.com") {{
+			credentials = true;
+		}});
+
+		Client.Response response = client.request (GET, "/test")
+			.withHeader ("Origin", "https://evil.com")
+			.send ().get ();
+
+		assertThat (response.headers ().get ("Access-Control-Allow-Origin"), nullValue ());
+		assertThat (response.headers ().get ("Access-Control-Allow-Credentials"), nullValue ());
+		assertThat (preflight (client, "https://evil.com").status (), is (403));
+	}
+
+	@Test
+	public void it_should_match_wildcard_origins () throws Exception {
+		Client client = createClient (new Cors.Config ("https://*.example.com"));
+
+		assertThat (preflight (client, "https://one.example.com").status (), is (204));
+		assertThat (preflight (client, "https://two.example.com").status (), is (204));
+		assertThat (preflight (client, "https://example.com").status (), is (403));
+		assertThat (preflight (client, "http://one.example.com").status (), is (403));
+	}
+
+	@Test
+	public void it_should_allow_any_origin () throws Exception {
+		Client client = createClient (new Cors.Config ("*"));
+
+		Client.Response response = preflight (client, "https://any.org");
+
+		assertThat (response.headers ().get ("Access-Control-Allow-Origin"), is ("*"));
+	}
+
+	@Test
+	public void it_should_reflect_requested_headers_when_none_are_configured () throws Exception {
+		Client client = createClient (new Cors.Config ("*"));
+
+		Client.Response response = client.request (OPTIONS, "/test")
+			.withHeader ("Origin", "https://any.org")
+			.withHeader ("Access-Control-Request-Method", "POST")
+			.withHeader ("Access-Control-Request-Headers", "X-Custom")
+			.send ().get ();
+
+		assertThat (response.headers ().get ("Access-Control-Allow-Headers"), is ("X-Custom"));
+	}
+
+	@Test
+	public void it_should_use_the_configured_max_age () throws Exception {
+		Client client = createClient (new Cors.Config ("*") {{ maxAge = Duration.ofHours (1); }});
+
+		Client.Response response = preflight (client, "https://any.org");
+
+		assertThat (response.headers ().get ("Access-Control-Max-Age"), is ("3600"));
+	}
+
+	private Client createClient (Cors.Config config) {
+		return DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Cors<> (config));
+			api.route ("/test", EnumSet.of (GET, OPTIONS), req -> {
+				calls.incrementAndGet ();
+				return req.reply (Json.objectNode ("status", "ok"));
+			});
+		});
+	}
+
+	private Client.Response preflight (Client client, String origin) throws Exception {
+		return client.request (OPTIONS, "/test")
+			.withHeader ("Origin", origin)
+			.withHeader ("Access-Control-Request-Method", "POST")
+			.send ().get ();
+	}
+
+}
@@ -0,0 +1,226 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.tutske.lib.api.Method.GET;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Client;
+import org.tutske.lib.api.Deadline;
+import org.tutske.lib.api.DirectClient;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.RequestTest;
+import org.tutske.lib.api.exceptions.GatewayTimeoutException;
+import org.tutske.lib.json.Json;
+import org.tutske.lib.utils.Bag;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+public class DeadlinesTest {
+
+	@Test
+	public void it_should_time_out_requests_that_take_too_long () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Deadlines (new Deadlines.Config (Duration.ofMillis (50))));
+			api.route ("/test", req -> new CompletableFuture<> ());
+		});
+
+		Client.Response response = client.request (GET, "/test").send ().get (5, TimeUnit.SECONDS);
+
+		assertThat (response.status (), is (GatewayTimeoutException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_let_fast_requests_complete () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Deadlines (new Deadlines.Config (Duration.ofSeconds (5))));
+			api.route ("/test", req -> req.reply (Json.objectNode ("status", "ok")));
+		});
+
+		Client.Response response = client.request (GET, "/test").send ().get ();
+
+		assertThat (response.status (), is (200));
+	}
+
+	@Test
+	public void it_should_store_the_deadline_in_the_request_context () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Deadlines (new Deadlines.Config (Duration.ofSeconds (5))));
+			api.route ("/test", req -> req.reply (Json.objectNode (
+				"remaining", Deadline.of (req).remainingMillis ()
+			)));
+		});
+
+		long remaining = client.request (GET, "/test").send ().get ().json ().get ("remaining").asLong ();
+
+		assertThat (remaining, greaterThan (0L));
+		assertThat (remaining, lessThanOrEqualTo (5000L));
+	}
+
+	@Test
+	public void it_should_use_a_smaller_budget_from_the_request_header () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Deadlines (new Deadlines.Config (Duration.ofSeconds (5))));
+			api.route ("/test", req -> req.reply (Json.objectNode (
+				"remaining", Deadline.of (req).remainingMillis ()
+			)));
+		});
+
+		long remaining = client.request (GET, "/test")
+			.withHeader (Deadline.HEADER, "100")
+			.send ().get ().json ().get ("remaining").asLong ();
+
+		assertThat (remaining, lessThanOrEqualTo (100L));
+	}
+
+	@Test
+	public void it_should_use_the_budget_configured_for_the_route () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Deadlines (new Deadlines.Config (Duration.ofSeconds (5)) {{
+				routes = Collections.singletonMap ("slow", Duration.ofMillis (50));
+			}}));
+			api.route ("slow", "/slow", req -> new CompletableFuture<> ());
+		});
+
+		Client.Response response = client.request (GET, "/slow").send ().get (5, TimeUnit.SECONDS);
+
+		assertThat (response.status (), is (GatewayTimeoutException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_forward_the_remaining_budget_to_downstream_clients () throws Exception {
+		Client downstream = DirectClient.fromApi (api -> {
+			api.route ("/", req -> req.reply (Json.objectNode (
+				"budget", req.headers ().get (Deadline.HEADER)
+			)));
+		});
+
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Deadlines (new Deadlines.Config (Duration.ofSeconds (5))));
+			api.route ("/test", req -> downstream.request (GET, "/").withDeadline (req).send ()
+				.thenCompose (res -> req.reply (res.json ()))
+			);
+		});
+
+		long budget = client.request (GET, "/test").send ().get ().json ().get ("budget").asLong ();
+
+		assertThat (budget, greaterThan (0L));
+		assertThat (budget, lessThanOrEqualTo (5000L));
+	}
+
+	@Test
+	public void it_should_forward_the_budget_of_the_request_from_continuations () throws Exception {
+		Client downstream = DirectClient.fromApi (api -> {
+			api.route ("/", req -> req.reply (Json.objectNode (
+				"budget", req.headers ().get (Deadline.HEADER)
+			)));
+		});
+
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Deadlines (new Deadlines.Config (Duration.ofSeconds (5))));
+			api.route ("/test", req -> CompletableFuture.runAsync (() -> {})
+				.thenCompose (ignore -> downstream.request (GET, "/").withDeadline (req).send ())
+				.thenCompose (res -> req.reply (res.json ()))
+			);
+		});
+
+		long budget = client.request (GET, "/test").send ().get ().json ().get ("budget").asLong ();
+
+		assertThat (budget, greaterThan (0L));
+		assertThat (budget, lessThanOrEqualTo (5000L));
+	}
+
+	@Test
+	public void it_should_not_forward_a_budget_without_the_request () throws Exception {
+		Client downstream = DirectClient.fromApi (api -> {
+			api.route ("/", req -> req.reply (Json.objectNode (
+				"budget", req.headers ().get (Deadline.HEADER)
+			)));
+		});
+
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Deadlines (new Deadlines.Config (Duration.ofSeconds (5))));
+			api.route ("/test", req -> downstream.request (GET, "/").send ()
+				.thenCompose (res -> req.reply (res.json ()))
+			);
+		});
+
+		assertThat (client.request (GET, "/test").send ().get ().json ().get ("budget").isNull (), is (true));
+	}
+
+	@Test
+	public void it_should_cancel_handlers_that_time_out () throws Exception {
+		CompletableFuture<Void> handler = new CompletableFuture<> ();
+		Deadlines deadlines = new Deadlines (new Deadlines.Config (Duration.ofMillis (50)));
+		Chain<Request, CompletableFuture<Void>> chain = new Chain<> ("test", req -> handler, Collections.singletonList (deadlines));
+
+		Bag<String, Object> context = new Bag<> ();
+		CompletableFuture<Void> result = chain.apply (new RequestTest.EmptyRequest () {
+			@Override public Bag<String, Object> context () { return context; }
+		});
+
+		assertThrows (ExecutionException.class, () -> result.get (5, TimeUnit.SECONDS));
+		assertThat (handler.isCancelled (), is (true));
+	}
+
+	@Test
+	public void it_should_refuse_replies_after_the_timeout () throws Exception {
+		CountDownLatch timedOut = new CountDownLatch (1);
+		CompletableFuture<Throwable> late = new CompletableFuture<> ();
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Deadlines (new Deadlines.Config (Duration.ofMillis (50))));
+			api.route ("/test", req -> {
+				CompletableFuture.runAsync (() -> {
+					try {
+						timedOut.await ();
+						req.reply (Json.objectNode ("status", "late"));
+						late.complete (null);
+					} catch ( Throwable e ) {
+						late.complete (e);
+					}
+				});
+				return new CompletableFuture<> ();
+			});
+		});
+
+		Client.Response response = client.request (GET, "/test").send ().get (5, TimeUnit.SECONDS);
+		timedOut.countDown ();
+
+		assertThat (response.status (), is (GatewayTimeoutException.STATUS_CODE));
+		assertThat (late.get (5, TimeUnit.SECONDS), instanceOf (GatewayTimeoutException.class));
+	}
+
+	@Test
+	public void it_should_run_scheduled_tasks_on_the_timer () throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer (Duration.ofMillis (1), 8);
+		CountDownLatch latch = new CountDownLatch (1);
+
+		timer.schedule (latch::countDown, Duration.ofMillis (20));
+
+		assertThat (latch.await (5, TimeUnit.SECONDS), is (true));
+		timer.close ();
+	}
+
+	@Test
+	public void it_should_not_run_cancelled_tasks () throws Exception {
+		HashedWheelTimer timer = new HashedWheelTimer (Duration.ofMillis (1), 8);
+		CountDownLatch cancelled = new CountDownLatch (1);
+		CountDownLatch other = new CountDownLatch (1);
+
+		timer.schedule (cancelled::countDown, Duration.ofMillis (20)).cancel ();
+		timer.schedule (other::countDown, Duration.ofMillis (40));
+
+		assertThat (other.await (5, TimeUnit.SECONDS), is (true));
+		assertThat (cancelled.getCount (), is (1L));
+		timer.close ();
+	}
+
+}
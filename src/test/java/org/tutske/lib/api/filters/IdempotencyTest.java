@@ -0,0 +1,270 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.tutske.lib.api.Method.GET;
+import static org.tutske.lib.api.Method.POST;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.Client;
+import org.tutske.lib.api.DirectClient;
+import org.tutske.lib.api.exceptions.InputException;
+import org.tutske.lib.api.exceptions.PayloadTooLargeException;
+import org.tutske.lib.api.exceptions.UnprocessableEntityException;
+import org.tutske.lib.json.Json;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class IdempotencyTest {
+
+	private final MutableClock clock = new MutableClock ();
+	private final InMemoryIdempotencyStore store = new InMemoryIdempotencyStore (clock, 2);
+	private final AtomicInteger lookups = new AtomicInteger ();
+	private final CompletableFuture<Void> duplicated = new CompletableFuture<> ();
+	private final CompletableFuture<Void> started = new CompletableFuture<> ();
+	private final AtomicInteger calls = new AtomicInteger ();
+	private CompletableFuture<Void> gate = CompletableFuture.completedFuture (null);
+	private int status = 201;
+
+	private final Client client = DirectClient.fromApi (api -> {
+		api.filter ("/::path", new Idempotency (new Idempotency.Config () {{
+			store = new CountingStore ();
+			scope = req -> req.headers ().get ("X-Tenant");
+		}}));
+		api.route ("/orders", EnumSet.of (POST), req -> {
+			int call = calls.incrementAndGet ();
+			started.complete (null);
+			return gate.thenCompose (ignore -> {
+				return req.reply (status, Collections.emptyMap (), Json.objectNode ("order", call));
+			});
+		});
+	});
+
+	@Test
+	public void it_should_run_requests_without_a_key_every_time () throws Exception {
+		client.request (POST, "/orders").send ().get ();
+		client.request (POST, "/orders").send ().get ();
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_replay_the_stored_reply_for_duplicate_keys () throws Exception {
+		Client.Response first = send ("key-1");
+		Client.Response second = send ("key-1");
+
+		assertThat (calls.get (), is (1));
+		assertThat (second.status (), is (201));
+		assertThat (second.body (), is (first.body ()));
+		assertThat (second.headers ().get (Idempotency.REPLAYED_HEADER), is ("true"));
+	}
+
+	@Test
+	public void it_should_keep_different_keys_apart () throws Exception {
+		send ("key-1");
+		send ("key-2");
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_not_apply_to_safe_methods () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Idempotency ());
+			api.route ("/orders", req -> {
+				calls.incrementAndGet ();
+				return req.reply (Json.objectNode ("status", "ok"));
+			});
+		});
+
+		client.request (GET, "/orders").withHeader ("Idempotency-Key", "key-1").send ().get ();
+		client.request (GET, "/orders").withHeader ("Idempotency-Key", "key-1").send ().get ();
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_let_concurrent_duplicates_wait_for_the_first_request () throws Exception {
+		gate = new CompletableFuture<> ();
+
+		CompletableFuture<Client.Response> first = client.request (POST, "/orders")
+			.withHeader ("Idempotency-Key", "key-1").send ();
+		started.get (5, TimeUnit.SECONDS);
+		CompletableFuture<Client.Response> second = client.request (POST, "/orders")
+			.withHeader ("Idempotency-Key", "key-1").send ();
+
+		duplicated.get (5, TimeUnit.SECONDS);
+		assertThat (second.isDone (), is (false));
+		gate.complete (null);
+
+		assertThat (calls.get (), is (1));
+		assertThat (second.get ().body (), is (first.get ().body ()));
+	}
+
+	@Test
+	public void it_should_reject_a_key_that_is_reused_for_a_different_body () throws Exception {
+		Client.Response first = client.request (POST, "/orders").withHeader ("Idempotency-Key", "key-1").send ("one").get ();
+		Client.Response second = client.request (POST, "/orders").withHeader ("Idempotency-Key", "key-1").send ("two").get ();
+
+		assertThat (first.status (), is (201));
+		assertThat (second.status (), is (UnprocessableEntityException.STATUS_CODE));
+		assertThat (calls.get (), is (1));
+	}
+
+	@Test
+	public void it_should_keep_the_keys_of_different_callers_apart () throws Exception {
+		client.request (POST, "/orders").withHeader ("Idempotency-Key", "key-1").withHeader ("X-Tenant", "a").send ().get ();
+		Client.Response other = client.request (POST, "/orders")
+			.withHeader ("Idempotency-Key", "key-1").withHeader ("X-Tenant", "b")
+			.send ().get ();
+
+		assertThat (calls.get (), is (2));
+		assertThat (other.headers ().get (Idempotency.REPLAYED_HEADER), nullValue ());
+	}
+
+	@Test
+	public void it_should_replay_a_reply_stored_while_taking_the_key () throws Exception {
+		IdempotencyStore.Stored stored = new IdempotencyStore.Stored (null, new RecordedReply (
+			0, Collections.emptyMap (), true, 201, Collections.emptyMap (), null, "{\"order\":1}".getBytes ()
+		));
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Idempotency (new Idempotency.Config () {{
+				fingerprint = false;
+				store = new IdempotencyStore () {
+					@Override public Stored get (String key) { return lookups.incrementAndGet () == 1 ? null : stored; }
+					@Override public void put (String key, Stored value, Duration ttl) {}
+				};
+			}}));
+			api.route ("/orders", EnumSet.of (POST), req -> {
+				calls.incrementAndGet ();
+				return req.reply (Json.objectNode ("order", 2));
+			});
+		});
+
+		Client.Response response = client.request (POST, "/orders").withHeader ("Idempotency-Key", "key-1").send ().get ();
+
+		assertThat (calls.get (), is (0));
+		assertThat (response.body (), is ("{\"order\":1}"));
+	}
+
+	@Test
+	public void it_should_release_the_key_when_the_chain_produces_no_reply () throws Exception {
+		Idempotency filter = new Idempotency ();
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", filter);
+			api.route ("/orders", EnumSet.of (POST), req -> null);
+		});
+
+		client.request (POST, "/orders").withHeader ("Idempotency-Key", "key-1").send ().get ();
+
+		assertThat (filter.inflight (), is (0));
+	}
+
+	@Test
+	public void it_should_leave_the_body_readable_for_the_handler () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Idempotency ());
+			api.route ("/echo", EnumSet.of (POST), req -> req.reply (Json.objectNode ("body", req.body ())));
+		});
+
+		Client.Response response = client.request (POST, "/echo").withHeader ("Idempotency-Key", "key-1").send ("content").get ();
+
+		assertThat (response.json (), is (Json.objectNode ("body", "content")));
+	}
+
+	@Test
+	public void it_should_reject_bodies_too_large_to_fingerprint () throws Exception {
+		Client client = DirectClient.fromApi (api -> {
+			api.filter ("/::path", new Idempotency (new Idempotency.Config () {{ maxFingerprintSize = 4; }}));
+			api.route ("/echo", EnumSet.of (POST), req -> req.reply (Json.objectNode ("body", req.body ())));
+		});
+
+		Client.Response response = client.request (POST, "/echo").withHeader ("Idempotency-Key", "key-1").send ("content").get ();
+
+		assertThat (response.status (), is (PayloadTooLargeException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_store_replies_with_the_mapper_of_the_transport () throws Exception {
+		ObjectMapper mapper = new ObjectMapper ().setPropertyNamingStrategy (PropertyNamingStrategies.SNAKE_CASE);
+		Client client = DirectClient.fromApi (mapper, api -> {
+			api.filter ("/::path", new Idempotency ());
+			api.route ("/orders", EnumSet.of (POST), req -> req.reply (new Order (calls.incrementAndGet ())));
+		});
+
+		Client.Response first = client.request (POST, "/orders").withHeader ("Idempotency-Key", "key-1").send ().get ();
+		Client.Response second = client.request (POST, "/orders").withHeader ("Idempotency-Key", "key-1").send ().get ();
+
+		assertThat (first.json (), is (Json.objectNode ("order_number", 1)));
+		assertThat (second.json (), is (first.json ()));
+	}
+
+	@Test
+	public void it_should_not_store_server_errors () throws Exception {
+		status = 503;
+		send ("key-1");
+		status = 201;
+		Client.Response response = send ("key-1");
+
+		assertThat (calls.get (), is (2));
+		assertThat (response.status (), is (201));
+	}
+
+	@Test
+	public void it_should_run_the_request_again_after_the_ttl () throws Exception {
+		send ("key-1");
+		clock.advance (Duration.ofHours (25));
+		send ("key-1");
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_reject_keys_that_are_too_long () throws Exception {
+		Client.Response response = send ("k".repeat (256));
+
+		assertThat (response.status (), is (InputException.STATUS_CODE));
+		assertThat (calls.get (), is (0));
+	}
+
+	@Test
+	public void it_should_evict_the_oldest_entries_when_the_store_is_full () throws Exception {
+		send ("key-1");
+		send ("key-2");
+		send ("key-3");
+		send ("key-1");
+
+		assertThat (store.size (), is (2));
+		assertThat (calls.get (), is (4));
+	}
+
+	public static class Order {
+		public final int orderNumber;
+		public Order (int orderNumber) { this.orderNumber = orderNumber; }
+	}
+
+	private Client.Response send (String key) throws Exception {
+		return client.request (POST, "/orders").withHeader ("Idempotency-Key", key).send ().get ();
+	}
+
+	/* Signals once a duplicate has looked up its key, the first request looks it up twice. */
+	private class CountingStore implements IdempotencyStore {
+		@Override public Stored get (String key) {
+			if ( lookups.incrementAndGet () == 3 ) { duplicated.complete (null); }
+			return store.get (key);
+		}
+
+		@Override public void put (String key, Stored stored, Duration ttl) {
+			store.put (key, stored, ttl);
+		}
+	}
+
+}
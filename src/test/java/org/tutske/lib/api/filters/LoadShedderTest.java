@@ -0,0 +1,91 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Priority;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.RequestTest;
+import org.tutske.lib.api.exceptions.ServiceUnavailableException;
+
+import java.time.Duration;
+import java.util.Collections;
+
+
+public class LoadShedderTest {
+
+	private final LoadShedder<Request, String> shedder = new LoadShedder<> (
+		new LoadShedder.Config (Duration.ofMillis (50), Duration.ZERO)
+	);
+
+	@Test
+	public void it_should_not_shed_when_requests_do_not_wait () {
+		assertThat (run (Priority.LOW, 0), is ("handled"));
+		assertThat (run (Priority.LOW, 0), is ("handled"));
+		assertThat (shedder.shedding (), is (false));
+	}
+
+	@Test
+	public void it_should_not_shed_on_the_first_slow_request () {
+		assertThat (run (Priority.LOW, 100), is ("handled"));
+		assertThat (shedder.shedding (), is (false));
+	}
+
+	@Test
+	public void it_should_shed_low_priority_requests_once_above_target_for_an_interval () {
+		run (Priority.NORMAL, 100);
+
+		assertThrows (ServiceUnavailableException.class, () -> run (Priority.LOW, 100));
+		assertThat (shedder.shedding (), is (true));
+		assertThat (shedder.shed (), is (1L));
+	}
+
+	@Test
+	public void it_should_keep_handling_normal_priority_requests_while_shedding () {
+		run (Priority.NORMAL, 100);
+		run (Priority.NORMAL, 100);
+
+		assertThat (shedder.shedding (), is (true));
+		assertThat (run (Priority.NORMAL, 100), is ("handled"));
+	}
+
+	@Test
+	public void it_should_stop_shedding_once_a_request_is_below_target () {
+		run (Priority.NORMAL, 100);
+		run (Priority.NORMAL, 100);
+		run (Priority.NORMAL, 0);
+
+		assertThat (shedder.shedding (), is (false));
+		assertThat (run (Priority.LOW, 0), is ("handled"));
+	}
+
+	@Test
+	public void it_should_wait_for_the_interval_before_shedding () {
+		LoadShedder<Request, String> patient = new LoadShedder<> (
+			new LoadShedder.Config (Duration.ofMillis (50), Duration.ofHours (1))
+		);
+
+		run (patient, Priority.NORMAL, 100);
+		run (patient, Priority.NORMAL, 100);
+
+		assertThat (patient.shedding (), is (false));
+		assertThat (run (patient, Priority.LOW, 100), is ("handled"));
+	}
+
+	private String run (Priority priority, long waitedMillis) {
+		return run (shedder, priority, waitedMillis);
+	}
+
+	private String run (LoadShedder<Request, String> shedder, Priority priority, long waitedMillis) {
+		long arrival = System.nanoTime () - Duration.ofMillis (waitedMillis).toNanos ();
+		Request request = new RequestTest.EmptyRequest () {
+			@Override public long arrival () { return arrival; }
+		};
+
+		return new Chain<> ("route", priority, req -> "handled", Collections.singletonList (shedder)).apply (request);
+	}
+
+}
@@ -0,0 +1,19 @@
+package org.tutske.lib.api.filters;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+
+public class MutableClock extends Clock {
+
+	private Instant instant = Instant.parse ("2020-01-01T00:00:00Z");
+
+	public void advance (Duration duration) { instant = instant.plus (duration); }
+
+	@Override public ZoneId getZone () { return ZoneId.of ("UTC"); }
+	@Override public Clock withZone (ZoneId zone) { return this; }
+	@Override public Instant instant () { return instant; }
+
+}
@@ -0,0 +1,98 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.tutske.lib.api.Method.GET;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.Client;
+import org.tutske.lib.api.DirectClient;
+import org.tutske.lib.api.exceptions.TooManyRequestsException;
+import org.tutske.lib.json.Json;
+
+import java.time.Duration;
+
+
+public class RateLimiterTest {
+
+	private final MutableClock clock = new MutableClock ();
+
+	@Test
+	public void it_should_let_requests_through_while_tokens_are_available () throws Exception {
+		Client client = createClient (new RateLimiter.Config (2, Duration.ofSeconds (1)));
+
+		assertThat (send (client, "john").status (), is (200));
+		assertThat (send (client, "john").status (), is (200));
+	}
+
+	@Test
+	public void it_should_reject_requests_when_the_bucket_is_empty () throws Exception {
+		Client client = createClient (new RateLimiter.Config (2, Duration.ofSeconds (1)));
+
+		send (client, "john");
+		send (client, "john");
+		Client.Response response = send (client, "john");
+
+		assertThat (response.status (), is (TooManyRequestsException.STATUS_CODE));
+		assertThat (response.headers ().get ("Retry-After"), is ("1"));
+	}
+
+	@Test
+	public void it_should_keep_separate_buckets_per_key () throws Exception {
+		Client client = createClient (new RateLimiter.Config (1, Duration.ofSeconds (1)));
+
+		assertThat (send (client, "john").status (), is (200));
+		assertThat (send (client, "jane").status (), is (200));
+		assertThat (send (client, "john").status (), is (TooManyRequestsException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_refill_the_bucket_as_time_passes () throws Exception {
+		Client client = createClient (new RateLimiter.Config (1, Duration.ofSeconds (1)));
+
+		send (client, "john");
+		clock.advance (Duration.ofMillis (1000));
+
+		assertThat (send (client, "john").status (), is (200));
+	}
+
+	@Test
+	public void it_should_share_a_bucket_for_new_keys_when_full () throws Exception {
+		Client client = createClient (new RateLimiter.Config (1, Duration.ofSeconds (1)) {{
+			stripes = 1;
+			maxKeys = 1;
+		}});
+
+		assertThat (send (client, "john").status (), is (200));
+		assertThat (send (client, "jane").status (), is (200));
+		assertThat (send (client, "jack").status (), is (TooManyRequestsException.STATUS_CODE));
+	}
+
+	@Test
+	public void it_should_evict_idle_keys_to_make_room () throws Exception {
+		Client client = createClient (new RateLimiter.Config (1, Duration.ofSeconds (1)) {{
+			stripes = 1;
+			maxKeys = 1;
+			idle = Duration.ofSeconds (10);
+		}});
+
+		send (client, "john");
+		send (client, "jane");
+		clock.advance (Duration.ofSeconds (20));
+
+		assertThat (send (client, "jack").status (), is (200));
+		assertThat (send (client, "jill").status (), is (200));
+	}
+
+	private Client createClient (RateLimiter.Config config) {
+		return DirectClient.fromApi (api -> {
+			api.filter ("/::path", new RateLimiter<> (clock, Keys.header ("X-Client"), config));
+			api.route ("/test", req -> req.reply (Json.objectNode ("status", "ok")));
+		});
+	}
+
+	private Client.Response send (Client client, String key) throws Exception {
+		return client.request (GET, "/test").withHeader ("X-Client", key).send ().get ();
+	}
+
+}
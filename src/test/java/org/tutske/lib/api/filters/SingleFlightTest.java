@@ -0,0 +1,175 @@
+package org.tutske.lib.api.filters;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.tutske.lib.api.Chain;
+import org.tutske.lib.api.Method;
+import org.tutske.lib.api.Request;
+import org.tutske.lib.api.RequestTest;
+import org.tutske.lib.api.exceptions.NotFoundException;
+import org.tutske.lib.json.Json;
+import org.tutske.lib.utils.Bag;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+
+public class SingleFlightTest {
+
+	private final SingleFlight filter = new SingleFlight ("page");
+	private final CompletableFuture<Void> gate = new CompletableFuture<> ();
+	private final AtomicInteger calls = new AtomicInteger ();
+
+	private final Function<Request, CompletableFuture<Void>> handler = req -> {
+		calls.incrementAndGet ();
+		req.setHeader ("X-Handled", "yes");
+		return gate.thenCompose (ignore -> req.reply (Json.objectNode ("status", "ok")));
+	};
+
+	@Test
+	public void it_should_run_the_handler_once_for_concurrent_identical_requests () {
+		run (request (Method.GET, "/test", "page", "1"));
+		run (request (Method.GET, "/test", "page", "1"));
+
+		assertThat (calls.get (), is (1));
+	}
+
+	@Test
+	public void it_should_replay_the_reply_to_every_waiting_request () {
+		CapturingRequest first = request (Method.GET, "/test", "page", "1");
+		CapturingRequest second = request (Method.GET, "/test", "page", "1");
+
+		CompletableFuture<Void> one = run (first);
+		CompletableFuture<Void> two = run (second);
+		gate.complete (null);
+
+		assertThat (one.isDone () && two.isDone (), is (true));
+		assertThat (first.payload, is (Json.objectNode ("status", "ok")));
+		assertThat (second.payload, is (Json.objectNode ("status", "ok")));
+		assertThat (second.headers.get ("X-Handled"), is ("yes"));
+	}
+
+	@Test
+	public void it_should_replay_stream_replies_to_every_waiting_request () {
+		Function<Request, CompletableFuture<Void>> streaming = req -> gate.thenCompose (ignore -> {
+			return req.reply (new ByteArrayInputStream ("content".getBytes ()));
+		});
+		CapturingRequest first = request (Method.GET, "/test", "page", "1");
+		CapturingRequest second = request (Method.GET, "/test", "page", "1");
+
+		new Chain<> (streaming, Collections.singletonList (filter)).apply (first);
+		new Chain<> (streaming, Collections.singletonList (filter)).apply (second);
+		gate.complete (null);
+
+		assertThat (first.bytes, is ("content".getBytes ()));
+		assertThat (second.bytes, is ("content".getBytes ()));
+	}
+
+	@Test
+	public void it_should_not_combine_requests_with_different_selected_params () {
+		run (request (Method.GET, "/test", "page", "1"));
+		run (request (Method.GET, "/test", "page", "2"));
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_not_combine_requests_whose_values_contain_separators () {
+		SingleFlight filter = new SingleFlight ("a", "b");
+		CapturingRequest encoded = request (Method.GET, "/test", "a", "1&b=2");
+		CapturingRequest separate = request (Method.GET, "/test", "a", "1");
+		separate.query.add ("b", "2");
+
+		new Chain<> (handler, Collections.singletonList (filter)).apply (encoded);
+		new Chain<> (handler, Collections.singletonList (filter)).apply (separate);
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_ignore_params_that_are_not_selected () {
+		run (request (Method.GET, "/test", "other", "1"));
+		run (request (Method.GET, "/test", "other", "2"));
+
+		assertThat (calls.get (), is (1));
+	}
+
+	@Test
+	public void it_should_not_combine_unsafe_methods () {
+		run (request (Method.POST, "/test", "page", "1"));
+		run (request (Method.POST, "/test", "page", "1"));
+
+		assertThat (calls.get (), is (2));
+	}
+
+	@Test
+	public void it_should_run_the_handler_again_once_the_first_run_completed () {
+		run (request (Method.GET, "/test", "page", "1"));
+		gate.complete (null);
+		run (request (Method.GET, "/test", "page", "1"));
+
+		assertThat (calls.get (), is (2));
+		assertThat (filter.inflight (), is (0));
+	}
+
+	@Test
+	public void it_should_fail_all_waiting_requests_when_the_handler_fails () {
+		CompletableFuture<Void> one = run (request (Method.GET, "/test", "page", "1"));
+		CompletableFuture<Void> two = run (request (Method.GET, "/test", "page", "1"));
+		gate.completeExceptionally (new NotFoundException ());
+
+		ExecutionException ex = assertThrows (ExecutionException.class, two::get);
+		assertThat (ex.getCause (), instanceOf (NotFoundException.class));
+		assertThat (one.isCompletedExceptionally (), is (true));
+	}
+
+	private CompletableFuture<Void> run (Request request) {
+		return new Chain<> (handler, Collections.singletonList (filter)).apply (request);
+	}
+
+	private CapturingRequest request (Method method, String uri, String key, String value) {
+		CapturingRequest request = new CapturingRequest (method, uri);
+		request.query.add (key, value);
+		return request;
+	}
+
+	private static class CapturingRequest extends RequestTest.EmptyRequest {
+		private final Method method;
+		private final String uri;
+		private final Bag<String, String> query = new Bag<> ();
+		private final Bag<String, String> headers = new Bag<> ();
+		private Object payload;
+		private byte [] bytes;
+
+		private CapturingRequest (Method method, String uri) {
+			this.method = method;
+			this.uri = uri;
+		}
+
+		@Override public Method method () { return method; }
+		@Override public String uri () { return uri; }
+		@Override public Bag<String, String> queryParams () { return query; }
+		@Override public void setHeader (String header, String value) { headers.put (header, value); }
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, Object payload) {
+			this.payload = payload;
+			return CompletableFuture.completedFuture (null);
+		}
+
+		@Override public CompletableFuture<Void> reply (int status, Map<String, ?> headers, InputStream in) {
+			try { this.bytes = in.readAllBytes (); }
+			catch ( Exception e ) { throw new RuntimeException (e); }
+			return CompletableFuture.completedFuture (null);
+		}
+	}
+
+}